@@ -0,0 +1,101 @@
+package core;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batched prediction ({@link Algorithms#predictBatch}) of a number of queries with different known labels over the
+ * same network. The queries/s counter shows how throughput grows with the number of queries per batch.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchPredictionBenchmark {
+
+    private static final int OBSERVATIONS = 20;
+    private static final int SAMPLING_PASSES_BURN_IN = 10;
+    private static final int SAMPLING_PASSES_BETWEEN = 2;
+
+    @Param({BenchmarkNetworks.GRID, BenchmarkNetworks.POWER_LAW})
+    public String shape;
+
+    @Param({"10000", "250000"})
+    public int numVertices;
+
+    @Param({"1", "16", "64"})
+    public int numQueries;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private final Parameters parameters = new Parameters(0.3, 0.4);
+    private ForkJoinPool pool;
+    private SamplingOptions options;
+    private Network network;
+    private List<Map<Vertex, Boolean>> knownLabels;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Queries {
+
+        public long queries;
+
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new ForkJoinPool(threads);
+        options = SamplingOptions.defaults().withSeed(1L).withPool(pool);
+        Network labelled = BenchmarkNetworks.makeTrainingData(BenchmarkNetworks.make(shape, numVertices, 1L),
+                parameters, 1.0, 1L);
+        network = BenchmarkNetworks.makeTrainingData(labelled, parameters, 0.0, 1L);
+        // each query knows a different random half of the labels
+        Random random = new Random(1L);
+        knownLabels = new ArrayList<>();
+        for (int query = 0; query < numQueries; query++) {
+            Map<Vertex, Boolean> queryLabels = new HashMap<>();
+            for (Map.Entry<Vertex, Boolean> entry : labelled.getLabels().entrySet()) {
+                if (random.nextBoolean()) {
+                    queryLabels.put(entry.getKey(), entry.getValue());
+                }
+            }
+            knownLabels.add(queryLabels);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<Map<Vertex, Double>> predictBatch(Queries counter) {
+        counter.queries += numQueries;
+        return Algorithms.predictBatch(network, knownLabels, parameters, OBSERVATIONS, SAMPLING_PASSES_BURN_IN,
+                SAMPLING_PASSES_BETWEEN, options);
+    }
+
+}
@@ -0,0 +1,121 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Seeded network generators for the benchmarks, so that every run measures the same networks
+ */
+final class BenchmarkNetworks {
+
+    static final String GRID = "grid";
+    static final String RANDOM_REGULAR = "regular";
+    static final String POWER_LAW = "powerlaw";
+
+    private static final int REGULAR_DEGREE = 4; // the same mean degree as the grid
+    private static final int EDGES_PER_VERTEX = 2; // for preferential attachment: also mean degree 4
+
+    private BenchmarkNetworks() {
+    }
+
+    // an unlabelled network of the given shape, with about numVertices vertices (exactly, unless a grid)
+    static Network make(String shape, int numVertices, long seed) {
+        Random random = new Random(seed);
+        switch (shape) {
+            case GRID:
+                return grid((int) Math.round(Math.sqrt(numVertices)), random);
+            case RANDOM_REGULAR:
+                return randomRegular(numVertices, REGULAR_DEGREE, random);
+            case POWER_LAW:
+                return powerLaw(numVertices, EDGES_PER_VERTEX, random);
+            default:
+                throw new IllegalArgumentException("Unknown network shape " + shape);
+        }
+    }
+
+    // A copy of the network with every label sampled from the model, and then all but the given proportion erased,
+    // as training data
+    static Network makeTrainingData(Network network, Parameters parameters, double propLabelsToRetain, long seed) {
+        Network sampled = Algorithms.sampleMissingLabels(network, parameters, 100,
+                SamplingOptions.defaults().withSeed(seed));
+        Random random = new Random(seed);
+        Map<Vertex, Boolean> retainedLabels = new HashMap<>();
+        for (Vertex vertex : sampled.getVertices()) {
+            if (random.nextDouble() < propLabelsToRetain) {
+                retainedLabels.put(vertex, sampled.getLabels().get(vertex));
+            }
+        }
+        return new Network(new LinkedHashSet<>(sampled.getVertices()), new LinkedHashSet<>(sampled.getEdges()),
+                retainedLabels);
+    }
+
+    // periodic square grid
+    private static Network grid(int gridSize, Random random) {
+        Network network = new Network();
+        Vertex[][] vertices = new Vertex[gridSize][gridSize];
+        for (int row = 0; row < gridSize; row++) {
+            for (int col = 0; col < gridSize; col++) {
+                vertices[row][col] = network.makeUnlabelledVertex(random.nextBoolean());
+            }
+        }
+        for (int row = 0; row < gridSize; row++) {
+            for (int col = 0; col < gridSize; col++) {
+                network.addEdge(vertices[row][col], vertices[(row + 1) % gridSize][col]);
+                network.addEdge(vertices[row][col], vertices[row][(col + 1) % gridSize]);
+            }
+        }
+        return network;
+    }
+
+    // Configuration model: each vertex gets degree stubs, and the stubs are paired at random. The few self-loops this
+    // makes are dropped when the network is compiled, so a handful of vertices end up with slightly lower degree.
+    private static Network randomRegular(int numVertices, int degree, Random random) {
+        Network network = new Network();
+        List<Vertex> stubs = new ArrayList<>(numVertices * degree);
+        for (int index = 0; index < numVertices; index++) {
+            Vertex vertex = network.makeUnlabelledVertex(random.nextBoolean());
+            for (int stub = 0; stub < degree; stub++) {
+                stubs.add(vertex);
+            }
+        }
+        Collections.shuffle(stubs, random);
+        for (int stub = 0; stub + 1 < stubs.size(); stub += 2) {
+            network.addEdge(stubs.get(stub), stubs.get(stub + 1));
+        }
+        return network;
+    }
+
+    // Preferential attachment (Barabasi-Albert), as in the example benchmark
+    private static Network powerLaw(int numVertices, int edgesPerVertex, Random random) {
+        Network network = new Network();
+        List<Vertex> vertices = new ArrayList<>();
+        List<Vertex> edgeEndpoints = new ArrayList<>(); // each vertex appears once per incident edge
+        for (int index = 0; index <= edgesPerVertex; index++) {
+            vertices.add(network.makeUnlabelledVertex(random.nextBoolean()));
+        }
+        for (int from = 0; from <= edgesPerVertex; from++) {
+            for (int to = from + 1; to <= edgesPerVertex; to++) {
+                network.addEdge(vertices.get(from), vertices.get(to));
+                edgeEndpoints.add(vertices.get(from));
+                edgeEndpoints.add(vertices.get(to));
+            }
+        }
+        while (vertices.size() < numVertices) {
+            Vertex newVertex = network.makeUnlabelledVertex(random.nextBoolean());
+            for (int edge = 0; edge < edgesPerVertex; edge++) {
+                Vertex target = edgeEndpoints.get(random.nextInt(edgeEndpoints.size()));
+                network.addEdge(newVertex, target);
+                edgeEndpoints.add(newVertex);
+                edgeEndpoints.add(target);
+            }
+            vertices.add(newVertex);
+        }
+        return network;
+    }
+
+}
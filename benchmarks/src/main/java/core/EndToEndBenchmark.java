@@ -0,0 +1,107 @@
+package core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole calls to {@link Algorithms#train} and {@link Algorithms#predict}, including compilation of the network,
+ * on half-labelled networks and lattices. The "lattice" shape is a square {@link Lattice}; the others are
+ * {@link Network}s.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+
+    private static final String LATTICE = "lattice";
+    private static final int DESCENT_STEPS = 20;
+    private static final int OBSERVATIONS = 20;
+    private static final int SAMPLING_PASSES_BURN_IN = 10;
+    private static final int SAMPLING_PASSES_BETWEEN = 2;
+    private static final double LEARNING_RATE = 1.0e-5;
+
+    @Param({BenchmarkNetworks.GRID, BenchmarkNetworks.RANDOM_REGULAR, BenchmarkNetworks.POWER_LAW, LATTICE})
+    public String shape;
+
+    @Param({"10000", "250000"})
+    public int numVertices;
+
+    @Param({"CHROMATIC"})
+    public SamplingMode mode;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private final Parameters parameters = new Parameters(0.3, 0.4);
+    private ForkJoinPool pool;
+    private SamplingOptions options;
+    private Network network; // null for the lattice shape
+    private Lattice lattice; // null for the other shapes
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new ForkJoinPool(threads);
+        options = SamplingOptions.defaults().withMode(mode).withSeed(1L).withPool(pool);
+        if (shape.equals(LATTICE)) {
+            int side = 2 * (int) Math.round(Math.sqrt(numVertices) / 2); // lattice sides must be even
+            Lattice unlabelled = Lattice.periodic2D(side, side);
+            Random random = new Random(1L);
+            for (int site = 0; site < unlabelled.getNumSites(); site++) {
+                unlabelled.setFeatureValue(site, random.nextBoolean());
+            }
+            lattice = Algorithms.sampleMissingLabels(unlabelled, parameters, 100,
+                    SamplingOptions.defaults().withSeed(1L));
+            for (int site = 0; site < lattice.getNumSites(); site++) {
+                if (random.nextBoolean()) {
+                    lattice.clearLabel(site);
+                }
+            }
+        } else {
+            network = BenchmarkNetworks.makeTrainingData(BenchmarkNetworks.make(shape, numVertices, 1L),
+                    parameters, 0.5, 1L);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Parameters train() {
+        Parameters initialParameters = new Parameters(0.0, 0.0);
+        return (lattice != null)
+                ? Algorithms.train(lattice, initialParameters, DESCENT_STEPS, SAMPLING_PASSES_BURN_IN,
+                        SAMPLING_PASSES_BETWEEN, LEARNING_RATE, options)
+                : Algorithms.train(network, initialParameters, DESCENT_STEPS, SAMPLING_PASSES_BURN_IN,
+                        SAMPLING_PASSES_BETWEEN, LEARNING_RATE, options);
+    }
+
+    @Benchmark
+    public Object predict() {
+        return (lattice != null)
+                ? Algorithms.predict(lattice, parameters, OBSERVATIONS, SAMPLING_PASSES_BURN_IN,
+                        SAMPLING_PASSES_BETWEEN, options)
+                : Algorithms.predict(network, parameters, OBSERVATIONS, SAMPLING_PASSES_BURN_IN,
+                        SAMPLING_PASSES_BETWEEN, options);
+    }
+
+}
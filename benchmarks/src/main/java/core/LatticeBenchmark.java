@@ -0,0 +1,75 @@
+package core;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checkerboard sweeps of a 2D periodic lattice, by side length. As in {@link SweepBenchmark}, the updates/s counter
+ * gives the cost per single-site update.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LatticeBenchmark {
+
+    @Param({"256", "1024", "4096"})
+    public int side;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private final Parameters parameters = new Parameters(0.3, 0.4);
+    private ForkJoinPool pool;
+    private Lattice lattice;
+    private LatticeAssignment assignment;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Updates {
+
+        public long updates;
+
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new ForkJoinPool(threads);
+        lattice = Lattice.periodic2D(side, side);
+        Random random = new Random(1L);
+        for (int site = 0; site < lattice.getNumSites(); site++) {
+            lattice.setFeatureValue(site, random.nextBoolean());
+        }
+        assignment = LatticeAssignment.samplingUnknownGivenKnown(lattice, new CounterRandom(1L, 0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public void sweep(Updates counter) {
+        pool.submit(() -> assignment.performSamplingRound(parameters, null)).join();
+        counter.updates += lattice.getNumSites();
+    }
+
+}
@@ -0,0 +1,93 @@
+package core;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One Gibbs sweep of a compiled network, for each sampling mode. The sweeps/s score is the cost of a full sweep; the
+ * updates/s counter is the cost per single-site update (summed over replicas, for MULTI_SPIN), which is comparable
+ * across network sizes and modes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SweepBenchmark {
+
+    @Param({BenchmarkNetworks.GRID, BenchmarkNetworks.RANDOM_REGULAR, BenchmarkNetworks.POWER_LAW})
+    public String shape;
+
+    @Param({"10000", "1000000"})
+    public int numVertices;
+
+    @Param({"PARALLEL", "CHROMATIC", "MULTI_SPIN", "CLUSTER", "ACTIVE_SET"})
+    public SamplingMode mode;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"false"})
+    public boolean incrementalNeighbourSums;
+
+    // raise (e.g. -p beta=1.0) for the strongly ordered regime that ACTIVE_SET targets
+    @Param({"0.4"})
+    public double beta;
+
+    private Parameters parameters;
+    private ForkJoinPool pool;
+    private LabelSampler sampler;
+    private long updatesPerSweep;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Updates {
+
+        public long updates;
+
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new ForkJoinPool(threads);
+        parameters = new Parameters(0.3, beta);
+        SamplingOptions options = SamplingOptions.defaults().withMode(mode)
+                .withIncrementalNeighbourSums(incrementalNeighbourSums);
+        CompiledNetwork network = CompiledNetwork.compile(BenchmarkNetworks.make(shape, numVertices, 1L));
+        CounterRandom random = new CounterRandom(1L, 0);
+        // colouring and cluster structures are built here, not in the first measured sweep
+        sampler = pool.submit(() -> (mode == SamplingMode.MULTI_SPIN)
+                ? new MultiSpinAssignment(network, random)
+                : Assignment.samplingUnknownGivenKnown(network, options, random)).join();
+        updatesPerSweep = (long) sampler.getVerticesToSample().length * sampler.getNumReplicas();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public void sweep(Updates counter) {
+        // parallel streams run in the pool of the thread that starts them, so the pool bounds the threads used
+        pool.submit(() -> sampler.performSamplingRound(parameters)).join();
+        counter.updates += updatesPerSweep;
+    }
+
+}
@@ -0,0 +1,150 @@
+package core;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Rejection-free random-scan Gibbs sampling (the n-fold way of Bortz, Kalos and Lebowitz). A random-scan sweep
+ * resamples n uniformly chosen vertices in turn, where n is the number of sampled vertices; in a strongly ordered
+ * network almost every update keeps the label it had. Here only the flips are simulated. Each sampled vertex's flip
+ * probability is kept in a sum tree, in units of 2^-32 as in the conditional table, so that the sums are exact. The
+ * number of updates up to and including the next flip is geometric, with success probability (total flip
+ * probability) / n, and the vertex that flips is chosen with probability proportional to its flip probability. This
+ * is the random-scan chain exactly (in distribution), so the stationary distribution is unchanged, while vertices in
+ * frozen regions are never visited: a sweep costs O(degree log n) per flip rather than O(n).
+ *
+ * The flip probabilities depend on the parameters, so the tree is rebuilt, in O(n), whenever the conditional table
+ * changes (after each gradient descent step, for instance).
+ */
+class ActiveSetUpdate {
+
+    private static final long THRESHOLD_ONE = 1L << 32; // threshold of a certain positive label
+    private static final double THRESHOLD_SCALE = 4294967296.0; // 2^32
+    private static final double UNIFORM_SCALE = 0x1.0p-53;
+
+    private final CompiledNetwork network;
+    private final int[] verticesToSample;
+    private final int[] leaves; // indexed by vertex id: index into verticesToSample, or -1 if not sampled
+    private final long[] flipThresholds; // indexed as verticesToSample: each vertex's flip probability * 2^32
+    private final long[] tree; // Fenwick tree over flipThresholds (1-based)
+    private long totalFlipThreshold;
+    private ConditionalTable conditionalTable; // that the tree was built from; null if the tree is stale
+
+    ActiveSetUpdate(CompiledNetwork network, int[] verticesToSample) {
+        this.network = network;
+        this.verticesToSample = verticesToSample;
+        leaves = new int[network.getNumVertices()];
+        Arrays.fill(leaves, -1);
+        for (int leaf = 0; leaf < verticesToSample.length; leaf++) {
+            leaves[verticesToSample[leaf]] = leaf;
+        }
+        flipThresholds = new long[verticesToSample.length];
+        tree = new long[verticesToSample.length + 1];
+    }
+
+    // to be called when labels change other than through performRound
+    void invalidate() {
+        conditionalTable = null;
+    }
+
+    // One sweep's worth (n updates) of random-scan Gibbs sampling. flip is called with the id of each vertex to flip,
+    // and must update its label and its neighbours' spin sums before returning.
+    void performRound(boolean[] labels, IntUnaryOperator neighbourSpinSums, IntConsumer flip,
+                      ConditionalTable conditionalTable, long sweepKey) {
+        int numUpdates = verticesToSample.length;
+        if (numUpdates == 0) {
+            return;
+        }
+        if (this.conditionalTable != conditionalTable) {
+            rebuild(labels, neighbourSpinSums, conditionalTable);
+        }
+
+        double updatesToThresholdTotal = numUpdates * THRESHOLD_SCALE;
+        long remainingUpdates = numUpdates;
+        for (int event = 0; totalFlipThreshold > 0; event++) {
+            // updates before the next flip, by inversion of the geometric distribution; the sweep ends if they use
+            // up the sweep (the distribution is memoryless, so the next sweep simply draws afresh)
+            long bits = CounterRandom.getVertexBits(sweepKey, event);
+            double flipProbability = totalFlipThreshold / updatesToThresholdTotal;
+            double uniform = (bits >>> 11) * UNIFORM_SCALE;
+            double updatesBeforeFlip = Math.floor(Math.log1p(-uniform) / Math.log1p(-flipProbability));
+            if (updatesBeforeFlip >= remainingUpdates) {
+                break;
+            }
+            remainingUpdates -= (long) updatesBeforeFlip + 1;
+
+            int leaf = findLeaf(multiplyHighUnsigned(CounterRandom.getSequenceBits(bits, 0), totalFlipThreshold));
+            int id = verticesToSample[leaf];
+            flip.accept(id);
+            updateLeaf(leaf, labels[id], neighbourSpinSums.applyAsInt(id));
+            int end = network.getNeighbourEnd(id);
+            for (int position = network.getNeighbourStart(id); position < end; position++) {
+                int neighbour = network.getNeighbour(position);
+                int neighbourLeaf = leaves[neighbour];
+                if (neighbourLeaf >= 0) {
+                    updateLeaf(neighbourLeaf, labels[neighbour], neighbourSpinSums.applyAsInt(neighbour));
+                }
+            }
+        }
+    }
+
+    private void rebuild(boolean[] labels, IntUnaryOperator neighbourSpinSums, ConditionalTable conditionalTable) {
+        this.conditionalTable = conditionalTable;
+        IntStream.range(0, verticesToSample.length).parallel()
+                .forEach(leaf -> {
+                    int id = verticesToSample[leaf];
+                    flipThresholds[leaf] = getFlipThreshold(id, labels[id], neighbourSpinSums.applyAsInt(id));
+                });
+        // linear-time Fenwick construction: each node passes its sum on to its parent
+        long total = 0;
+        for (int node = 1; node < tree.length; node++) {
+            tree[node] = flipThresholds[node - 1];
+            total += flipThresholds[node - 1];
+        }
+        for (int node = 1; node < tree.length; node++) {
+            int parent = node + (node & -node);
+            if (parent < tree.length) {
+                tree[parent] += tree[node];
+            }
+        }
+        totalFlipThreshold = total;
+    }
+
+    private long getFlipThreshold(int id, boolean label, int spinSum) {
+        long threshold = conditionalTable.getThreshold(network.getFeature(id), spinSum);
+        return label ? THRESHOLD_ONE - threshold : threshold;
+    }
+
+    private void updateLeaf(int leaf, boolean label, int spinSum) {
+        long delta = getFlipThreshold(verticesToSample[leaf], label, spinSum) - flipThresholds[leaf];
+        if (delta == 0) {
+            return;
+        }
+        flipThresholds[leaf] += delta;
+        totalFlipThreshold += delta;
+        for (int node = leaf + 1; node < tree.length; node += node & -node) {
+            tree[node] += delta;
+        }
+    }
+
+    // the leaf whose range of cumulative flip thresholds contains the target, in [0, total)
+    private int findLeaf(long target) {
+        int position = 0;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>>= 1) {
+            int next = position + step;
+            if (next < tree.length && tree[next] <= target) {
+                position = next;
+                target -= tree[next];
+            }
+        }
+        return position;
+    }
+
+    // floor(bits * bound / 2^64), treating bits as unsigned: an almost unbiased draw from [0, bound)
+    private static long multiplyHighUnsigned(long bits, long bound) {
+        return Math.multiplyHigh(bits, bound) + ((bits >> 63) & bound);
+    }
+
+}
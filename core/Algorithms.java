@@ -1,16 +1,29 @@
 package core;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 /**
  * Contains static methods that implement training and prediction algorithms.
  */
 public class Algorithms {
 
+    // R-hat is unreliable from very few observations, so convergence is not checked before this many
+    private static final int MIN_OBSERVATIONS_BEFORE_CONVERGENCE_CHECK = 10;
+
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8; // as some JVMs reserve header words
+
     /**
      * Calculates alpha and beta parameters that maximise the likelihood for the known labels in the network
      * @param network network
@@ -22,22 +35,240 @@ public class Algorithms {
      */
     public static Parameters train(Network network, int descentSteps, int samplingPassesBurnIn,
                                    int samplingPassesBetweenDescents, double learningRate) {
-        Parameters parameters = new Parameters(); // initialised to zero
-        Assignment targetAssignment = Assignment.samplingUnknownGivenKnown(network);
-        Assignment observedAssignment = Assignment.samplingAll(network);
+        return train(network, descentSteps, samplingPassesBurnIn, samplingPassesBetweenDescents, learningRate,
+                SamplingOptions.defaults());
+    }
 
-        for (int descentStep = 0; descentStep < descentSteps; descentStep++) {
-            int samplingPasses = (descentStep == 0) ? samplingPassesBurnIn : samplingPassesBetweenDescents;
-            for (int samplingPass = 0; samplingPass < samplingPasses; samplingPass++) {
-                targetAssignment.performSamplingRound(parameters); // does nothing if all training labels known
-                observedAssignment.performSamplingRound(parameters);
+    /**
+     * Calculates alpha and beta parameters that maximise the likelihood for the known labels in the network
+     * @param network network
+     * @param descentSteps number of gradient descent steps
+     * @param samplingPassesBurnIn number of Gibbs sampling passes before the first gradient descent round
+     * @param samplingPassesBetweenDescents number of Gibbs sampling passes between each gradient descent round
+     * @param learningRate learning rate
+     * @param options options controlling how Gibbs sampling is carried out
+     * @return alpha and beta parameters
+     */
+    public static Parameters train(Network network, int descentSteps, int samplingPassesBurnIn,
+                                   int samplingPassesBetweenDescents, double learningRate, SamplingOptions options) {
+        return train(network, new Parameters(0.0, 0.0), descentSteps, samplingPassesBurnIn,
+                samplingPassesBetweenDescents, learningRate, options);
+    }
+
+    /**
+     * Calculates alpha and beta parameters that maximise the likelihood for the known labels in the network,
+     * starting gradient descent from the parameters supplied (for instance, from {@link #trainPseudoLikelihood}).
+     * Besides its sampling passes, each a sweep over the vertices and edges, a descent step only reads the gradient
+     * statistics, which the chains keep up to date as labels flip. That read takes constant time, except in
+     * {@link SamplingMode#PARALLEL} mode: there neighbours flip at the same time, so the statistics are recounted
+     * when the step reads them, from neighbour sums that are maintained incrementally for training, in time
+     * proportional to the number of vertices.
+     * @param network network
+     * @param initialParameters parameters to start gradient descent from (these are not modified)
+     * @param descentSteps number of gradient descent steps
+     * @param samplingPassesBurnIn number of Gibbs sampling passes before the first gradient descent round
+     * @param samplingPassesBetweenDescents number of Gibbs sampling passes between each gradient descent round
+     * @param learningRate learning rate
+     * @param options options controlling how Gibbs sampling is carried out
+     * @return alpha and beta parameters
+     */
+    public static Parameters train(Network network, Parameters initialParameters, int descentSteps,
+                                   int samplingPassesBurnIn, int samplingPassesBetweenDescents, double learningRate,
+                                   SamplingOptions options) {
+        return runInPool(options, () -> train(CompiledNetwork.compile(network, options.getVertexOrder()),
+                initialParameters, null, options.getVertexOrder(), descentSteps, samplingPassesBurnIn,
+                samplingPassesBetweenDescents, learningRate, options));
+    }
+
+    /**
+     * Calculates alpha and beta parameters that maximise the likelihood for the known labels in a mapped network,
+     * starting gradient descent from the parameters supplied
+     * @param network mapped network
+     * @param initialParameters parameters to start gradient descent from (these are not modified)
+     * @param descentSteps number of gradient descent steps
+     * @param samplingPassesBurnIn number of Gibbs sampling passes before the first gradient descent round
+     * @param samplingPassesBetweenDescents number of Gibbs sampling passes between each gradient descent round
+     * @param learningRate learning rate
+     * @param options options controlling how Gibbs sampling is carried out
+     * @return alpha and beta parameters
+     */
+    public static Parameters train(MappedNetwork network, Parameters initialParameters, int descentSteps,
+                                   int samplingPassesBurnIn, int samplingPassesBetweenDescents, double learningRate,
+                                   SamplingOptions options) {
+        return runInPool(options, () -> train(network.getCompiledNetwork(), initialParameters, null,
+                VertexOrder.INSERTION, descentSteps, samplingPassesBurnIn, samplingPassesBetweenDescents, learningRate,
+                options));
+    }
+
+    /**
+     * Resumes training from a checkpoint written by an earlier call (see {@link SamplingOptions#withCheckpoints}).
+     * Both chains carry on from their checkpointed labels, so no burn-in is needed, and the checkpoint's seed and
+     * vertex order are used in place of those in the options. With {@link SamplingMode#CHROMATIC}, a resumed run
+     * gives the same parameters as a run that was never interrupted.
+     * @param network network, which must be the one checkpointed, with its vertices added in the same order
+     * @param checkpoint checkpoint to resume from
+     * @param descentSteps number of further gradient descent steps
+     * @param samplingPassesBetweenDescents number of Gibbs sampling passes between each gradient descent round
+     * @param learningRate learning rate
+     * @param options options controlling how Gibbs sampling is carried out
+     * @return alpha and beta parameters
+     */
+    public static Parameters train(Network network, TrainingCheckpoint checkpoint, int descentSteps,
+                                   int samplingPassesBetweenDescents, double learningRate, SamplingOptions options) {
+        return runInPool(options, () -> train(CompiledNetwork.compile(network, checkpoint.getVertexOrder()), null,
+                checkpoint, checkpoint.getVertexOrder(), descentSteps, samplingPassesBetweenDescents,
+                samplingPassesBetweenDescents, learningRate, options));
+    }
+
+    /**
+     * Resumes training of a mapped network from a checkpoint written by an earlier call, as
+     * {@link #train(Network, TrainingCheckpoint, int, int, double, SamplingOptions)} does
+     * @param network mapped network, which must be the one checkpointed
+     * @param checkpoint checkpoint to resume from
+     * @param descentSteps number of further gradient descent steps
+     * @param samplingPassesBetweenDescents number of Gibbs sampling passes between each gradient descent round
+     * @param learningRate learning rate
+     * @param options options controlling how Gibbs sampling is carried out
+     * @return alpha and beta parameters
+     */
+    public static Parameters train(MappedNetwork network, TrainingCheckpoint checkpoint, int descentSteps,
+                                   int samplingPassesBetweenDescents, double learningRate, SamplingOptions options) {
+        return runInPool(options, () -> train(network.getCompiledNetwork(), null, checkpoint, VertexOrder.INSERTION,
+                descentSteps, samplingPassesBetweenDescents, samplingPassesBetweenDescents, learningRate, options));
+    }
+
+    // Starts from the initial parameters, or resumes from the checkpoint if there is one (the initial parameters are
+    // then unused). The vertex order is only recorded in checkpoints.
+    private static Parameters train(CompiledNetwork compiledNetwork, Parameters initialParameters,
+                                    TrainingCheckpoint checkpoint, VertexOrder vertexOrder, int descentSteps,
+                                    int samplingPassesBurnIn, int samplingPassesBetweenDescents,
+                                    double learningRate, SamplingOptions options) {
+        if (options.getMode() == SamplingMode.MULTI_SPIN) {
+            throw new IllegalArgumentException("Sampling mode " + options.getMode() + " is not supported for training");
+        }
+        boolean checkpointing = options.getCheckpointPath().isPresent();
+        long fingerprint = (checkpoint != null || checkpointing) ? TrainingCheckpoint.fingerprint(compiledNetwork) : 0L;
+        Parameters parameters;
+        long seed;
+        int firstDescentStep;
+        if (checkpoint == null) {
+            parameters = new Parameters(initialParameters.getAlpha(), initialParameters.getBeta());
+            seed = resolveSeed(options);
+            firstDescentStep = 0;
+        } else {
+            checkpoint.checkMatches(compiledNetwork, fingerprint);
+            parameters = checkpoint.getParameters();
+            seed = checkpoint.getSeed();
+            firstDescentStep = checkpoint.getDescentStepsCompleted();
+        }
+        // PARALLEL mode recounts the statistics when they are read; with incremental neighbour sums, the recount
+        // reads one sum per vertex rather than rescanning the edges
+        SamplingOptions samplingOptions = (options.getMode() == SamplingMode.PARALLEL)
+                ? options.withIncrementalNeighbourSums(true) : options;
+        Assignment targetAssignment = Assignment.samplingUnknownGivenKnown(
+                compiledNetwork, samplingOptions, new CounterRandom(seed, 0));
+        Assignment observedAssignment = Assignment.samplingAll(compiledNetwork, samplingOptions,
+                new CounterRandom(seed, 1));
+        if (checkpoint != null) {
+            checkpoint.restoreTarget(targetAssignment);
+            checkpoint.restoreObserved(observedAssignment);
+        }
+        SweepRecorder targetRecorder = new SweepRecorder(options, 0);
+        SweepRecorder observedRecorder = new SweepRecorder(options, 1);
+
+        try (CheckpointWriter checkpointWriter = checkpointing
+                ? new CheckpointWriter(options.getCheckpointPath().get()) : null) {
+            int endDescentStep = firstDescentStep + descentSteps;
+            for (int descentStep = firstDescentStep; descentStep < endDescentStep; descentStep++) {
+                int samplingPasses = (descentStep == 0) ? samplingPassesBurnIn : samplingPassesBetweenDescents;
+                for (int samplingPass = 0; samplingPass < samplingPasses; samplingPass++) {
+                    // does nothing if all training labels known
+                    targetRecorder.performSamplingRound(targetAssignment, parameters, null);
+                    observedRecorder.performSamplingRound(observedAssignment, parameters, null);
+                }
+                performGradientDescentRound(targetAssignment, observedAssignment, parameters, learningRate, options,
+                        descentStep);
+                if (checkpointWriter != null && ((descentStep + 1) % options.getCheckpointInterval() == 0
+                        || descentStep + 1 == endDescentStep)) {
+                    // the labels are copied here; the file is written in the background
+                    checkpointWriter.submit(TrainingCheckpoint.capture(compiledNetwork, vertexOrder, fingerprint,
+                            seed, descentStep + 1, parameters, targetAssignment, observedAssignment));
+                }
             }
-            network.performGradientDescentRound(targetAssignment, observedAssignment, parameters, learningRate);
         }
 
         return parameters;
     }
 
+    /**
+     * Calculates alpha and beta parameters that maximise the likelihood for the known labels on a lattice, starting
+     * gradient descent from the parameters supplied. Lattices are always swept as a checkerboard, so the sampling
+     * mode and incremental neighbour sums in the options are ignored.
+     * @param lattice lattice
+     * @param initialParameters parameters to start gradient descent from (these are not modified)
+     * @param descentSteps number of gradient descent steps
+     * @param samplingPassesBurnIn number of Gibbs sampling passes before the first gradient descent round
+     * @param samplingPassesBetweenDescents number of Gibbs sampling passes between each gradient descent round
+     * @param learningRate learning rate
+     * @param options options controlling how Gibbs sampling is carried out
+     * @return alpha and beta parameters
+     */
+    public static Parameters train(Lattice lattice, Parameters initialParameters, int descentSteps,
+                                   int samplingPassesBurnIn, int samplingPassesBetweenDescents, double learningRate,
+                                   SamplingOptions options) {
+        return runInPool(options, () -> {
+            Parameters parameters = new Parameters(initialParameters.getAlpha(), initialParameters.getBeta());
+            long seed = resolveSeed(options);
+            LatticeAssignment targetAssignment = LatticeAssignment.samplingUnknownGivenKnown(
+                    lattice, new CounterRandom(seed, 0));
+            LatticeAssignment observedAssignment = LatticeAssignment.samplingAll(lattice, new CounterRandom(seed, 1));
+            SweepRecorder targetRecorder = new SweepRecorder(options, 0);
+            SweepRecorder observedRecorder = new SweepRecorder(options, 1);
+
+            for (int descentStep = 0; descentStep < descentSteps; descentStep++) {
+                int samplingPasses = (descentStep == 0) ? samplingPassesBurnIn : samplingPassesBetweenDescents;
+                for (int samplingPass = 0; samplingPass < samplingPasses; samplingPass++) {
+                    targetRecorder.performSamplingRound(targetAssignment, lattice, parameters, null);
+                    observedRecorder.performSamplingRound(observedAssignment, lattice, parameters, null);
+                }
+                performGradientDescentRound(targetAssignment, observedAssignment, parameters, learningRate, options,
+                        descentStep);
+            }
+
+            return parameters;
+        });
+    }
+
+    /**
+     * Calculates alpha and beta parameters that maximise the pseudo-likelihood for the known labels in the network,
+     * i.e. the product over labelled vertices of the probability of each label given its neighbours' labels. This
+     * needs no Gibbs sampling: one parallel pass collects a histogram of (feature, neighbour spin sum, label) counts,
+     * and Newton's method then converges in a handful of iterations. Unlabelled neighbours are counted as zero, so
+     * the estimate is biased when many labels are missing; it can be used to warm-start {@link #train}.
+     * @param network network
+     * @param maxIterations maximum number of Newton iterations
+     * @param tolerance iteration stops once both parameters change by less than this
+     * @return alpha and beta parameters
+     */
+    public static Parameters trainPseudoLikelihood(Network network, int maxIterations, double tolerance) {
+        return trainPseudoLikelihood(network, maxIterations, tolerance, SamplingOptions.defaults());
+    }
+
+    /**
+     * Calculates alpha and beta parameters that maximise the pseudo-likelihood for the known labels in the network,
+     * as {@link #trainPseudoLikelihood(Network, int, double)} does, running its parallel pass in the options' pool
+     * @param network network
+     * @param maxIterations maximum number of Newton iterations
+     * @param tolerance iteration stops once both parameters change by less than this
+     * @param options options giving the pool and vertex order; the options that control sampling are ignored
+     * @return alpha and beta parameters
+     */
+    public static Parameters trainPseudoLikelihood(Network network, int maxIterations, double tolerance,
+                                                   SamplingOptions options) {
+        return runInPool(options, () -> new PseudoLikelihood(CompiledNetwork.compile(network,
+                options.getVertexOrder())).fit(maxIterations, tolerance));
+    }
+
     /**
      * Estimates marginal probabilities for each unlabelled vertex of having a positive label, based on model with
      * the supplied parameters
@@ -50,31 +281,516 @@ public class Algorithms {
      */
     public static Map<Vertex, Double> predict(Network network, Parameters parameters, int observations,
                                               int samplingPassesBurnIn, int samplingPassesBetweenObservations) {
-        Assignment assignment = Assignment.samplingUnknownGivenKnown(network);
+        return predict(network, parameters, observations, samplingPassesBurnIn, samplingPassesBetweenObservations,
+                SamplingOptions.defaults());
+    }
 
-        // Sampling
-        Map<Vertex, Integer> positiveCountsByVertex = new HashMap<>(); // i.e. num +ve labels sampled so far
-        for (int observation = 0; observation < observations; observation++) {
-            int samplingPasses = (observation == 0) ? samplingPassesBurnIn : samplingPassesBetweenObservations;
-            for (int samplingPass = 0; samplingPass < samplingPasses; samplingPass++) {
-                assignment.performSamplingRound(parameters);
+    /**
+     * Estimates marginal probabilities for each unlabelled vertex of having a positive label, based on model with
+     * the supplied parameters
+     * @param network network
+     * @param parameters parameters for model
+     * @param observations number of observations to take for each label, to estimate probability from
+     * @param samplingPassesBurnIn number of Gibbs sampling passes before first sample
+     * @param samplingPassesBetweenObservations number of Gibbs sampling passes between successive label observations
+     * @param options options controlling how Gibbs sampling is carried out
+     * @return map (unlabelled vertex) -> (probability of true label for this vertex, given model)
+     */
+    public static Map<Vertex, Double> predict(Network network, Parameters parameters, int observations,
+                                              int samplingPassesBurnIn, int samplingPassesBetweenObservations,
+                                              SamplingOptions options) {
+        return runInPool(options, () -> {
+            CompiledNetwork compiledNetwork = CompiledNetwork.compile(network, options.getVertexOrder());
+            CounterRandom random = new CounterRandom(resolveSeed(options), 0);
+            LabelSampler assignment = makeLabelSampler(compiledNetwork, options, random);
+            double[] estimates = estimateMarginals(assignment, parameters, observations, samplingPassesBurnIn,
+                    samplingPassesBetweenObservations, options);
+
+            // Only the unlabelled vertices are reported
+            Map<Vertex, Double> probabilities = new HashMap<>();
+            for (int id : assignment.getVerticesToSample()) {
+                probabilities.put(compiledNetwork.getVertex(id), estimates[id]);
+            }
+
+            return Collections.unmodifiableMap(probabilities);
+        });
+    }
+
+    /**
+     * Estimates marginal probabilities for each unlabelled vertex of a mapped network of having a positive label,
+     * based on model with the supplied parameters
+     * @param network mapped network
+     * @param parameters parameters for model
+     * @param observations number of observations to take for each label, to estimate probability from
+     * @param samplingPassesBurnIn number of Gibbs sampling passes before first sample
+     * @param samplingPassesBetweenObservations number of Gibbs sampling passes between successive label observations
+     * @param options options controlling how Gibbs sampling is carried out
+     * @return probability of true label for each vertex, indexed by vertex id (NaN for labelled vertices)
+     */
+    public static double[] predict(MappedNetwork network, Parameters parameters, int observations,
+                                   int samplingPassesBurnIn, int samplingPassesBetweenObservations,
+                                   SamplingOptions options) {
+        return runInPool(options, () -> {
+            CompiledNetwork compiledNetwork = network.getCompiledNetwork();
+            LabelSampler assignment = makeLabelSampler(compiledNetwork, options,
+                    new CounterRandom(resolveSeed(options), 0));
+            double[] estimates = estimateMarginals(assignment, parameters, observations, samplingPassesBurnIn,
+                    samplingPassesBetweenObservations, options);
+            for (int id = 0; id < estimates.length; id++) {
+                if (compiledNetwork.isLabelled(id)) {
+                    estimates[id] = Double.NaN;
+                }
+            }
+            return estimates;
+        });
+    }
+
+    /**
+     * Estimates marginal probabilities for each unlabelled vertex of having a positive label, with the parameters of
+     * a training checkpoint, starting the chain from the checkpoint's burned-in labels rather than from random ones,
+     * so that a short burn-in will do. The checkpoint's seed and vertex order are used in place of those in the
+     * options.
+     * @param network network, which must be the one checkpointed, with its vertices added in the same order
+     * @param checkpoint checkpoint written during training
+     * @param observations number of observations to take for each label, to estimate probability from
+     * @param samplingPassesBurnIn number of Gibbs sampling passes before first sample
+     * @param samplingPassesBetweenObservations number of Gibbs sampling passes between successive label observations
+     * @param options options controlling how Gibbs sampling is carried out
+     * @return map (unlabelled vertex) -> (probability of true label for this vertex, given model)
+     */
+    public static Map<Vertex, Double> predict(Network network, TrainingCheckpoint checkpoint, int observations,
+                                              int samplingPassesBurnIn, int samplingPassesBetweenObservations,
+                                              SamplingOptions options) {
+        return runInPool(options, () -> {
+            CompiledNetwork compiledNetwork = CompiledNetwork.compile(network, checkpoint.getVertexOrder());
+            Assignment assignment = makeWarmStartedSampler(compiledNetwork, checkpoint, options);
+            double[] estimates = estimateMarginals(assignment, checkpoint.getParameters(), observations,
+                    samplingPassesBurnIn, samplingPassesBetweenObservations, options);
+            Map<Vertex, Double> probabilities = new HashMap<>();
+            for (int id : assignment.getVerticesToSample()) {
+                probabilities.put(compiledNetwork.getVertex(id), estimates[id]);
+            }
+            return Collections.unmodifiableMap(probabilities);
+        });
+    }
+
+    /**
+     * Estimates marginal probabilities for each unlabelled vertex of a mapped network of having a positive label,
+     * starting from a training checkpoint, as
+     * {@link #predict(Network, TrainingCheckpoint, int, int, int, SamplingOptions)} does
+     * @param network mapped network, which must be the one checkpointed
+     * @param checkpoint checkpoint written during training
+     * @param observations number of observations to take for each label, to estimate probability from
+     * @param samplingPassesBurnIn number of Gibbs sampling passes before first sample
+     * @param samplingPassesBetweenObservations number of Gibbs sampling passes between successive label observations
+     * @param options options controlling how Gibbs sampling is carried out
+     * @return probability of true label for each vertex, indexed by vertex id (NaN for labelled vertices)
+     */
+    public static double[] predict(MappedNetwork network, TrainingCheckpoint checkpoint, int observations,
+                                   int samplingPassesBurnIn, int samplingPassesBetweenObservations,
+                                   SamplingOptions options) {
+        return runInPool(options, () -> {
+            CompiledNetwork compiledNetwork = network.getCompiledNetwork();
+            Assignment assignment = makeWarmStartedSampler(compiledNetwork, checkpoint, options);
+            double[] estimates = estimateMarginals(assignment, checkpoint.getParameters(), observations,
+                    samplingPassesBurnIn, samplingPassesBetweenObservations, options);
+            for (int id = 0; id < estimates.length; id++) {
+                if (compiledNetwork.isLabelled(id)) {
+                    estimates[id] = Double.NaN;
+                }
+            }
+            return estimates;
+        });
+    }
+
+    /**
+     * Estimates marginal probabilities for each unlabelled site of a lattice of having a positive label, based on
+     * model with the supplied parameters. Lattices are always swept as a checkerboard, so the sampling mode and
+     * incremental neighbour sums in the options are ignored.
+     * @param lattice lattice
+     * @param parameters parameters for model
+     * @param observations number of observations to take for each label, to estimate probability from
+     * @param samplingPassesBurnIn number of Gibbs sampling passes before first sample
+     * @param samplingPassesBetweenObservations number of Gibbs sampling passes between successive label observations
+     * @param options options controlling how Gibbs sampling is carried out
+     * @return probability of true label for each site, indexed by site id (NaN for labelled sites)
+     */
+    public static double[] predict(Lattice lattice, Parameters parameters, int observations,
+                                   int samplingPassesBurnIn, int samplingPassesBetweenObservations,
+                                   SamplingOptions options) {
+        return runInPool(options, () -> {
+            LatticeAssignment assignment = LatticeAssignment.samplingUnknownGivenKnown(
+                    lattice, new CounterRandom(resolveSeed(options), 0));
+            int numSites = lattice.getNumSites();
+            SweepRecorder recorder = new SweepRecorder(options, 0);
+
+            // Sampling, as in estimateMarginals
+            boolean raoBlackwellised = (options.getEstimator() == MarginalEstimator.RAO_BLACKWELL);
+            double[] estimateSums = new double[numSites];
+            for (int observation = 0; observation < observations; observation++) {
+                int samplingPasses = (observation == 0) ? samplingPassesBurnIn : samplingPassesBetweenObservations;
+                if (raoBlackwellised) {
+                    samplingPasses = Math.max(samplingPasses, 1);
+                }
+                for (int samplingPass = 0; samplingPass < samplingPasses; samplingPass++) {
+                    boolean lastPass = (samplingPass == samplingPasses - 1);
+                    recorder.performSamplingRound(assignment, lattice, parameters,
+                            (raoBlackwellised && lastPass) ? estimateSums : null);
+                }
+                if (!raoBlackwellised) {
+                    IntStream.range(0, numSites).parallel()
+                            .filter(assignment::getLabel)
+                            .forEach(site -> estimateSums[site]++);
+                }
+            }
+
+            for (int site = 0; site < numSites; site++) {
+                estimateSums[site] = assignment.isSampled(site) ? estimateSums[site] / observations : Double.NaN;
+            }
+            return estimateSums;
+        });
+    }
+
+    /**
+     * Starts a prediction session over the network: marginals are first estimated over the whole network, as by
+     * {@link #predict}, and can then be kept up to date cheaply as labels, vertices and edges are added, by
+     * resampling only the region around each change (see {@link PredictionSession}). The same sampling budget is
+     * used by the initial prediction and by each local update.
+     * @param network network
+     * @param parameters parameters for model
+     * @param observations number of observations to take for each label, to estimate probability from
+     * @param samplingPassesBurnIn number of Gibbs sampling passes before first sample
+     * @param samplingPassesBetweenObservations number of Gibbs sampling passes between successive label observations
+     * @param options options controlling how Gibbs sampling is carried out, initially and by each update (whose
+     *                regions are swept chromatically, or concurrently in PARALLEL mode, in the options' pool)
+     * @return session holding the current marginals
+     */
+    public static PredictionSession startPredictionSession(Network network, Parameters parameters, int observations,
+                                                           int samplingPassesBurnIn,
+                                                           int samplingPassesBetweenObservations,
+                                                           SamplingOptions options) {
+        return runInPool(options, () -> {
+            CompiledNetwork compiledNetwork = CompiledNetwork.compile(network, options.getVertexOrder());
+            long seed = resolveSeed(options);
+            LabelSampler assignment = makeLabelSampler(compiledNetwork, options, new CounterRandom(seed, 0));
+            double[] estimates = estimateMarginals(assignment, parameters, observations, samplingPassesBurnIn,
+                    samplingPassesBetweenObservations, options);
+            return new PredictionSession(compiledNetwork, assignment, estimates, parameters, observations,
+                    samplingPassesBurnIn, samplingPassesBetweenObservations, options, seed);
+        });
+    }
+
+    /**
+     * Estimates marginal probabilities for each unlabelled vertex of having a positive label, by running several
+     * independent Gibbs chains concurrently and merging their label counts. After each observation, the chains are
+     * compared using the Gelman-Rubin potential scale reduction factor (R-hat) of every unlabelled vertex's label;
+     * sampling stops as soon as the worst R-hat falls to the target, or when the observation budget runs out. R-hat
+     * is always computed from the sampled labels; the merged probabilities follow the estimator in the options.
+     * @param network network
+     * @param parameters parameters for model
+     * @param numChains number of independent chains (at least 2)
+     * @param samplingPassesBurnIn number of Gibbs sampling passes before first sample, for each chain
+     * @param samplingPassesBetweenObservations number of Gibbs sampling passes between successive label observations
+     * @param maxObservations maximum number of observations to take from each chain (at least 1)
+     * @param targetRHat sampling stops once every unlabelled vertex has R-hat at most this (e.g. 1.01; at least 1)
+     * @param options options controlling how Gibbs sampling is carried out
+     * @return merged marginal probabilities, with the diagnostics and the number of sweeps spent
+     */
+    public static PredictionResult predictUntilConverged(Network network, Parameters parameters, int numChains,
+                                                         int samplingPassesBurnIn,
+                                                         int samplingPassesBetweenObservations, int maxObservations,
+                                                         double targetRHat, SamplingOptions options) {
+        return runInPool(options, () -> {
+            if (numChains < 2) {
+                throw new IllegalArgumentException("At least 2 chains are needed to assess convergence");
+            }
+            if (maxObservations < 1) {
+                throw new IllegalArgumentException("At least 1 observation is needed");
+            }
+            if (!(targetRHat >= 1.0)) {
+                throw new IllegalArgumentException("Target R-hat must be at least 1, as R-hat never falls below 1");
+            }
+            CompiledNetwork compiledNetwork = CompiledNetwork.compile(network, options.getVertexOrder());
+            long seed = resolveSeed(options);
+            LabelSampler[] chains = new LabelSampler[numChains];
+            SweepRecorder[] recorders = new SweepRecorder[numChains];
+            for (int chain = 0; chain < numChains; chain++) {
+                chains[chain] = makeLabelSampler(compiledNetwork, options, new CounterRandom(seed, chain));
+                recorders[chain] = new SweepRecorder(options, chain);
+            }
+            int[] verticesToSample = chains[0].getVerticesToSample(); // the same for every chain
+            int replicasPerChain = chains[0].getNumReplicas();
+
+            // Sampling
+            boolean raoBlackwellised = (options.getEstimator() == MarginalEstimator.RAO_BLACKWELL);
+            int[][] positiveCounts = new int[numChains][compiledNetwork.getNumVertices()];
+            double[][] probTrueSums = raoBlackwellised ? new double[numChains][compiledNetwork.getNumVertices()] : null;
+            int observations = 0;
+            long sweeps = 0;
+            double maxRHat = Double.POSITIVE_INFINITY;
+            boolean converged = false;
+            while (observations < maxObservations && !converged) {
+                int samplingPasses = (observations == 0) ? samplingPassesBurnIn : samplingPassesBetweenObservations;
+                if (raoBlackwellised) {
+                    // as in estimateMarginals, the conditionals are recorded during the last pass before each
+                    // observation
+                    samplingPasses = Math.max(samplingPasses, 1);
+                }
+                int passes = samplingPasses;
+                IntStream.range(0, numChains).parallel()
+                        .forEach(chain -> {
+                            for (int samplingPass = 0; samplingPass < passes; samplingPass++) {
+                                recorders[chain].performSamplingRound(chains[chain], parameters,
+                                        (raoBlackwellised && samplingPass == passes - 1) ? probTrueSums[chain] : null);
+                            }
+                        });
+                sweeps += (long) numChains * samplingPasses;
+                for (int chain = 0; chain < numChains; chain++) {
+                    for (int id : verticesToSample) {
+                        positiveCounts[chain][id] += chains[chain].getPositiveCount(id);
+                    }
+                }
+                observations++;
+
+                if (observations >= MIN_OBSERVATIONS_BEFORE_CONVERGENCE_CHECK || observations == maxObservations) {
+                    maxRHat = ConvergenceDiagnostics.maxPotentialScaleReduction(
+                            positiveCounts, verticesToSample, (long) observations * replicasPerChain);
+                    converged = maxRHat <= targetRHat;
+                }
             }
-            for (Vertex vertex : assignment.getVerticesToSample()) {
-                if (assignment.getLabelFor(vertex)) {
-                    positiveCountsByVertex.compute(vertex, (key, value) -> (value == null) ? 1 : value + 1);
+
+            // Merging the chains' counts (or conditionals) into probabilities (only done for the unlabelled vertices)
+            double samplesPerVertex = (double) observations * replicasPerChain * numChains;
+            Map<Vertex, Double> probabilities = new HashMap<>();
+            for (int id : verticesToSample) {
+                double estimateSum = 0.0;
+                for (int chain = 0; chain < numChains; chain++) {
+                    estimateSum += raoBlackwellised ? probTrueSums[chain][id] : positiveCounts[chain][id];
+                }
+                probabilities.put(compiledNetwork.getVertex(id), estimateSum / samplesPerVertex);
+            }
+
+            return new PredictionResult(Collections.unmodifiableMap(probabilities), observations, sweeps, maxRHat,
+                    converged);
+        });
+    }
+
+    /**
+     * Estimates marginal probabilities for each unlabelled vertex of having a positive label by parallel tempering.
+     * A ladder of chains is run concurrently, rung r with the coupling scaled to beta * couplingScales[r], and the
+     * chains at neighbouring rungs periodically swap labels with the Metropolis acceptance probability. Chains with
+     * weak coupling move freely between magnetisation modes, and the swaps pass those moves down to rung 0, whose
+     * coupling is unscaled and from which the marginals are estimated. This greatly reduces the burn-in needed when
+     * beta is large and few labels are known. In {@link SamplingMode#ACTIVE_SET} mode each accepted swap costs an
+     * O(n) rebuild of both chains' flip probabilities, so with frequent swaps the saving over the other modes is small.
+     * @param network network
+     * @param parameters parameters for model
+     * @param couplingScales ladder of coupling scales, starting at 1 and usually decreasing (see
+     *                       {@link #geometricCouplingLadder}); one chain is run per rung
+     * @param observations number of observations to take for each label, to estimate probability from
+     * @param samplingPassesBurnIn number of Gibbs sampling passes before first sample
+     * @param samplingPassesBetweenObservations number of Gibbs sampling passes between successive label observations
+     * @param options options controlling how Gibbs sampling is carried out, for every rung
+     * @return marginal probabilities, with the swap acceptance rates and mean energies of the rungs
+     */
+    public static TemperingResult predictWithTempering(Network network, Parameters parameters,
+                                                       double[] couplingScales, int observations,
+                                                       int samplingPassesBurnIn,
+                                                       int samplingPassesBetweenObservations,
+                                                       SamplingOptions options) {
+        return runInPool(options, () -> {
+            if (couplingScales.length == 0 || couplingScales[0] != 1.0) {
+                throw new IllegalArgumentException("The coupling scale ladder must start at 1");
+            }
+            if (options.getMode() == SamplingMode.MULTI_SPIN) {
+                throw new IllegalArgumentException("Sampling mode " + options.getMode()
+                        + " is not supported for parallel tempering");
+            }
+            CompiledNetwork compiledNetwork = CompiledNetwork.compile(network, options.getVertexOrder());
+            ParallelTempering tempering = new ParallelTempering(compiledNetwork, parameters, couplingScales, options,
+                    resolveSeed(options));
+            int[] verticesToSample = tempering.getTargetReplica().getVerticesToSample(); // the same for every rung
+
+            // Sampling, as in predict, but reading labels from whichever chain is at rung 0
+            boolean raoBlackwellised = (options.getEstimator() == MarginalEstimator.RAO_BLACKWELL);
+            double[] estimateSums = new double[compiledNetwork.getNumVertices()];
+            double[] energySums = new double[tempering.getNumRungs()];
+            for (int observation = 0; observation < observations; observation++) {
+                int samplingPasses = (observation == 0) ? samplingPassesBurnIn : samplingPassesBetweenObservations;
+                if (raoBlackwellised) {
+                    samplingPasses = Math.max(samplingPasses, 1);
+                }
+                for (int samplingPass = 0; samplingPass < samplingPasses; samplingPass++) {
+                    boolean lastPass = (samplingPass == samplingPasses - 1);
+                    tempering.performSamplingRound((raoBlackwellised && lastPass) ? estimateSums : null);
+                }
+                if (!raoBlackwellised) {
+                    Assignment targetReplica = tempering.getTargetReplica();
+                    for (int id : verticesToSample) {
+                        estimateSums[id] += targetReplica.getPositiveCount(id);
+                    }
+                }
+                for (int rung = 0; rung < energySums.length; rung++) {
+                    energySums[rung] += tempering.getEnergy(rung);
+                }
+            }
+
+            Map<Vertex, Double> probabilities = new HashMap<>();
+            for (int id : verticesToSample) {
+                probabilities.put(compiledNetwork.getVertex(id), estimateSums[id] / observations);
+            }
+            double[] meanEnergies = new double[energySums.length];
+            for (int rung = 0; rung < energySums.length; rung++) {
+                meanEnergies[rung] = energySums[rung] / observations;
+            }
+            return new TemperingResult(Collections.unmodifiableMap(probabilities), tempering.getCouplingScales(),
+                    tempering.getSwapAcceptanceRates(), meanEnergies);
+        });
+    }
+
+    /**
+     * Estimates marginal probabilities for many prediction queries at once. Every query shares the network's
+     * structure and features, but has its own known labels (the labels stored in the network itself are ignored).
+     * Queries are answered in batches of up to 64 with multi-spin coding: each query is one replica of a
+     * {@link SamplingMode#MULTI_SPIN} chain, with its known labels pinned in its own replica only, so a single
+     * sweep over the adjacency advances all the queries in the batch. The cost per sweep is close to that of a single
+     * query, so throughput grows with the number of queries per batch. The sampling mode in the options is ignored.
+     * @param network network, whose labels are ignored
+     * @param knownLabels known labels of each query: map (vertex) -> (label), for vertices of the network
+     * @param parameters parameters for model
+     * @param observations number of observations to take for each label, to estimate probability from
+     * @param samplingPassesBurnIn number of Gibbs sampling passes before first sample
+     * @param samplingPassesBetweenObservations number of Gibbs sampling passes between successive label observations
+     * @param options options controlling how Gibbs sampling is carried out
+     * @return for each query, in order, map (vertex not known in the query) -> (probability of true label)
+     */
+    public static List<Map<Vertex, Double>> predictBatch(Network network, List<Map<Vertex, Boolean>> knownLabels,
+                                                         Parameters parameters, int observations,
+                                                         int samplingPassesBurnIn,
+                                                         int samplingPassesBetweenObservations,
+                                                         SamplingOptions options) {
+        for (Map<Vertex, Boolean> queryLabels : knownLabels) {
+            for (Vertex vertex : queryLabels.keySet()) {
+                if (!network.getVertices().contains(vertex)) {
+                    throw new IllegalArgumentException("Known label given for a vertex not in the network");
                 }
             }
         }
+        return runInPool(options, () -> {
+            CompiledNetwork compiledNetwork = CompiledNetwork.compile(network, options.getVertexOrder());
+            long seed = resolveSeed(options);
+            // the replicas' estimates share one array, so large networks get fewer queries per batch
+            int maxQueriesPerBatch = Math.max(1, Math.min(MultiSpinAssignment.NUM_REPLICAS,
+                    MAX_ARRAY_LENGTH / Math.max(compiledNetwork.getNumVertices(), 1)));
+            List<Map<Vertex, Double>> probabilities = new ArrayList<>(knownLabels.size());
+            for (int firstQuery = 0; firstQuery < knownLabels.size(); firstQuery += maxQueriesPerBatch) {
+                int batch = firstQuery / maxQueriesPerBatch;
+                List<Map<Vertex, Boolean>> batchLabels = knownLabels.subList(firstQuery,
+                        Math.min(knownLabels.size(), firstQuery + maxQueriesPerBatch));
+                probabilities.addAll(predictBatch(compiledNetwork, batchLabels, parameters, observations,
+                        samplingPassesBurnIn, samplingPassesBetweenObservations, options,
+                        new CounterRandom(seed, batch), batch));
+            }
+            return Collections.unmodifiableList(probabilities);
+        });
+    }
 
-        // Computing probabilities from the samples (only done for the unlabelled vertices)
-        Map<Vertex, Double> probabilities = new HashMap<>();
-        for (Vertex vertex : assignment.getVerticesToSample()) {
-            int positiveCount = positiveCountsByVertex.computeIfAbsent(vertex, key -> 0);
-            double probability = ((double) positiveCount) / ((double) observations);
-            probabilities.put(vertex, probability);
+    /**
+     * Builds a ladder of coupling scales for {@link #predictWithTempering}, falling geometrically from 1 to the
+     * minimum scale. A sensible number of rungs is the number of available cores.
+     * @param numRungs number of rungs (at least 1)
+     * @param minScale coupling scale of the last rung, between 0 (exclusive) and 1
+     * @return ladder of coupling scales
+     */
+    public static double[] geometricCouplingLadder(int numRungs, double minScale) {
+        if (numRungs < 1 || !(minScale > 0.0 && minScale <= 1.0)) {
+            throw new IllegalArgumentException("Need at least 1 rung, and a minimum scale in (0, 1]");
+        }
+        double[] couplingScales = new double[numRungs];
+        for (int rung = 0; rung < numRungs; rung++) {
+            couplingScales[rung] = (numRungs == 1) ? 1.0 : Math.pow(minScale, (double) rung / (numRungs - 1));
         }
+        return couplingScales;
+    }
 
-        return Collections.unmodifiableMap(probabilities);
+    /**
+     * Approximates marginal probabilities for each unlabelled vertex of having a positive label by naive mean-field
+     * inference, which is deterministic and usually much cheaper than Gibbs sampling. Mean-field ignores correlations
+     * between neighbours, so tends to be overconfident when beta is large.
+     * @param network network
+     * @param parameters parameters for model
+     * @param maxIterations maximum number of parallel iterations
+     * @param tolerance iteration stops once no vertex's mean label changes by more than this
+     * @param damping weight (between 0 and 1) given to the previous iteration's values in each update
+     * @return approximate marginals, with the number of iterations run and the final residual
+     */
+    public static InferenceResult predictMeanField(Network network, Parameters parameters, int maxIterations,
+                                                   double tolerance, double damping) {
+        return predictMeanField(network, parameters, maxIterations, tolerance, damping, SamplingOptions.defaults());
+    }
+
+    /**
+     * Approximates marginal probabilities by naive mean-field inference, as
+     * {@link #predictMeanField(Network, Parameters, int, double, double)} does, running its iterations in the
+     * options' pool
+     * @param network network
+     * @param parameters parameters for model
+     * @param maxIterations maximum number of parallel iterations
+     * @param tolerance iteration stops once no vertex's mean label changes by more than this
+     * @param damping weight (between 0 and 1) given to the previous iteration's values in each update
+     * @param options options giving the pool and vertex order; the options that control sampling are ignored
+     * @return approximate marginals, with the number of iterations run and the final residual
+     */
+    public static InferenceResult predictMeanField(Network network, Parameters parameters, int maxIterations,
+                                                   double tolerance, double damping, SamplingOptions options) {
+        return runInPool(options, () -> {
+            CompiledNetwork compiledNetwork = CompiledNetwork.compile(network, options.getVertexOrder());
+            MeanFieldInference inference = new MeanFieldInference(compiledNetwork);
+            inference.run(parameters, maxIterations, tolerance, damping);
+            return new InferenceResult(getUnlabelledProbabilities(compiledNetwork, inference::getProbTrue),
+                    inference.getIterations(), inference.getResidual(), inference.getResidual() <= tolerance);
+        });
+    }
+
+    /**
+     * Approximates marginal probabilities for each unlabelled vertex of having a positive label by loopy belief
+     * propagation, which is deterministic and usually much cheaper than Gibbs sampling. It is exact on trees, and
+     * typically accurate on sparse networks with long loops.
+     * @param network network
+     * @param parameters parameters for model
+     * @param maxIterations maximum number of parallel iterations
+     * @param tolerance iteration stops once no message changes by more than this
+     * @param damping weight (between 0 and 1) given to the previous iteration's values in each update
+     * @return approximate marginals, with the number of iterations run and the final residual
+     */
+    public static InferenceResult predictBeliefPropagation(Network network, Parameters parameters,
+                                                           int maxIterations, double tolerance, double damping) {
+        return predictBeliefPropagation(network, parameters, maxIterations, tolerance, damping,
+                SamplingOptions.defaults());
+    }
+
+    /**
+     * Approximates marginal probabilities by loopy belief propagation, as
+     * {@link #predictBeliefPropagation(Network, Parameters, int, double, double)} does, running its iterations in
+     * the options' pool
+     * @param network network
+     * @param parameters parameters for model
+     * @param maxIterations maximum number of parallel iterations
+     * @param tolerance iteration stops once no message changes by more than this
+     * @param damping weight (between 0 and 1) given to the previous iteration's values in each update
+     * @param options options giving the pool and vertex order; the options that control sampling are ignored
+     * @return approximate marginals, with the number of iterations run and the final residual
+     */
+    public static InferenceResult predictBeliefPropagation(Network network, Parameters parameters,
+                                                           int maxIterations, double tolerance, double damping,
+                                                           SamplingOptions options) {
+        return runInPool(options, () -> {
+            CompiledNetwork compiledNetwork = CompiledNetwork.compile(network, options.getVertexOrder());
+            BeliefPropagation inference = new BeliefPropagation(compiledNetwork);
+            inference.run(parameters, maxIterations, tolerance, damping);
+            return new InferenceResult(getUnlabelledProbabilities(compiledNetwork, inference::getProbTrue),
+                    inference.getIterations(), inference.getResidual(), inference.getResidual() <= tolerance);
+        });
     }
 
     /**
@@ -87,22 +803,81 @@ public class Algorithms {
      * @return new network with previously-unlabelled vertices now labelled by Gibbs sampling
      */
     public static Network sampleMissingLabels(Network network, Parameters parameters, int numRounds) {
-        Assignment assignment = Assignment.samplingUnknownGivenKnown(network);
+        return sampleMissingLabels(network, parameters, numRounds, SamplingOptions.defaults());
+    }
 
-        // Sampling
-        for (int round = 0; round < numRounds; round++) {
-            assignment.performSamplingRound(parameters);
-        }
+    /**
+     * Creates a new network with the same structure as the existing network, but with the previously-unlabelled
+     * vertices now labelled by Gibbs sampling from a model with the parameters provided. This is useful for setting up
+     * test cases.
+     * @param network old network
+     * @param parameters parameters for model
+     * @param numRounds number of Gibbs sampling rounds
+     * @param options options controlling how Gibbs sampling is carried out
+     * @return new network with previously-unlabelled vertices now labelled by Gibbs sampling
+     */
+    public static Network sampleMissingLabels(Network network, Parameters parameters, int numRounds,
+                                              SamplingOptions options) {
+        return runInPool(options, () -> {
+            CompiledNetwork compiledNetwork = CompiledNetwork.compile(network, options.getVertexOrder());
+            CounterRandom random = new CounterRandom(resolveSeed(options), 0);
+            LabelSampler assignment = makeLabelSampler(compiledNetwork, options, random);
 
-        // Grabbing labels - will contain the original labelled for the originally-labelled points, as well as the
-        // sampled labels for the originally-unlabelled points
-        Map<Vertex, Boolean> newLabels = new HashMap<>();
-        for (Vertex vertex : network.getVertices()) {
-            newLabels.put(vertex, assignment.getLabelFor(vertex));
-        }
+            // Sampling
+            SweepRecorder recorder = new SweepRecorder(options, 0);
+            for (int round = 0; round < numRounds; round++) {
+                recorder.performSamplingRound(assignment, parameters, null);
+            }
+
+            // Grabbing labels - will contain the original labelled for the originally-labelled points, as well as the
+            // sampled labels for the originally-unlabelled points
+            Map<Vertex, Boolean> newLabels = new HashMap<>();
+            for (int id = 0; id < compiledNetwork.getNumVertices(); id++) {
+                newLabels.put(compiledNetwork.getVertex(id), assignment.getLabel(id));
+            }
+
+            // creating shallow copies, so that adding vertices/edges to the original network won't affect the new
+            // network
+            return new Network(new LinkedHashSet<>(network.getVertices()), new LinkedHashSet<>(network.getEdges()),
+                    newLabels);
+        });
+    }
+
+    /**
+     * Creates a new lattice with the same features as the existing lattice, but with the previously-unlabelled sites
+     * now labelled by Gibbs sampling from a model with the parameters provided. This is useful for setting up test
+     * cases.
+     * @param lattice old lattice
+     * @param parameters parameters for model
+     * @param numRounds number of Gibbs sampling rounds
+     * @param options options controlling how Gibbs sampling is carried out (the sampling mode is ignored)
+     * @return new lattice with previously-unlabelled sites now labelled by Gibbs sampling
+     */
+    public static Lattice sampleMissingLabels(Lattice lattice, Parameters parameters, int numRounds,
+                                              SamplingOptions options) {
+        return runInPool(options, () -> {
+            LatticeAssignment assignment = LatticeAssignment.samplingUnknownGivenKnown(
+                    lattice, new CounterRandom(resolveSeed(options), 0));
+            SweepRecorder recorder = new SweepRecorder(options, 0);
+            for (int round = 0; round < numRounds; round++) {
+                recorder.performSamplingRound(assignment, lattice, parameters, null);
+            }
+            Lattice newLattice = lattice.copy();
+            for (int site = 0; site < newLattice.getNumSites(); site++) {
+                newLattice.setLabel(site, assignment.getLabel(site));
+            }
+            return newLattice;
+        });
+    }
 
-        // creating shallow copies, so that adding vertices/edges to the original network won't affect the new network
-        return new Network(new HashSet<>(network.getVertices()), new HashSet<>(network.getEdges()), newLabels);
+    /**
+     * Computes the colouring that {@link SamplingMode#CHROMATIC} would use for this network. This is useful for
+     * checking the number of sequential phases per sweep, and the one-off cost of colouring, before choosing a mode.
+     * @param network network
+     * @return colouring of the network
+     */
+    public static GraphColouring colour(Network network) {
+        return CompiledNetwork.compile(network).getColouring();
     }
 
     /**
@@ -119,7 +894,184 @@ public class Algorithms {
                 retainedLabels.put(entry.getKey(), entry.getValue());
             }
         }
-        return new Network(new HashSet<>(network.getVertices()), new HashSet<>(network.getEdges()), retainedLabels);
+        return new Network(new LinkedHashSet<>(network.getVertices()), new LinkedHashSet<>(network.getEdges()),
+                retainedLabels);
+    }
+
+    static void performGradientDescentRound(LabelStatistics targetAssignment,
+                                            LabelStatistics observedAssignment, Parameters parameters,
+                                            double learningRate, SamplingOptions options, int descentStep) {
+        // Goal: Optimise likelihood L = log Prob(y_known | x; alpha, beta)  (marginalising over y_unknown)
+        // Partial derivatives:
+        // dL/d(alpha) = sum_i E_(y_unknown | y_known)[x_i y_i| alpha,beta] - sum_i E_(y_all)[x_i y_i| alpha,beta]
+        // dL/d(beta) = sum_(i,j) E_(y_unknown| y_known)[y_i y_j| alpha,beta] - sum_{i,j) E_(y_all)[y_i y_j| alpha,beta]
+        //    (where the sum_{i, j) is over pairs of vertices joined by an edge)
+        // The assignments keep these sums up to date as labels flip, so the step itself is O(1) (except in PARALLEL
+        // mode, where racing flips make the updates unreliable, and the sums are recounted exactly instead)
+        long alphaDerivative = targetAssignment.getFeatureLabelSum() - observedAssignment.getFeatureLabelSum();
+        long betaDerivative = targetAssignment.getEdgeLabelSum() - observedAssignment.getEdgeLabelSum();
+        parameters.incrementAlpha(learningRate * alphaDerivative);
+        parameters.incrementBeta(learningRate * betaDerivative);
+        parameters.makeSnapshot();
+        if (options.getListener().isPresent()) {
+            options.getListener().get().onDescentStep(new DescentEvent(descentStep, alphaDerivative, betaDerivative,
+                    parameters.getAlpha(), parameters.getBeta()));
+        }
+    }
+
+    // for sampling the unknown labels given the known labels
+    private static LabelSampler makeLabelSampler(CompiledNetwork compiledNetwork, SamplingOptions options,
+                                                 CounterRandom random) {
+        if (options.getMode() == SamplingMode.MULTI_SPIN) {
+            return new MultiSpinAssignment(compiledNetwork, random);
+        } else {
+            return Assignment.samplingUnknownGivenKnown(compiledNetwork, options, random);
+        }
+    }
+
+    // The target chain of a checkpointed training run, which samples the unknown labels given the known labels, as
+    // prediction does, carrying on from its checkpointed labels and random numbers
+    private static Assignment makeWarmStartedSampler(CompiledNetwork compiledNetwork, TrainingCheckpoint checkpoint,
+                                                     SamplingOptions options) {
+        if (options.getMode() == SamplingMode.MULTI_SPIN) {
+            throw new IllegalArgumentException("Sampling mode " + options.getMode()
+                    + " cannot be started from a checkpoint");
+        }
+        checkpoint.checkMatches(compiledNetwork, TrainingCheckpoint.fingerprint(compiledNetwork));
+        Assignment assignment = Assignment.samplingUnknownGivenKnown(compiledNetwork, options,
+                new CounterRandom(checkpoint.getSeed(), 0));
+        checkpoint.restoreTarget(assignment);
+        return assignment;
+    }
+
+    // Runs the sampler, and returns its estimate of each sampled vertex's marginal probability of a positive label
+    private static double[] estimateMarginals(LabelSampler assignment, Parameters parameters, int observations,
+                                              int samplingPassesBurnIn, int samplingPassesBetweenObservations,
+                                              SamplingOptions options) {
+        boolean raoBlackwellised = (options.getEstimator() == MarginalEstimator.RAO_BLACKWELL);
+        SweepRecorder recorder = new SweepRecorder(options, 0);
+        double[] estimateSums = new double[assignment.getNumVertices()]; // i.e. num +ve labels sampled so far,
+            // or sum of the conditional probabilities of a +ve label, depending on the estimator
+        for (int observation = 0; observation < observations; observation++) {
+            int samplingPasses = (observation == 0) ? samplingPassesBurnIn : samplingPassesBetweenObservations;
+            if (raoBlackwellised) {
+                // the conditionals are recorded during a pass, so every observation needs at least one
+                samplingPasses = Math.max(samplingPasses, 1);
+            }
+            for (int samplingPass = 0; samplingPass < samplingPasses; samplingPass++) {
+                boolean lastPass = (samplingPass == samplingPasses - 1);
+                recorder.performSamplingRound(assignment, parameters,
+                        (raoBlackwellised && lastPass) ? estimateSums : null);
+            }
+            if (!raoBlackwellised) {
+                for (int id : assignment.getVerticesToSample()) {
+                    estimateSums[id] += assignment.getPositiveCount(id);
+                }
+            }
+        }
+
+        double samplesPerVertex = (double) observations * assignment.getNumReplicas();
+        for (int id : assignment.getVerticesToSample()) {
+            estimateSums[id] /= samplesPerVertex;
+        }
+        return estimateSums;
+    }
+
+    // One batch of up to 64 queries, query q in replica q
+    private static List<Map<Vertex, Double>> predictBatch(CompiledNetwork compiledNetwork,
+                                                          List<Map<Vertex, Boolean>> knownLabels,
+                                                          Parameters parameters, int observations,
+                                                          int samplingPassesBurnIn,
+                                                          int samplingPassesBetweenObservations,
+                                                          SamplingOptions options, CounterRandom random, int batch) {
+        int numVertices = compiledNetwork.getNumVertices();
+        int numQueries = knownLabels.size();
+        long[] pinnedReplicas = new long[numVertices];
+        long[] pinnedLabels = new long[numVertices];
+        // unused replicas are pinned everywhere, so that vertices known in every query are not sampled at all
+        long unusedReplicas = (numQueries == MultiSpinAssignment.NUM_REPLICAS) ? 0L : -1L << numQueries;
+        Arrays.fill(pinnedReplicas, unusedReplicas);
+        for (int query = 0; query < numQueries; query++) {
+            for (Map.Entry<Vertex, Boolean> entry : knownLabels.get(query).entrySet()) {
+                int id = compiledNetwork.getId(entry.getKey());
+                pinnedReplicas[id] |= 1L << query;
+                if (entry.getValue()) {
+                    pinnedLabels[id] |= 1L << query;
+                }
+            }
+        }
+        MultiSpinAssignment assignment = new MultiSpinAssignment(compiledNetwork, random, pinnedReplicas,
+                pinnedLabels);
+        SweepRecorder recorder = new SweepRecorder(options, batch);
+
+        // Sampling, as in estimateMarginals, but keeping each replica's estimates apart
+        boolean raoBlackwellised = (options.getEstimator() == MarginalEstimator.RAO_BLACKWELL);
+        double[] estimateSums = new double[numVertices * numQueries]; // indexed by id * numQueries + query
+        long queryReplicas = ~unusedReplicas;
+        for (int observation = 0; observation < observations; observation++) {
+            int samplingPasses = (observation == 0) ? samplingPassesBurnIn : samplingPassesBetweenObservations;
+            if (raoBlackwellised) {
+                samplingPasses = Math.max(samplingPasses, 1);
+            }
+            for (int samplingPass = 0; samplingPass < samplingPasses; samplingPass++) {
+                double[] replicaProbTrueSums = (raoBlackwellised && samplingPass == samplingPasses - 1)
+                        ? estimateSums : null;
+                recorder.performCustomSamplingRound(assignment, parameters,
+                        () -> assignment.performSamplingRound(parameters, null, replicaProbTrueSums, numQueries));
+            }
+            if (!raoBlackwellised) {
+                // each vertex's entries are written by one task only
+                Arrays.stream(assignment.getVerticesToSample()).parallel()
+                        .forEach(id -> {
+                            for (long replicas = assignment.getSpins(id) & queryReplicas; replicas != 0L;
+                                 replicas &= replicas - 1) {
+                                estimateSums[id * numQueries + Long.numberOfTrailingZeros(replicas)]++;
+                            }
+                        });
+            }
+        }
+
+        List<Map<Vertex, Double>> probabilities = new ArrayList<>(numQueries);
+        for (int query = 0; query < numQueries; query++) {
+            Map<Vertex, Double> queryProbabilities = new HashMap<>();
+            for (int id : assignment.getVerticesToSample()) {
+                if ((pinnedReplicas[id] & (1L << query)) == 0L) {
+                    queryProbabilities.put(compiledNetwork.getVertex(id),
+                            estimateSums[id * numQueries + query] / observations);
+                }
+            }
+            probabilities.add(Collections.unmodifiableMap(queryProbabilities));
+        }
+        return probabilities;
+    }
+
+    private static Map<Vertex, Double> getUnlabelledProbabilities(CompiledNetwork compiledNetwork,
+                                                                  IntToDoubleFunction probTrue) {
+        Map<Vertex, Double> probabilities = new HashMap<>();
+        for (int id = 0; id < compiledNetwork.getNumVertices(); id++) {
+            if (!compiledNetwork.isLabelled(id)) {
+                probabilities.put(compiledNetwork.getVertex(id), probTrue.applyAsDouble(id));
+            }
+        }
+        return Collections.unmodifiableMap(probabilities);
+    }
+
+    // Runs a task in the options' pool, if there is one, so that the parallel streams it starts run in that pool too.
+    // A task started from a thread already in the pool runs directly, as joining would tie up that thread.
+    static <T> T runInPool(SamplingOptions options, Supplier<T> task) {
+        if (!options.getPool().isPresent()) {
+            return task.get();
+        }
+        ForkJoinPool pool = options.getPool().get();
+        Thread thread = Thread.currentThread();
+        if (thread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) thread).getPool() == pool) {
+            return task.get();
+        }
+        return pool.submit(task::get).join();
+    }
+
+    private static long resolveSeed(SamplingOptions options) {
+        return options.getSeed().orElseGet(() -> ThreadLocalRandom.current().nextLong());
     }
 
 }
@@ -1,61 +1,281 @@
 package core;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
 
-class Assignment {
+class Assignment implements LabelSampler {
+
+    private final CompiledNetwork network;
+    private final SamplingMode mode;
+    private final CounterRandom random;
+    private long sweepsPerformed = 0; // counter for the random numbers
 
     // Vertices are divided between those whose labels will be kept fixed,
     // ... and those whose labels will be sampled using Gibbs sampling.
-    private final Set<Vertex> verticesToSample; // the labels for these vertices will be Gibbs sampled
-    private final Map<Vertex, AtomicBoolean> labels; // contains labels for both types of vertices
-        // use of AtomicBoolean is purely for memory visibility between threads - no synchronization is used
-
-    private Assignment(Set<Vertex> allVertices, Map<Vertex, Boolean> fixedLabels) {
-        verticesToSample = new HashSet<>();
-        labels = new HashMap<>();
-        for (Vertex vertex : allVertices) {
-            if (fixedLabels.containsKey(vertex)) {
+    private final int[] verticesToSample; // ids of the vertices whose labels will be Gibbs sampled
+    private final boolean[] labels; // indexed by vertex id; contains labels for both types of vertices
+        // no synchronization is used: the JLS guarantees no word tearing for array elements, and the end of each
+        // parallel sampling round publishes all writes to the next round
+    private final int[][] verticesToSampleByColour; // for CHROMATIC mode only: verticesToSample split by colour
+    private final ClusterUpdate clusterUpdate; // for CLUSTER mode only
+    private final ActiveSetUpdate activeSetUpdate; // for ACTIVE_SET mode only
+    private final AtomicIntegerArray neighbourSpinSums; // sum_j y_j over each vertex's neighbours, if tracked
+        // atomic so that deltas pushed by neighbours being resampled concurrently are never lost
+
+    // Sufficient statistics for gradient descent, updated as labels flip
+    private final LongAdder featureLabelSum = new LongAdder(); // sum_i x_i y_i, over all vertices
+    private final LongAdder edgeLabelSum = new LongAdder(); // sum_(i,j) y_i y_j, over all edges
+    // With stale reads, two neighbours flipping at the same time can each compute the edge statistic's delta from
+    // the other's old label, so in PARALLEL mode no deltas are pushed: the statistics are recounted exactly when
+    // first asked for after a round
+    private final boolean recountStatistics;
+    private boolean statisticsStale = false;
+
+    private Assignment(CompiledNetwork network, SamplingOptions options, CounterRandom random,
+                       boolean conditionOnKnownLabels) {
+        this.network = network;
+        this.mode = options.getMode();
+        this.recountStatistics = (mode == SamplingMode.PARALLEL);
+        this.random = random;
+        int numVertices = network.getNumVertices();
+        long initialSweepKey = random.getSweepKey(-1);
+        labels = new boolean[numVertices];
+        boolean[] fixed = new boolean[numVertices];
+        int[] toSample = new int[numVertices];
+        int numToSample = 0;
+        for (int id = 0; id < numVertices; id++) {
+            if (conditionOnKnownLabels && network.isLabelled(id)) {
                 // label fixed - initialise with fixed label
-                labels.put(vertex, new AtomicBoolean(fixedLabels.get(vertex)));
+                labels[id] = network.getKnownLabel(id);
+                fixed[id] = true;
             } else {
                 // label not fixed - initialise with random label, and put vertex up for sampling
-                labels.put(vertex, new AtomicBoolean(BooleanUtils.randBool()));
-                verticesToSample.add(vertex);
+                labels[id] = CounterRandom.getVertexBits(initialSweepKey, id) < 0L;
+                toSample[numToSample++] = id;
             }
         }
+        verticesToSample = (numToSample == numVertices) ? toSample : Arrays.copyOf(toSample, numToSample);
+        verticesToSampleByColour = (mode == SamplingMode.CHROMATIC)
+                ? network.getColouring().splitByColour(verticesToSample) : null;
+        clusterUpdate = (mode == SamplingMode.CLUSTER) ? new ClusterUpdate(network, fixed) : null;
+        activeSetUpdate = (mode == SamplingMode.ACTIVE_SET) ? new ActiveSetUpdate(network, verticesToSample) : null;
+
+        // the active-set schedule needs the neighbour sums to recompute flip probabilities around each flip
+        if (options.usesIncrementalNeighbourSums() || mode == SamplingMode.ACTIVE_SET) {
+            neighbourSpinSums = new AtomicIntegerArray(numVertices);
+            IntStream.range(0, numVertices).parallel()
+                    .forEach(id -> neighbourSpinSums.set(id, computeNeighbourSpinSum(id)));
+        } else {
+            neighbourSpinSums = null;
+        }
+
+        resyncStatistics();
     }
 
     // to Gibbs-sample the unknown labels, conditioning on the known labels
-    static Assignment samplingUnknownGivenKnown(Network network) {
-        return new Assignment(network.getVertices(), network.getLabels());
+    static Assignment samplingUnknownGivenKnown(CompiledNetwork network, SamplingOptions options,
+                                                CounterRandom random) {
+        return new Assignment(network, options, random, true);
     }
 
     // to Gibbs-sample all the labels, conditioning on nothing
-    static Assignment samplingAll(Network network) {
-        return new Assignment(network.getVertices(), new HashMap<>());
+    static Assignment samplingAll(CompiledNetwork network, SamplingOptions options, CounterRandom random) {
+        return new Assignment(network, options, random, false);
     }
 
-    boolean getLabelFor(Vertex vertex) {
-        return labels.get(vertex).get();
+    @Override
+    public int getNumVertices() {
+        return labels.length;
     }
 
-    void setLabelFor(Vertex vertex, boolean newLabel) {
-        labels.get(vertex).set(newLabel);
+    @Override
+    public boolean getLabel(int id) {
+        return labels[id];
     }
 
-    Set<Vertex> getVerticesToSample() {
+    @Override
+    public int[] getVerticesToSample() {
         return verticesToSample;
     }
 
-    void performSamplingRound(Parameters parameters) {
-        // Running in parallel - each vertex will get a view of the other vertices' labels that is up to date
-        // either as of this iteration or as of the previous iteration - this should be accurate enough
-        verticesToSample.parallelStream()
-                .forEach(vertex -> vertex.resample(this, parameters));
+    @Override
+    public int getNumReplicas() {
+        return 1;
+    }
+
+    @Override
+    public int getPositiveCount(int id) {
+        return labels[id] ? 1 : 0;
+    }
+
+    @Override
+    public long getFeatureLabelSum() {
+        resyncStatisticsIfStale();
+        return featureLabelSum.sum();
+    }
+
+    @Override
+    public long getEdgeLabelSum() {
+        resyncStatisticsIfStale();
+        return edgeLabelSum.sum();
+    }
+
+    long getSweepsPerformed() {
+        return sweepsPerformed;
+    }
+
+    // the labels as a bitset (bit i of word i / 64 for vertex i), for checkpoints
+    long[] getLabelBits() {
+        long[] labelBits = new long[CompiledNetwork.numWords(labels.length)];
+        IntStream.range(0, labelBits.length).parallel()
+                .forEach(word -> {
+                    int end = Math.min(64 * (word + 1), labels.length);
+                    long bits = 0L;
+                    for (int id = 64 * word; id < end; id++) {
+                        if (labels[id]) {
+                            bits |= 1L << id;
+                        }
+                    }
+                    labelBits[word] = bits;
+                });
+        return labelBits;
+    }
+
+    // Restores the sampled labels and the random number counter from a checkpoint, so that sampling carries on as if
+    // never interrupted; the fixed labels are left as they are
+    void restore(long[] labelBits, long sweepsPerformed) {
+        IntStream.of(verticesToSample).parallel()
+                .forEach(id -> labels[id] = (labelBits[id >>> 6] & (1L << id)) != 0);
+        this.sweepsPerformed = sweepsPerformed;
+        if (activeSetUpdate != null) {
+            activeSetUpdate.invalidate();
+        }
+        if (neighbourSpinSums != null) {
+            IntStream.range(0, labels.length).parallel()
+                    .forEach(id -> neighbourSpinSums.set(id, computeNeighbourSpinSum(id)));
+        }
+        resyncStatistics();
+    }
+
+    private void resyncStatistics() {
+        long exactFeatureLabelSum = IntStream.range(0, labels.length).parallel()
+                .mapToLong(id -> BooleanUtils.spin(network.getFeature(id)) * BooleanUtils.spin(labels[id]))
+                .sum();
+        // each edge is seen once from each of its endpoints
+        long exactEdgeLabelSum = IntStream.range(0, labels.length).parallel()
+                .mapToLong(id -> BooleanUtils.spin(labels[id]) * getNeighbourSpinSum(id))
+                .sum() / 2;
+        featureLabelSum.reset();
+        featureLabelSum.add(exactFeatureLabelSum);
+        edgeLabelSum.reset();
+        edgeLabelSum.add(exactEdgeLabelSum);
+        statisticsStale = false;
+    }
+
+    private void resyncStatisticsIfStale() {
+        if (statisticsStale) {
+            resyncStatistics();
+        }
+    }
+
+    @Override
+    public void performSamplingRound(Parameters parameters, double[] probTrueSums) {
+        ConditionalTable conditionalTable = parameters.getConditionalTable(network.getMaxDegree());
+        long sweepKey = random.getSweepKey(sweepsPerformed++);
+        switch (mode) {
+            case PARALLEL:
+                // Running in parallel - each vertex will get a view of the other vertices' labels that is up to date
+                // either as of this iteration or as of the previous iteration - this should be accurate enough
+                IntStream.of(verticesToSample).parallel()
+                        .forEach(id -> resample(id, conditionalTable, sweepKey, probTrueSums));
+                statisticsStale = true;
+                break;
+            case CHROMATIC:
+                // No two vertices in a colour class are neighbours, so while a class is being resampled in parallel,
+                // all the labels it reads are fixed. The end of each class's parallel stream publishes its writes
+                // to the next class, so every update sees up-to-date neighbours - this is exact Gibbs sampling.
+                for (int[] colourClass : verticesToSampleByColour) {
+                    IntStream.of(colourClass).parallel()
+                            .forEach(id -> resample(id, conditionalTable, sweepKey, probTrueSums));
+                }
+                break;
+            case CLUSTER:
+                // Cluster flips change many labels at once, so the statistics are recomputed rather than updated
+                clusterUpdate.performRound(labels, parameters, sweepKey);
+                if (neighbourSpinSums != null) {
+                    IntStream.range(0, labels.length).parallel()
+                            .forEach(id -> neighbourSpinSums.set(id, computeNeighbourSpinSum(id)));
+                }
+                resyncStatistics();
+                if (probTrueSums != null) {
+                    // conditional marginals given the neighbours' labels after the move, as for single-site updates
+                    IntStream.of(verticesToSample).parallel()
+                            .forEach(id -> probTrueSums[id] += conditionalTable.getProbTrue(
+                                    network.getFeature(id), getNeighbourSpinSum(id)));
+                }
+                break;
+            case ACTIVE_SET:
+                // Sequential, as each flip changes the flip probabilities that choose the next
+                activeSetUpdate.performRound(labels, neighbourSpinSums::get,
+                        id -> flip(id, !labels[id], network.getFeature(id), neighbourSpinSums.get(id)),
+                        conditionalTable, sweepKey);
+                if (probTrueSums != null) {
+                    // conditional marginals given the labels at the end of the sweep, as updates are not visited
+                    IntStream.of(verticesToSample).parallel()
+                            .forEach(id -> probTrueSums[id] += conditionalTable.getProbTrue(
+                                    network.getFeature(id), neighbourSpinSums.get(id)));
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown sampling mode " + mode);
+        }
+    }
+
+    private int getNeighbourSpinSum(int id) {
+        return (neighbourSpinSums != null) ? neighbourSpinSums.get(id) : computeNeighbourSpinSum(id);
+    }
+
+    private int computeNeighbourSpinSum(int id) {
+        int spinSum = 0;
+        int end = network.getNeighbourEnd(id);
+        for (int position = network.getNeighbourStart(id); position < end; position++) {
+            spinSum += BooleanUtils.spin(labels[network.getNeighbour(position)]);
+        }
+        return spinSum;
+    }
+
+    private void resample(int id, ConditionalTable conditionalTable, long sweepKey, double[] probTrueSums) {
+        // by Gibbs sampling
+        boolean feature = network.getFeature(id);
+        int spinSum = getNeighbourSpinSum(id);
+        if (probTrueSums != null) {
+            // each vertex is resampled by one thread per round, so no race
+            probTrueSums[id] += conditionalTable.getProbTrue(feature, spinSum);
+        }
+        long uniform = CounterRandom.getVertexBits(sweepKey, id) >>> 32; // 32 bits are enough for a coin flip
+        boolean newLabel = uniform < conditionalTable.getThreshold(feature, spinSum);
+        if (newLabel == labels[id]) {
+            return; // only this thread writes this vertex's label during the round, so the old label read is exact
+        }
+        flip(id, newLabel, feature, spinSum);
+    }
+
+    private void flip(int id, boolean newLabel, boolean feature, int spinSum) {
+        // flipping y_i changes x_i y_i by 2 x_i y_i(new), and sum_j y_i y_j by 2 y_i(new) sum_j y_j
+        int delta = 2 * BooleanUtils.spin(newLabel);
+        if (!recountStatistics) {
+            featureLabelSum.add(delta * BooleanUtils.spin(feature));
+            edgeLabelSum.add(delta * spinSum);
+        }
+        if (neighbourSpinSums != null) {
+            int end = network.getNeighbourEnd(id);
+            for (int position = network.getNeighbourStart(id); position < end; position++) {
+                neighbourSpinSums.addAndGet(network.getNeighbour(position), delta);
+            }
+        }
+        labels[id] = newLabel;
     }
 
 }
@@ -0,0 +1,132 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * A {@link SamplingListener} that records the energy and magnetisation of one chain after every sweep, and
+ * estimates their integrated autocorrelation times: roughly, the number of sweeps between effectively independent
+ * samples. This can be used to choose the number of sampling passes between observations, from a trial run with
+ * the same network and parameters. Attach a fresh estimator to each call.
+ * The estimate uses Sokal's automatic windowing: tau = 1 + 2 (rho(1) + ... + rho(M)), where rho is the normalised
+ * autocorrelation function, with the window M the smallest at which M is at least 6 tau. It is only reliable when
+ * the run is much longer (say 50 times longer) than tau.
+ */
+public final class AutocorrelationEstimator implements SamplingListener {
+
+    private static final double WINDOW_FACTOR = 6.0;
+
+    private final int chain;
+    private final long burnInSweeps;
+    private double[] energies = new double[64];
+    private double[] magnetisations = new double[64];
+    private int numSweeps = 0;
+
+    /**
+     * Creates an estimator for chain 0 (the only chain of prediction)
+     * @param burnInSweeps number of sweeps to ignore at the start of the chain
+     */
+    public AutocorrelationEstimator(long burnInSweeps) {
+        this(0, burnInSweeps);
+    }
+
+    /**
+     * Creates an estimator for the given chain (see {@link SweepEvent#getChain})
+     * @param chain chain index
+     * @param burnInSweeps number of sweeps to ignore at the start of the chain
+     */
+    public AutocorrelationEstimator(int chain, long burnInSweeps) {
+        this.chain = chain;
+        this.burnInSweeps = burnInSweeps;
+    }
+
+    @Override
+    public synchronized void onSweep(SweepEvent event) {
+        if (event.getChain() != chain || event.getSweep() < burnInSweeps) {
+            return;
+        }
+        if (numSweeps == energies.length) {
+            energies = Arrays.copyOf(energies, 2 * numSweeps);
+            magnetisations = Arrays.copyOf(magnetisations, 2 * numSweeps);
+        }
+        energies[numSweeps] = event.getEnergy();
+        magnetisations[numSweeps] = event.getMagnetisation();
+        numSweeps++;
+    }
+
+    /**
+     * Returns the number of sweeps recorded so far, after burn-in
+     * @return number of sweeps
+     */
+    public synchronized int getNumSweeps() {
+        return numSweeps;
+    }
+
+    /**
+     * Returns the integrated autocorrelation time of the energy
+     * @return autocorrelation time in sweeps, or NaN if fewer than 2 sweeps were recorded or the energy never changed
+     */
+    public synchronized double getEnergyAutocorrelationTime() {
+        return integratedAutocorrelationTime(energies, numSweeps);
+    }
+
+    /**
+     * Returns the integrated autocorrelation time of the magnetisation. When no labels are known and beta is large,
+     * this is usually much longer than the energy's, as the chain must cross between magnetisation modes.
+     * @return autocorrelation time in sweeps, or NaN if fewer than 2 sweeps were recorded or the magnetisation never
+     * changed
+     */
+    public synchronized double getMagnetisationAutocorrelationTime() {
+        return integratedAutocorrelationTime(magnetisations, numSweeps);
+    }
+
+    /**
+     * Suggests a number of sampling passes between observations: twice the longer of the two autocorrelation times,
+     * so that successive observations are close to independent
+     * @return suggested number of sampling passes between observations (at least 1)
+     * @throws IllegalStateException if neither autocorrelation time can be estimated
+     */
+    public synchronized int getSuggestedPassesBetweenObservations() {
+        double tau = Double.NaN;
+        for (double time : new double[] {getEnergyAutocorrelationTime(), getMagnetisationAutocorrelationTime()}) {
+            if (!Double.isNaN(time)) {
+                tau = Double.isNaN(tau) ? time : Math.max(tau, time);
+            }
+        }
+        if (Double.isNaN(tau)) {
+            throw new IllegalStateException("Too few sweeps with changing labels to estimate autocorrelation");
+        }
+        return (int) Math.max(1, Math.ceil(2.0 * tau));
+    }
+
+    static double integratedAutocorrelationTime(double[] series, int length) {
+        if (length < 2) {
+            return Double.NaN;
+        }
+        double mean = 0.0;
+        for (int index = 0; index < length; index++) {
+            mean += series[index];
+        }
+        mean /= length;
+        double variance = autocovariance(series, length, mean, 0);
+        if (variance <= 0.0) {
+            return Double.NaN;
+        }
+        double tau = 1.0;
+        for (int window = 1; window < length; window++) {
+            tau += 2.0 * autocovariance(series, length, mean, window) / variance;
+            if (window >= WINDOW_FACTOR * tau) {
+                break;
+            }
+        }
+        return Math.max(tau, 1.0); // the windowed sum can dip below 1 through noise
+    }
+
+    private static double autocovariance(double[] series, int length, double mean, int lag) {
+        double sum = 0.0;
+        for (int index = 0; index + lag < length; index++) {
+            sum += (series[index] - mean) * (series[index + lag] - mean);
+        }
+        return sum / length;
+    }
+
+}
@@ -0,0 +1,97 @@
+package core;
+
+import java.util.stream.IntStream;
+
+/**
+ * Loopy belief propagation. Messages are kept as cavity fields: the message from i to j is the effective field
+ * u_(i->j) that i exerts on y_j, given by u_(i->j) = atanh(tanh(beta) tanh(h_(i\j))), where the cavity field
+ * h_(i\j) = alpha x_i + (sum of the messages into i, except the one from j). A vertex with a known label exerts
+ * the field beta y_i. The marginal is Prob(y_i = +1) = 1 / (1 + exp(-2 h_i)), where h_i is the total field on i.
+ * All messages are updated in parallel from the previous iteration's messages, with damping.
+ */
+class BeliefPropagation {
+
+    // tanh(beta) is clamped away from +/-1 so that atanh stays finite for very strong couplings
+    private static final double MAX_COUPLING_TANH = 1.0 - 1.0e-12;
+
+    private final CompiledNetwork network;
+    private final int[] reversePositions;
+    private double[] messages; // messages[p] is the message from the owner of position p to the neighbour there
+    private double[] nextMessages;
+    private final double[] fields; // total field on each vertex, from the current messages
+    private int iterations = 0;
+    private double residual = Double.POSITIVE_INFINITY;
+
+    BeliefPropagation(CompiledNetwork network) {
+        this.network = network;
+        reversePositions = network.getReversePositions();
+        messages = new double[2 * network.getNumEdges()];
+        nextMessages = new double[messages.length];
+        fields = new double[network.getNumVertices()];
+    }
+
+    // iterates until the largest change in any message is below the tolerance, or the iteration budget runs out
+    void run(Parameters parameters, int maxIterations, double tolerance, double damping) {
+        double alpha = parameters.getAlpha();
+        double beta = parameters.getBeta();
+        double couplingTanh = Math.max(-MAX_COUPLING_TANH, Math.min(MAX_COUPLING_TANH, Math.tanh(beta)));
+
+        computeFields(alpha);
+        while (iterations < maxIterations && residual > tolerance) {
+            double[] previousMessages = messages;
+            double[] updatedMessages = nextMessages;
+            residual = IntStream.range(0, fields.length).parallel()
+                    .mapToDouble(id -> {
+                        double maxChange = 0.0;
+                        int end = network.getNeighbourEnd(id);
+                        for (int position = network.getNeighbourStart(id); position < end; position++) {
+                            double target;
+                            if (network.isLabelled(id)) {
+                                target = beta * BooleanUtils.spin(network.getKnownLabel(id));
+                            } else {
+                                double cavityField = fields[id] - previousMessages[reversePositions[position]];
+                                target = atanh(couplingTanh * Math.tanh(cavityField));
+                            }
+                            updatedMessages[position] = (1.0 - damping) * target + damping * previousMessages[position];
+                            maxChange = Math.max(maxChange,
+                                    Math.abs(updatedMessages[position] - previousMessages[position]));
+                        }
+                        return maxChange;
+                    })
+                    .max().orElse(0.0);
+            messages = updatedMessages;
+            nextMessages = previousMessages;
+            computeFields(alpha);
+            iterations++;
+        }
+    }
+
+    private void computeFields(double alpha) {
+        IntStream.range(0, fields.length).parallel()
+                .forEach(id -> {
+                    double field = alpha * BooleanUtils.spin(network.getFeature(id));
+                    int end = network.getNeighbourEnd(id);
+                    for (int position = network.getNeighbourStart(id); position < end; position++) {
+                        field += messages[reversePositions[position]]; // message into id from this neighbour
+                    }
+                    fields[id] = field;
+                });
+    }
+
+    private static double atanh(double x) {
+        return 0.5 * Math.log((1.0 + x) / (1.0 - x));
+    }
+
+    double getProbTrue(int id) {
+        return 1.0 / (1.0 + Math.exp(-2.0 * fields[id]));
+    }
+
+    int getIterations() {
+        return iterations;
+    }
+
+    double getResidual() {
+        return residual;
+    }
+
+}
@@ -4,16 +4,13 @@ import java.util.concurrent.ThreadLocalRandom;
 
 class BooleanUtils {
 
-    static double multiply(boolean bool1, boolean bool2) {
-        return (bool1 == bool2) ? 1.0 : -1.0;
+    // maps a label or feature onto its value in the model, +1 or -1
+    static int spin(boolean bool) {
+        return bool ? 1 : -1;
     }
 
     static boolean randBool() {
         return ThreadLocalRandom.current().nextBoolean();
     }
 
-    static boolean sampleBool(double probTrue) {
-        return ThreadLocalRandom.current().nextDouble() < probTrue;
-    }
-
 }
@@ -0,0 +1,64 @@
+package core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes checkpoints to a file on a background thread, so that training carries on while they are written. At most
+ * one checkpoint waits to be written: a newer one replaces it, as only the latest matters.
+ */
+final class CheckpointWriter implements AutoCloseable {
+
+    private final Path path;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicReference<TrainingCheckpoint> pending = new AtomicReference<>();
+    private volatile IOException failure; // the first write to fail, reported on close
+
+    CheckpointWriter(Path path) {
+        this.path = path;
+    }
+
+    void submit(TrainingCheckpoint checkpoint) {
+        // a task is queued only if none is waiting; a waiting task will pick this checkpoint up
+        if (pending.getAndSet(checkpoint) == null) {
+            executor.execute(this::writePending);
+        }
+    }
+
+    private void writePending() {
+        TrainingCheckpoint checkpoint = pending.getAndSet(null);
+        try {
+            checkpoint.write(path);
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+
+    // waits for the submitted checkpoints to be written
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // keep waiting: the last checkpoint is the one a resumed run needs
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Could not write checkpoint to " + path, failure);
+        }
+    }
+
+}
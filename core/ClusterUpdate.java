@@ -0,0 +1,125 @@
+package core;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Swendsen-Wang cluster moves. Each edge whose coupling is satisfied (beta y_i y_j > 0) is bonded with probability
+ * 1 - exp(-2 |beta|); the connected components of the bonds are clusters. Given the bonds, each cluster's labels
+ * can be flipped together without changing the coupling energy, so the cluster keeps or flips its labels with
+ * probability proportional to exp(+/- alpha sum_(i in C) x_i y_i), which handles the external field exactly.
+ * Clusters containing a vertex whose label is fixed are never flipped. A round flips whole domains in one move,
+ * so this mixes far faster than single-site updates when beta is near or above the critical coupling.
+ * Bonds are built and merged in parallel with a lock-free union-find.
+ */
+class ClusterUpdate {
+
+    private static final double THRESHOLD_SCALE = 4294967296.0; // 2^32
+
+    private final CompiledNetwork network;
+    private final boolean[] fixed; // indexed by vertex id: true if the vertex's label is not sampled
+    private final AtomicIntegerArray parents; // union-find forest over vertex ids; roots are their own parents
+    private final AtomicIntegerArray clusterFieldSums; // indexed by root: sum_(i in C) x_i y_i
+    private final boolean[] clusterFixed; // indexed by root: true if the cluster contains a fixed vertex
+    private final boolean[] clusterFlipped; // indexed by root
+
+    ClusterUpdate(CompiledNetwork network, boolean[] fixed) {
+        this.network = network;
+        this.fixed = fixed;
+        int numVertices = network.getNumVertices();
+        parents = new AtomicIntegerArray(numVertices);
+        clusterFieldSums = new AtomicIntegerArray(numVertices);
+        clusterFixed = new boolean[numVertices];
+        clusterFlipped = new boolean[numVertices];
+    }
+
+    void performRound(boolean[] labels, Parameters parameters, long sweepKey) {
+        double alpha = parameters.getAlpha();
+        double beta = parameters.getBeta();
+        long bondThreshold = Math.round(-Math.expm1(-2.0 * Math.abs(beta)) * THRESHOLD_SCALE);
+        long clusterKey = CounterRandom.getSequenceBits(sweepKey, 0); // separate key for the cluster flips
+        int numVertices = labels.length;
+
+        IntStream.range(0, numVertices).parallel()
+                .forEach(id -> {
+                    parents.set(id, id);
+                    clusterFieldSums.set(id, 0);
+                    clusterFixed[id] = false;
+                });
+
+        // Bonds: each edge is considered once, from its lower-id endpoint; its random bits are keyed by position
+        IntStream.range(0, numVertices).parallel()
+                .forEach(id -> {
+                    int end = network.getNeighbourEnd(id);
+                    for (int position = network.getNeighbourStart(id); position < end; position++) {
+                        int neighbour = network.getNeighbour(position);
+                        boolean satisfied = (labels[id] == labels[neighbour]) == (beta > 0.0);
+                        if (neighbour > id && satisfied
+                                && (CounterRandom.getVertexBits(sweepKey, position) >>> 32) < bondThreshold) {
+                            union(id, neighbour);
+                        }
+                    }
+                });
+
+        // Cluster totals, accumulated at the roots (plain writes of true to clusterFixed are a benign race)
+        IntStream.range(0, numVertices).parallel()
+                .forEach(id -> {
+                    int root = find(id);
+                    clusterFieldSums.addAndGet(root,
+                            BooleanUtils.spin(network.getFeature(id)) * BooleanUtils.spin(labels[id]));
+                    if (fixed[id]) {
+                        clusterFixed[root] = true;
+                    }
+                });
+
+        // Decide each cluster's flip: Prob(flip) = exp(-alpha w) / (exp(alpha w) + exp(-alpha w)), w = field sum
+        IntStream.range(0, numVertices).parallel()
+                .forEach(id -> {
+                    if (parents.get(id) == id) {
+                        double probFlip = 1.0 / (1.0 + Math.exp(2.0 * alpha * clusterFieldSums.get(id)));
+                        long uniform = CounterRandom.getVertexBits(clusterKey, id) >>> 32;
+                        clusterFlipped[id] = !clusterFixed[id]
+                                && uniform < Math.round(probFlip * THRESHOLD_SCALE);
+                    }
+                });
+
+        IntStream.range(0, numVertices).parallel()
+                .forEach(id -> {
+                    if (clusterFlipped[find(id)]) {
+                        labels[id] = !labels[id];
+                    }
+                });
+    }
+
+    // with path halving; safe under concurrent unions, since a vertex's parent only ever moves towards its root
+    private int find(int id) {
+        while (true) {
+            int parent = parents.get(id);
+            if (parent == id) {
+                return id;
+            }
+            int grandparent = parents.get(parent);
+            if (parent != grandparent) {
+                parents.compareAndSet(id, parent, grandparent);
+            }
+            id = grandparent;
+        }
+    }
+
+    // links the larger root under the smaller, so that each cluster's root is its lowest id whatever the timing
+    private void union(int id, int otherId) {
+        while (true) {
+            int root = find(id);
+            int otherRoot = find(otherId);
+            if (root == otherRoot) {
+                return;
+            }
+            int lowerRoot = Math.min(root, otherRoot);
+            int higherRoot = Math.max(root, otherRoot);
+            if (parents.compareAndSet(higherRoot, higherRoot, lowerRoot)) {
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,256 @@
+package core;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Frozen, index-based form of a network, used on the Gibbs sampling and gradient descent hot paths.
+ * Vertices are given dense int ids; adjacency is stored in compressed sparse row (CSR) form, with each undirected
+ * edge appearing once in the neighbour list of each of its endpoints, and each neighbour list sorted by id;
+ * features and known labels are packed bitsets.
+ * The arrays are held as buffers, so that they can either wrap heap arrays (when compiled from a Network) or be
+ * mapped directly from a file (see {@link MappedNetwork}); in the latter case there are no Vertex objects.
+ */
+final class CompiledNetwork {
+
+    private final int numVertices;
+    private final Vertex[] vertices; // id -> vertex, for mapping results back onto the public API; null if mapped
+    private final Map<Vertex, Integer> ids; // vertex -> id; null if mapped
+    private final IntBuffer neighbourOffsets; // neighbours of vertex v are at positions [offsets[v], offsets[v + 1])
+    private final IntBuffer neighbours;
+    private final int[] heapNeighbourOffsets; // the arrays behind the adjacency buffers if on the heap, else null,
+    private final int[] heapNeighbours; // as indexing the arrays directly is faster on the sampling hot path
+    private final LongBuffer featureBits;
+    private final LongBuffer knownBits; // set for vertices whose labels are known
+    private final LongBuffer labelBits; // known labels (only meaningful where knownBits is set)
+    private final int numEdges;
+    private final int maxDegree;
+    private GraphColouring colouring; // computed on first use
+    private int[] reversePositions; // computed on first use
+
+    CompiledNetwork(int numVertices, Vertex[] vertices, Map<Vertex, Integer> ids, IntBuffer neighbourOffsets,
+                    IntBuffer neighbours, LongBuffer featureBits, LongBuffer knownBits, LongBuffer labelBits,
+                    int numEdges, int maxDegree) {
+        this.numVertices = numVertices;
+        this.vertices = vertices;
+        this.ids = ids;
+        this.neighbourOffsets = neighbourOffsets;
+        this.neighbours = neighbours;
+        this.heapNeighbourOffsets = neighbourOffsets.hasArray() ? neighbourOffsets.array() : null;
+        this.heapNeighbours = neighbours.hasArray() ? neighbours.array() : null;
+        this.featureBits = featureBits;
+        this.knownBits = knownBits;
+        this.labelBits = labelBits;
+        this.numEdges = numEdges;
+        this.maxDegree = maxDegree;
+    }
+
+    static CompiledNetwork compile(Network network) {
+        return compile(network, VertexOrder.INSERTION);
+    }
+
+    // Ids are assigned in insertion order, then renumbered into the requested order
+    static CompiledNetwork compile(Network network, VertexOrder vertexOrder) {
+        CompiledNetwork inInsertionOrder = compileInInsertionOrder(network);
+        if (vertexOrder == VertexOrder.INSERTION) {
+            return inInsertionOrder;
+        }
+        return inInsertionOrder.renumber(VertexOrdering.compute(inInsertionOrder, vertexOrder));
+    }
+
+    private static CompiledNetwork compileInInsertionOrder(Network network) {
+        int numVertices = network.getVertices().size();
+        Vertex[] vertices = new Vertex[numVertices];
+        Map<Vertex, Integer> ids = new HashMap<>();
+        long[] featureBits = new long[numWords(numVertices)];
+        long[] knownBits = new long[numWords(numVertices)];
+        long[] labelBits = new long[numWords(numVertices)];
+
+        int nextId = 0;
+        for (Vertex vertex : network.getVertices()) {
+            vertices[nextId] = vertex;
+            ids.put(vertex, nextId);
+            if (vertex.getFeatureValue()) {
+                setBit(featureBits, nextId);
+            }
+            Boolean label = network.getLabels().get(vertex);
+            if (label != null) {
+                setBit(knownBits, nextId);
+                if (label) {
+                    setBit(labelBits, nextId);
+                }
+            }
+            nextId++;
+        }
+
+        // Self-loops are dropped: y_i y_i = 1 whatever the label, so they affect neither sampling nor the gradient.
+        int[] degrees = new int[numVertices];
+        int numEdges = 0;
+        for (Edge edge : network.getEdges()) {
+            int fromId = ids.get(edge.getFromVertex());
+            int toId = ids.get(edge.getToVertex());
+            if (fromId != toId) {
+                degrees[fromId]++;
+                degrees[toId]++;
+                numEdges++;
+            }
+        }
+
+        int[] neighbourOffsets = new int[numVertices + 1];
+        for (int id = 0; id < numVertices; id++) {
+            neighbourOffsets[id + 1] = neighbourOffsets[id] + degrees[id];
+        }
+        int[] nextPositions = new int[numVertices];
+        System.arraycopy(neighbourOffsets, 0, nextPositions, 0, numVertices);
+        int[] neighbours = new int[2 * numEdges];
+        for (Edge edge : network.getEdges()) {
+            int fromId = ids.get(edge.getFromVertex());
+            int toId = ids.get(edge.getToVertex());
+            if (fromId != toId) {
+                neighbours[nextPositions[fromId]++] = toId;
+                neighbours[nextPositions[toId]++] = fromId;
+            }
+        }
+        IntStream.range(0, numVertices).parallel()
+                .forEach(id -> Arrays.sort(neighbours, neighbourOffsets[id], neighbourOffsets[id + 1]));
+        int maxDegree = 0;
+        for (int degree : degrees) {
+            maxDegree = Math.max(maxDegree, degree);
+        }
+
+        return new CompiledNetwork(numVertices, vertices, ids, IntBuffer.wrap(neighbourOffsets),
+                IntBuffer.wrap(neighbours), LongBuffer.wrap(featureBits), LongBuffer.wrap(knownBits),
+                LongBuffer.wrap(labelBits), numEdges, maxDegree);
+    }
+
+    // a copy in which the vertex with id oldIds[i] gets id i
+    private CompiledNetwork renumber(int[] oldIds) {
+        int[] newIds = new int[numVertices];
+        for (int newId = 0; newId < numVertices; newId++) {
+            newIds[oldIds[newId]] = newId;
+        }
+        Vertex[] renumberedVertices = new Vertex[numVertices];
+        Map<Vertex, Integer> renumberedIds = new HashMap<>();
+        long[] renumberedFeatureBits = new long[numWords(numVertices)];
+        long[] renumberedKnownBits = new long[numWords(numVertices)];
+        long[] renumberedLabelBits = new long[numWords(numVertices)];
+        int[] renumberedOffsets = new int[numVertices + 1];
+        for (int newId = 0; newId < numVertices; newId++) {
+            int oldId = oldIds[newId];
+            renumberedVertices[newId] = vertices[oldId];
+            renumberedIds.put(vertices[oldId], newId);
+            if (getFeature(oldId)) {
+                setBit(renumberedFeatureBits, newId);
+            }
+            if (isLabelled(oldId)) {
+                setBit(renumberedKnownBits, newId);
+                if (getKnownLabel(oldId)) {
+                    setBit(renumberedLabelBits, newId);
+                }
+            }
+            renumberedOffsets[newId + 1] = renumberedOffsets[newId] + getDegree(oldId);
+        }
+        int[] renumberedNeighbours = new int[2 * numEdges];
+        IntStream.range(0, numVertices).parallel().forEach(newId -> {
+            int oldId = oldIds[newId];
+            int position = renumberedOffsets[newId];
+            for (int oldPosition = getNeighbourStart(oldId); oldPosition < getNeighbourEnd(oldId); oldPosition++) {
+                renumberedNeighbours[position++] = newIds[getNeighbour(oldPosition)];
+            }
+            Arrays.sort(renumberedNeighbours, renumberedOffsets[newId], renumberedOffsets[newId + 1]);
+        });
+        return new CompiledNetwork(numVertices, renumberedVertices, renumberedIds, IntBuffer.wrap(renumberedOffsets),
+                IntBuffer.wrap(renumberedNeighbours), LongBuffer.wrap(renumberedFeatureBits),
+                LongBuffer.wrap(renumberedKnownBits), LongBuffer.wrap(renumberedLabelBits), numEdges, maxDegree);
+    }
+
+    int getNumVertices() {
+        return numVertices;
+    }
+
+    int getNumEdges() {
+        return numEdges;
+    }
+
+    Vertex getVertex(int id) {
+        return vertices[id];
+    }
+
+    int getId(Vertex vertex) {
+        return ids.get(vertex);
+    }
+
+    int getNeighbourStart(int id) {
+        return (heapNeighbourOffsets != null) ? heapNeighbourOffsets[id] : neighbourOffsets.get(id);
+    }
+
+    int getNeighbourEnd(int id) {
+        return (heapNeighbourOffsets != null) ? heapNeighbourOffsets[id + 1] : neighbourOffsets.get(id + 1);
+    }
+
+    int getNeighbour(int position) {
+        return (heapNeighbours != null) ? heapNeighbours[position] : neighbours.get(position);
+    }
+
+    int getDegree(int id) {
+        return neighbourOffsets.get(id + 1) - neighbourOffsets.get(id);
+    }
+
+    int getMaxDegree() {
+        return maxDegree;
+    }
+
+    boolean getFeature(int id) {
+        return getBit(featureBits, id);
+    }
+
+    boolean isLabelled(int id) {
+        return getBit(knownBits, id);
+    }
+
+    boolean getKnownLabel(int id) {
+        return getBit(labelBits, id);
+    }
+
+    synchronized GraphColouring getColouring() {
+        if (colouring == null) {
+            colouring = GraphColouring.of(this);
+        }
+        return colouring;
+    }
+
+    // For each position p in the neighbour lists, the position of the same edge seen from the other endpoint:
+    // if v is at position p in u's list, then u is at position reversePositions[p] in v's list
+    synchronized int[] getReversePositions() {
+        if (reversePositions == null) {
+            // Visiting the lists in order of id fills each vertex's list of reverse positions in order of the
+            // other endpoint's id, which (as the lists are sorted) matches the order of the list itself.
+            // Parallel edges are paired up in order of occurrence.
+            int[] reverse = new int[2 * numEdges];
+            int[] nextPositions = new int[numVertices];
+            neighbourOffsets.duplicate().get(nextPositions);
+            for (int position = 0; position < reverse.length; position++) {
+                reverse[nextPositions[neighbours.get(position)]++] = position;
+            }
+            reversePositions = reverse;
+        }
+        return reversePositions;
+    }
+
+    static int numWords(int numBits) {
+        return (numBits + 63) >>> 6;
+    }
+
+    private static boolean getBit(LongBuffer bits, int index) {
+        return (bits.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    private static void setBit(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+}
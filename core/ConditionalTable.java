@@ -0,0 +1,80 @@
+package core;
+
+/**
+ * Table of the Gibbs conditional Prob(y_i = +1 | x_i, y_neighbours) for fixed alpha and beta. With homogeneous
+ * parameters the conditional depends only on the feature x_i and on the neighbour spin sum s_i = sum_j y_j, so the
+ * sampler can look it up instead of evaluating the energies and calling Math.exp for every update.
+ */
+final class ConditionalTable {
+
+    // Spin sums beyond this (i.e. hub vertices) are computed directly rather than tabulated, to bound the table size
+    static final int MAX_TABULATED_SPIN_SUM = 1 << 12;
+
+    private static final double THRESHOLD_SCALE = 4294967296.0; // 2^32
+
+    private final double alpha;
+    private final double beta;
+    private final int maxSpinSum;
+    private final double[] probTrue; // index: (feature ? rowLength : 0) + spinSum + maxSpinSum
+    private final long[] thresholds; // as probTrue, but scaled to [0, 2^32] for comparing with 32-bit random numbers
+
+    private ConditionalTable(double alpha, double beta, int maxSpinSum) {
+        this.alpha = alpha;
+        this.beta = beta;
+        this.maxSpinSum = maxSpinSum;
+        int rowLength = 2 * maxSpinSum + 1;
+        probTrue = new double[2 * rowLength];
+        thresholds = new long[2 * rowLength];
+        for (int spinSum = -maxSpinSum; spinSum <= maxSpinSum; spinSum++) {
+            probTrue[spinSum + maxSpinSum] = computeProbTrue(alpha, beta, false, spinSum);
+            probTrue[rowLength + spinSum + maxSpinSum] = computeProbTrue(alpha, beta, true, spinSum);
+        }
+        for (int index = 0; index < probTrue.length; index++) {
+            thresholds[index] = Math.round(probTrue[index] * THRESHOLD_SCALE);
+        }
+    }
+
+    static ConditionalTable build(double alpha, double beta, int maxDegree) {
+        return new ConditionalTable(alpha, beta, Math.min(maxDegree, MAX_TABULATED_SPIN_SUM));
+    }
+
+    int getMaxSpinSum() {
+        return maxSpinSum;
+    }
+
+    double getProbTrue(boolean feature, int spinSum) {
+        if (spinSum > maxSpinSum || spinSum < -maxSpinSum) {
+            return computeProbTrue(alpha, beta, feature, spinSum);
+        }
+        return probTrue[(feature ? 2 * maxSpinSum + 1 : 0) + spinSum + maxSpinSum];
+    }
+
+    // Prob(y_i = +1) scaled to [0, 2^32]: a uniform 32-bit random number is below this with that probability
+    long getThreshold(boolean feature, int spinSum) {
+        if (spinSum > maxSpinSum || spinSum < -maxSpinSum) {
+            return Math.round(computeProbTrue(alpha, beta, feature, spinSum) * THRESHOLD_SCALE);
+        }
+        return thresholds[(feature ? 2 * maxSpinSum + 1 : 0) + spinSum + maxSpinSum];
+    }
+
+    static double computeProbTrue(double alpha, double beta, boolean feature, int spinSum) {
+        // The Boltzmann energy of label y_i is y_i (alpha x_i + beta sum_j y_j), where sum_j is over the neighbours,
+        // so the energy difference between the two candidate labels is twice the local field
+        return computeProbTrue(alpha * BooleanUtils.spin(feature) + beta * spinSum);
+    }
+
+    // from the local field alpha x_i + beta sum_j y_j, which need not be a whole number of couplings
+    static double computeProbTrue(double localField) {
+        double energyDiff = 2.0 * localField; // energyIfTrue - energyIfFalse
+
+        // separate cases, for numeric stability
+        if (energyDiff >= 0.0) {
+            double expNegEnergyDiff = Math.exp(-energyDiff);
+            return 1.0 / (1.0 + expNegEnergyDiff);
+        } else {
+            double expNegEnergyDiff = Math.exp(energyDiff);
+            return expNegEnergyDiff / (1.0 + expNegEnergyDiff);
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package core;
+
+/**
+ * Between-chain convergence diagnostics for the label marginals estimated by several independent Gibbs chains.
+ */
+class ConvergenceDiagnostics {
+
+    /**
+     * Gelman-Rubin potential scale reduction factor (R-hat) for one vertex's label, from the number of positive
+     * samples seen by each chain. Values close to 1 indicate that the chains agree; larger values indicate that
+     * they have not yet mixed. Since each sample is 0 or 1, the within-chain variance follows from the chain's mean.
+     */
+    static double potentialScaleReduction(int[][] positiveCounts, int id, long samplesPerChain) {
+        int numChains = positiveCounts.length;
+        if (samplesPerChain < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double grandMean = 0.0;
+        for (int[] chainCounts : positiveCounts) {
+            grandMean += (double) chainCounts[id] / samplesPerChain;
+        }
+        grandMean /= numChains;
+
+        double withinVariance = 0.0; // W: mean of the within-chain sample variances
+        double betweenVariance = 0.0; // B / n: sample variance of the chain means
+        for (int[] chainCounts : positiveCounts) {
+            double chainMean = (double) chainCounts[id] / samplesPerChain;
+            withinVariance += chainMean * (1.0 - chainMean) * samplesPerChain / (samplesPerChain - 1);
+            betweenVariance += (chainMean - grandMean) * (chainMean - grandMean);
+        }
+        withinVariance /= numChains;
+        betweenVariance /= (numChains - 1);
+
+        if (withinVariance == 0.0) {
+            // every chain has only ever seen one label: converged if they all saw the same one
+            return (betweenVariance == 0.0) ? 1.0 : Double.POSITIVE_INFINITY;
+        }
+        double pooledVariance = withinVariance * (samplesPerChain - 1) / samplesPerChain + betweenVariance;
+        return Math.sqrt(pooledVariance / withinVariance);
+    }
+
+    // worst R-hat over the given vertices
+    static double maxPotentialScaleReduction(int[][] positiveCounts, int[] ids, long samplesPerChain) {
+        double maxRHat = 1.0;
+        for (int id : ids) {
+            maxRHat = Math.max(maxRHat, potentialScaleReduction(positiveCounts, id, samplesPerChain));
+        }
+        return maxRHat;
+    }
+
+}
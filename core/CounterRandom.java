@@ -0,0 +1,42 @@
+package core;
+
+/**
+ * Counter-based random numbers: the bits used for a given update are a pure function of (seed, stream, sweep,
+ * vertex id), computed by hashing rather than by advancing shared generator state. Sampling with a fixed seed is
+ * therefore reproducible whatever the thread count or the order in which the fork-join pool runs the updates,
+ * provided the schedule itself is deterministic (as the chromatic and multi-spin schedules are).
+ */
+final class CounterRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long streamKey;
+
+    // separate streams are used for chains that share a seed, such as the two chains in training
+    CounterRandom(long seed, int stream) {
+        streamKey = mix(mix(seed) + stream * GOLDEN_GAMMA);
+    }
+
+    // Hashed once per sweep, so that each update then costs a single mix
+    long getSweepKey(long sweep) {
+        return mix(streamKey + (sweep + 1) * GOLDEN_GAMMA);
+    }
+
+    // 64 random bits for the update of vertex id in the sweep with this key
+    static long getVertexBits(long sweepKey, int id) {
+        return mix(sweepKey + (id + 1) * GOLDEN_GAMMA);
+    }
+
+    // the index-th of a sequence of 64-bit random numbers seeded by a vertex's bits, for updates needing many bits
+    static long getSequenceBits(long vertexBits, int index) {
+        return mix(vertexBits + (index + 1) * GOLDEN_GAMMA);
+    }
+
+    // Stafford's variant 13 of the MurmurHash3 finaliser, as used by SplittableRandom
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+}
@@ -0,0 +1,70 @@
+package core;
+
+/**
+ * One gradient descent step of training, as reported to a {@link SamplingListener}
+ */
+public final class DescentEvent {
+
+    private final int step;
+    private final long alphaGradient;
+    private final long betaGradient;
+    private final double alpha;
+    private final double beta;
+
+    DescentEvent(int step, long alphaGradient, long betaGradient, double alpha, double beta) {
+        this.step = step;
+        this.alphaGradient = alphaGradient;
+        this.betaGradient = betaGradient;
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    /**
+     * Returns the number of descent steps before this one
+     * @return step number, counting from 0
+     */
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * Returns the sampled gradient of the log-likelihood with respect to alpha: sum_i x_i y_i with the unknown labels
+     * sampled given the known ones, minus the same sum with all labels sampled
+     * @return alpha component of the gradient
+     */
+    public long getAlphaGradient() {
+        return alphaGradient;
+    }
+
+    /**
+     * Returns the sampled gradient of the log-likelihood with respect to beta: sum_(i,j) y_i y_j with the unknown
+     * labels sampled given the known ones, minus the same sum with all labels sampled
+     * @return beta component of the gradient
+     */
+    public long getBetaGradient() {
+        return betaGradient;
+    }
+
+    /**
+     * Returns alpha, after the step
+     * @return alpha
+     */
+    public double getAlpha() {
+        return alpha;
+    }
+
+    /**
+     * Returns beta, after the step
+     * @return beta
+     */
+    public double getBeta() {
+        return beta;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("step = %d, gradient = (%d, %d), alpha = %.5f, beta = %.5f",
+                step, alphaGradient, betaGradient, alpha, beta);
+    }
+
+}
@@ -11,24 +11,12 @@ class Edge {
         this.toVertex = toVertex;
     }
 
-    private double getBetaDerivativeForLabels(boolean fromLabel, boolean toLabel) {
-        return BooleanUtils.multiply(fromLabel, toLabel);
+    Vertex getFromVertex() {
+        return fromVertex;
     }
 
-    // version for gradient descent - using current assigned labels for both vertices
-    double getBetaDerivative(Assignment assignment) {
-        return getBetaDerivativeForLabels(assignment.getLabelFor(fromVertex), assignment.getLabelFor(toVertex));
-    }
-
-    // next two versions are for Gibbs sampling - using hypothetical candidate label for one vertex
-    // while using the current assigned label for the other vertex
-
-    double getBetaDerivativeForFromLabel(boolean fromLabel, Assignment assignment) {
-        return getBetaDerivativeForLabels(fromLabel, assignment.getLabelFor(toVertex));
-    }
-
-    double getBetaDerivativeForToLabel(boolean toLabel, Assignment assignment) {
-        return getBetaDerivativeForLabels(assignment.getLabelFor(fromVertex), toLabel);
+    Vertex getToVertex() {
+        return toVertex;
     }
 
 }
@@ -0,0 +1,202 @@
+package core;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The memory-mapped file through which the worker processes of a partitioned run share state: the partition, the
+ * labels of the vertices on part boundaries, a barrier, each worker's gradient statistics, and the predictions.
+ * Every process maps the file shared, so writes land in the same page cache pages, and no data is copied through
+ * the kernel.
+ *
+ * Plain writes to the labels, statistics and predictions are published by the barrier: a worker arriving at the
+ * barrier stores its generation with release semantics, and a worker leaving it has loaded every other worker's
+ * generation with acquire semantics, so the writes made before the barrier are visible after it.
+ *
+ * File layout (all values little-endian, each section starting on an 8-byte boundary):
+ * <ul>
+ *     <li>header: magic number, format version, number of workers, number of vertices</li>
+ *     <li>barrier: one 64-byte slot per worker, holding the generation it last reached as a long</li>
+ *     <li>statistics: one 64-byte slot per worker, holding two sets of four longs, used on alternate steps</li>
+ *     <li>parts: (number of vertices) ints, the worker owning each vertex</li>
+ *     <li>labels: (2 * number of vertices) bytes, one per vertex per chain</li>
+ *     <li>predictions: (number of vertices) doubles</li>
+ * </ul>
+ */
+final class ExchangeFile {
+
+    static final int NUM_STATISTICS = 4;
+
+    private static final int MAGIC = 0x4843584D; // "MXCH" when read as little-endian bytes
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 64; // a cache line per worker, so that workers' slots do not false-share
+    private static final int SPINS_BEFORE_YIELD = 1 << 10;
+    private static final long BARRIER_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    private final int numWorkers;
+    private final int numVertices;
+    private final ByteBuffer barrier;
+    private final ByteBuffer statistics;
+    private final IntBuffer parts;
+    private final ByteBuffer labels;
+    private final DoubleBuffer predictions;
+
+    private ExchangeFile(FileChannel channel, int numWorkers, int numVertices) throws IOException {
+        this.numWorkers = numWorkers;
+        this.numVertices = numVertices;
+        Layout layout = new Layout(numWorkers, numVertices);
+        barrier = map(channel, layout.barrierOffset, (long) SLOT_BYTES * numWorkers);
+        statistics = map(channel, layout.statisticsOffset, (long) SLOT_BYTES * numWorkers);
+        parts = map(channel, layout.partsOffset, 4L * numVertices).asIntBuffer();
+        labels = map(channel, layout.labelsOffset, 2L * numVertices);
+        predictions = map(channel, layout.predictionsOffset, 8L * numVertices).asDoubleBuffer();
+    }
+
+    // creates the file (replacing it if it exists), with every worker's barrier generation 0
+    static ExchangeFile create(Path path, int numWorkers, int[] parts) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ExchangeFile exchangeFile = new ExchangeFile(channel, numWorkers, parts.length);
+            exchangeFile.parts.put(parts);
+            for (int id = 0; id < parts.length; id++) {
+                exchangeFile.predictions.put(id, Double.NaN);
+            }
+            // the header goes last, so a worker opening the file early sees no header rather than a partial file
+            map(channel, 0, HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putInt(numWorkers).putInt(parts.length);
+            return exchangeFile;
+        }
+    }
+
+    static ExchangeFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not an exchange file: " + path);
+            }
+            ByteBuffer header = map(channel, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not an exchange file: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported exchange file version " + version + ": " + path);
+            }
+            int numWorkers = header.getInt();
+            int numVertices = header.getInt();
+            if (channel.size() < new Layout(numWorkers, numVertices).totalBytes) {
+                throw new IOException("Truncated exchange file: " + path);
+            }
+            return new ExchangeFile(channel, numWorkers, numVertices);
+        }
+    }
+
+    int getNumWorkers() {
+        return numWorkers;
+    }
+
+    int getNumVertices() {
+        return numVertices;
+    }
+
+    int getPart(int id) {
+        return parts.get(id);
+    }
+
+    boolean getLabel(int chain, int id) {
+        return labels.get(chain * numVertices + id) != 0;
+    }
+
+    void putLabel(int chain, int id, boolean label) {
+        labels.put(chain * numVertices + id, label ? (byte) 1 : (byte) 0);
+    }
+
+    // set is 0 or 1: a worker writes the two sets on alternate steps, so that a fast worker cannot overwrite
+    // statistics that a slow worker has yet to read
+    long getStatistic(int worker, int set, int index) {
+        return statistics.getLong(worker * SLOT_BYTES + 8 * (set * NUM_STATISTICS + index));
+    }
+
+    void putStatistic(int worker, int set, int index, long value) {
+        statistics.putLong(worker * SLOT_BYTES + 8 * (set * NUM_STATISTICS + index), value);
+    }
+
+    double getPrediction(int id) {
+        return predictions.get(id);
+    }
+
+    void putPrediction(int id, double prediction) {
+        predictions.put(id, prediction);
+    }
+
+    long getGeneration(int worker) {
+        return (long) LONGS.getAcquire(barrier, worker * SLOT_BYTES);
+    }
+
+    // Announces that this worker has reached the given generation, and waits until every worker has. Generations
+    // only grow, so the barrier never needs resetting. Waiting spins briefly, as the other workers are usually close
+    // behind, and then yields.
+    void awaitBarrier(int worker, long generation) {
+        LONGS.setRelease(barrier, worker * SLOT_BYTES, generation);
+        long deadline = System.nanoTime() + BARRIER_TIMEOUT_NANOS;
+        for (int other = 0; other < numWorkers; other++) {
+            int spins = 0;
+            while ((long) LONGS.getAcquire(barrier, other * SLOT_BYTES) < generation) {
+                if (++spins < SPINS_BEFORE_YIELD) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                    if (System.nanoTime() - deadline > 0) {
+                        throw new IllegalStateException("Timed out waiting for worker " + other + " to reach"
+                                + " barrier generation " + generation);
+                    }
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long numBytes) throws IOException {
+        if (numBytes > Integer.MAX_VALUE) {
+            throw new IOException("Network is too large to map: an exchange file section exceeds 2 GB");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, numBytes);
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // byte offsets of the sections, for the given numbers of workers and vertices
+    private static final class Layout {
+
+        final long barrierOffset;
+        final long statisticsOffset;
+        final long partsOffset;
+        final long labelsOffset;
+        final long predictionsOffset;
+        final long totalBytes;
+
+        Layout(int numWorkers, int numVertices) {
+            barrierOffset = HEADER_BYTES;
+            statisticsOffset = barrierOffset + (long) SLOT_BYTES * numWorkers;
+            partsOffset = statisticsOffset + (long) SLOT_BYTES * numWorkers;
+            labelsOffset = align(partsOffset + 4L * numVertices);
+            predictionsOffset = align(labelsOffset + 2L * numVertices);
+            totalBytes = predictionsOffset + 8L * numVertices;
+        }
+
+        private static long align(long offset) {
+            return (offset + 7) & ~7L;
+        }
+
+    }
+
+}
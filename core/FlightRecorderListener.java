@@ -0,0 +1,102 @@
+package core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A {@link SamplingListener} that emits each sweep and gradient descent step as a Java Flight Recorder event
+ * (markovnetwork.Sweep and markovnetwork.DescentStep), so that sampling can be examined alongside GC, allocation and
+ * CPU profiles in a JFR recording. While no recording has the events enabled, they cost a check per event.
+ */
+public final class FlightRecorderListener implements SamplingListener {
+
+    @Override
+    public void onSweep(SweepEvent event) {
+        SweepRecord record = new SweepRecord();
+        if (record.shouldCommit()) {
+            record.chain = event.getChain();
+            record.sweep = event.getSweep();
+            record.elapsed = event.getElapsedNanos();
+            record.updates = event.getUpdates();
+            record.updatesPerSecond = event.getUpdatesPerSecond();
+            record.flippedFraction = event.getFlippedFraction();
+            record.energy = event.getEnergy();
+            record.magnetisation = event.getMagnetisation();
+            record.commit();
+        }
+    }
+
+    @Override
+    public void onDescentStep(DescentEvent event) {
+        DescentStepRecord record = new DescentStepRecord();
+        if (record.shouldCommit()) {
+            record.step = event.getStep();
+            record.alphaGradient = event.getAlphaGradient();
+            record.betaGradient = event.getBetaGradient();
+            record.alpha = event.getAlpha();
+            record.beta = event.getBeta();
+            record.commit();
+        }
+    }
+
+    @Name("markovnetwork.Sweep")
+    @Label("Gibbs Sweep")
+    @Category("Markov Network")
+    @Description("One Gibbs sampling sweep of one chain")
+    static final class SweepRecord extends Event {
+
+        @Label("Chain")
+        int chain;
+
+        @Label("Sweep")
+        long sweep;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+
+        @Label("Updates")
+        long updates;
+
+        @Label("Updates per Second")
+        double updatesPerSecond;
+
+        @Label("Flipped Fraction")
+        double flippedFraction;
+
+        @Label("Energy")
+        double energy;
+
+        @Label("Magnetisation")
+        double magnetisation;
+
+    }
+
+    @Name("markovnetwork.DescentStep")
+    @Label("Gradient Descent Step")
+    @Category("Markov Network")
+    @Description("One gradient descent step of training")
+    static final class DescentStepRecord extends Event {
+
+        @Label("Step")
+        int step;
+
+        @Label("Alpha Gradient")
+        long alphaGradient;
+
+        @Label("Beta Gradient")
+        long betaGradient;
+
+        @Label("Alpha")
+        double alpha;
+
+        @Label("Beta")
+        double beta;
+
+    }
+
+}
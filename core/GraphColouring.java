@@ -0,0 +1,198 @@
+package core;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A proper colouring of a network: no edge joins two vertices of the same colour. Used by
+ * {@link SamplingMode#CHROMATIC}, which sweeps the colour classes one after another.
+ */
+public final class GraphColouring {
+
+    private static final int UNCOLOURED = -1;
+
+    private final int[] colours; // vertex id -> colour
+    private final int[][] colourClasses; // colour -> ids of the vertices with that colour
+    private final long colouringTimeNanos;
+
+    private GraphColouring(int[] colours, int numColours, long colouringTimeNanos) {
+        this.colours = colours;
+        this.colouringTimeNanos = colouringTimeNanos;
+        colourClasses = splitByColour(colours, numColours, id -> true);
+    }
+
+    static GraphColouring of(CompiledNetwork network) {
+        long startTime = System.nanoTime();
+        // Bipartite networks (such as lattices with even side lengths) are 2-coloured exactly;
+        // otherwise we fall back to a greedy colouring
+        int[] colours = twoColour(network);
+        if (colours == null) {
+            colours = greedyColour(network);
+        }
+        return new GraphColouring(colours, countColours(colours), System.nanoTime() - startTime);
+    }
+
+    // breadth-first search, alternating colours; returns null if some edge joins two vertices of the same colour
+    private static int[] twoColour(CompiledNetwork network) {
+        int numVertices = network.getNumVertices();
+        int[] colours = new int[numVertices];
+        Arrays.fill(colours, UNCOLOURED);
+        int[] queue = new int[numVertices];
+
+        for (int root = 0; root < numVertices; root++) {
+            if (colours[root] != UNCOLOURED) {
+                continue;
+            }
+            colours[root] = 0;
+            int queueHead = 0;
+            int queueTail = 0;
+            queue[queueTail++] = root;
+            while (queueHead < queueTail) {
+                int id = queue[queueHead++];
+                int end = network.getNeighbourEnd(id);
+                for (int position = network.getNeighbourStart(id); position < end; position++) {
+                    int neighbour = network.getNeighbour(position);
+                    if (colours[neighbour] == UNCOLOURED) {
+                        colours[neighbour] = 1 - colours[id];
+                        queue[queueTail++] = neighbour;
+                    } else if (colours[neighbour] == colours[id]) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return colours;
+    }
+
+    // Welsh-Powell: visit vertices in order of decreasing degree, giving each the smallest colour not yet
+    // used by its neighbours
+    private static int[] greedyColour(CompiledNetwork network) {
+        int numVertices = network.getNumVertices();
+        int maxDegree = network.getMaxDegree();
+
+        // counting sort by degree
+        int[] degreeOffsets = new int[maxDegree + 2];
+        for (int id = 0; id < numVertices; id++) {
+            degreeOffsets[maxDegree - network.getDegree(id) + 1]++;
+        }
+        for (int index = 1; index < degreeOffsets.length; index++) {
+            degreeOffsets[index] += degreeOffsets[index - 1];
+        }
+        int[] order = new int[numVertices];
+        for (int id = 0; id < numVertices; id++) {
+            order[degreeOffsets[maxDegree - network.getDegree(id)]++] = id;
+        }
+
+        return greedyColour(numVertices, order, network::getNeighbourStart, network::getNeighbour);
+    }
+
+    // Greedy colouring of a graph in compressed sparse row form: the neighbours of vertex v are neighbours(p) for
+    // the positions p in [offsets(v), offsets(v + 1)). Vertices are visited in the given order, each getting the
+    // smallest colour not yet used by its neighbours; neighbours numbered numVertices or above are ignored.
+    static int[] greedyColour(int numVertices, int[] order, IntUnaryOperator offsets, IntUnaryOperator neighbours) {
+        int maxDegree = 0;
+        for (int id = 0; id < numVertices; id++) {
+            maxDegree = Math.max(maxDegree, offsets.applyAsInt(id + 1) - offsets.applyAsInt(id));
+        }
+        int[] colours = new int[numVertices];
+        Arrays.fill(colours, UNCOLOURED);
+        int[] colourLastForbiddenBy = new int[maxDegree + 1]; // colour -> last vertex whose neighbour had it
+        Arrays.fill(colourLastForbiddenBy, UNCOLOURED);
+        for (int id : order) {
+            int end = offsets.applyAsInt(id + 1);
+            for (int position = offsets.applyAsInt(id); position < end; position++) {
+                int neighbour = neighbours.applyAsInt(position);
+                if (neighbour < numVertices && colours[neighbour] != UNCOLOURED) {
+                    colourLastForbiddenBy[colours[neighbour]] = id;
+                }
+            }
+            int colour = 0;
+            while (colourLastForbiddenBy[colour] == id) {
+                colour++;
+            }
+            colours[id] = colour;
+        }
+        return colours;
+    }
+
+    // Splits the vertices that pass the filter into colour classes (in order of id), given the colour of every
+    // vertex: the classes are counted, then filled
+    static int[][] splitByColour(int[] colours, int numColours, IntPredicate filter) {
+        int[] classSizes = new int[numColours];
+        for (int id = 0; id < colours.length; id++) {
+            if (filter.test(id)) {
+                classSizes[colours[id]]++;
+            }
+        }
+        int[][] idsByColour = new int[numColours][];
+        for (int colour = 0; colour < numColours; colour++) {
+            idsByColour[colour] = new int[classSizes[colour]];
+        }
+        int[] nextPositions = new int[numColours];
+        for (int id = 0; id < colours.length; id++) {
+            if (filter.test(id)) {
+                int colour = colours[id];
+                idsByColour[colour][nextPositions[colour]++] = id;
+            }
+        }
+        return idsByColour;
+    }
+
+    static int countColours(int[] colours) {
+        int numColours = 0;
+        for (int colour : colours) {
+            numColours = Math.max(numColours, colour + 1);
+        }
+        return numColours;
+    }
+
+    int getColour(int id) {
+        return colours[id];
+    }
+
+    int[] getColourClass(int colour) {
+        return colourClasses[colour];
+    }
+
+    // splits a subset of the vertices into colour classes
+    int[][] splitByColour(int[] ids) {
+        boolean[] selected = new boolean[colours.length];
+        for (int id : ids) {
+            selected[id] = true;
+        }
+        return splitByColour(colours, getNumColours(), id -> selected[id]);
+    }
+
+    /**
+     * Returns the number of colour classes, i.e. the number of sequential parallel phases in each sweep
+     * @return number of colours
+     */
+    public int getNumColours() {
+        return colourClasses.length;
+    }
+
+    /**
+     * Returns the number of vertices in a colour class
+     * @param colour colour, between 0 and (number of colours - 1)
+     * @return number of vertices with this colour
+     */
+    public int getColourClassSize(int colour) {
+        return colourClasses[colour].length;
+    }
+
+    /**
+     * Returns the wall-clock time spent computing the colouring
+     * @return time in nanoseconds
+     */
+    public long getColouringTimeNanos() {
+        return colouringTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("colours = %d, colouring time = %.3f ms",
+                getNumColours(), colouringTimeNanos / 1.0e6);
+    }
+
+}
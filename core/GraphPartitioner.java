@@ -0,0 +1,84 @@
+package core;
+
+/**
+ * Splits a network's vertices into parts of nearly equal size with few edges between parts, for partitioned
+ * sampling. The parts start as consecutive runs of a breadth-first order, which are compact on mesh-like networks,
+ * and are then refined by greedily moving boundary vertices to the neighbouring part holding most of their
+ * neighbours, as long as the parts stay balanced.
+ */
+final class GraphPartitioner {
+
+    private static final int REFINEMENT_PASSES = 4;
+    private static final double IMBALANCE = 0.03; // parts may be this much larger or smaller than average
+
+    private GraphPartitioner() {
+    }
+
+    // vertex id -> part, in [0, numParts)
+    static int[] partition(CompiledNetwork network, int numParts) {
+        int numVertices = network.getNumVertices();
+        int[] parts = new int[numVertices];
+        int[] partSizes = new int[numParts];
+        int[] order = VertexOrdering.compute(network, VertexOrder.BREADTH_FIRST);
+        for (int index = 0; index < numVertices; index++) {
+            int part = (int) ((long) index * numParts / numVertices);
+            parts[order[index]] = part;
+            partSizes[part]++;
+        }
+        if (numParts == 1) {
+            return parts;
+        }
+
+        double averageSize = (double) numVertices / numParts;
+        int minSize = (int) Math.floor(averageSize * (1.0 - IMBALANCE));
+        int maxSize = (int) Math.ceil(averageSize * (1.0 + IMBALANCE));
+        int[] neighbourCounts = new int[numParts]; // scratch: neighbours of the current vertex in each part
+        for (int pass = 0; pass < REFINEMENT_PASSES; pass++) {
+            int moves = 0;
+            for (int id = 0; id < numVertices; id++) {
+                int part = parts[id];
+                int start = network.getNeighbourStart(id);
+                int end = network.getNeighbourEnd(id);
+                for (int position = start; position < end; position++) {
+                    neighbourCounts[parts[network.getNeighbour(position)]]++;
+                }
+                int bestPart = part;
+                for (int position = start; position < end; position++) {
+                    int candidate = parts[network.getNeighbour(position)];
+                    if (neighbourCounts[candidate] > neighbourCounts[bestPart] && partSizes[candidate] < maxSize) {
+                        bestPart = candidate;
+                    }
+                }
+                for (int position = start; position < end; position++) {
+                    neighbourCounts[parts[network.getNeighbour(position)]] = 0;
+                }
+                if (bestPart != part && partSizes[part] > minSize) {
+                    parts[id] = bestPart;
+                    partSizes[part]--;
+                    partSizes[bestPart]++;
+                    moves++;
+                }
+            }
+            if (moves == 0) {
+                break;
+            }
+        }
+        return parts;
+    }
+
+    // number of edges whose endpoints are in different parts
+    static long countCutEdges(CompiledNetwork network, int[] parts) {
+        long cutEdges = 0;
+        for (int id = 0; id < network.getNumVertices(); id++) {
+            int end = network.getNeighbourEnd(id);
+            for (int position = network.getNeighbourStart(id); position < end; position++) {
+                int neighbour = network.getNeighbour(position);
+                if (id < neighbour && parts[id] != parts[neighbour]) {
+                    cutEdges++;
+                }
+            }
+        }
+        return cutEdges;
+    }
+
+}
@@ -0,0 +1,61 @@
+package core;
+
+import java.util.Map;
+
+/**
+ * Result of deterministic (mean-field or belief propagation) inference: the approximate marginals, together with
+ * the number of iterations run and the final residual
+ */
+public final class InferenceResult {
+
+    private final Map<Vertex, Double> probabilities;
+    private final int iterations;
+    private final double residual;
+    private final boolean converged;
+
+    InferenceResult(Map<Vertex, Double> probabilities, int iterations, double residual, boolean converged) {
+        this.probabilities = probabilities;
+        this.iterations = iterations;
+        this.residual = residual;
+        this.converged = converged;
+    }
+
+    /**
+     * Returns the approximate marginal probabilities
+     * @return map (unlabelled vertex) -> (probability of true label for this vertex, given model)
+     */
+    public Map<Vertex, Double> getProbabilities() {
+        return probabilities;
+    }
+
+    /**
+     * Returns the number of parallel iterations run
+     * @return number of iterations
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns the largest change in any mean (for mean-field) or message (for belief propagation) on the last
+     * iteration
+     * @return residual
+     */
+    public double getResidual() {
+        return residual;
+    }
+
+    /**
+     * Returns whether the residual fell below the tolerance, rather than the iteration budget running out
+     * @return true if converged
+     */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("iterations = %d, residual = %.3e, converged = %b", iterations, residual, converged);
+    }
+
+}
@@ -0,0 +1,31 @@
+package core;
+
+/**
+ * A Gibbs chain (or a bundle of independent replica chains) over the labels of a compiled network, as used for
+ * prediction and for sampling missing labels. The label statistics are those of the first replica.
+ */
+interface LabelSampler extends LabelStatistics {
+
+    int getNumVertices();
+
+    // ids of the vertices whose labels are being sampled (i.e. not fixed)
+    int[] getVerticesToSample();
+
+    // number of independent replica chains whose labels are sampled together
+    int getNumReplicas();
+
+    // number of replicas in which the vertex currently has a positive label
+    int getPositiveCount(int id);
+
+    // current label of the vertex, in the first replica
+    boolean getLabel(int id);
+
+    default void performSamplingRound(Parameters parameters) {
+        performSamplingRound(parameters, null);
+    }
+
+    // if probTrueSums is not null, each resampled vertex's conditional probability of a positive label (summed over
+    // the replicas) is added to its entry, for Rao-Blackwellised estimation
+    void performSamplingRound(Parameters parameters, double[] probTrueSums);
+
+}
@@ -0,0 +1,14 @@
+package core;
+
+/**
+ * The sufficient statistics of a chain's current labels, which are all that gradient descent needs from it
+ */
+interface LabelStatistics {
+
+    // sum_i x_i y_i, over all vertices
+    long getFeatureLabelSum();
+
+    // sum_(i,j) y_i y_j, over all edges
+    long getEdgeLabelSum();
+
+}
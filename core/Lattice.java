@@ -0,0 +1,224 @@
+package core;
+
+/**
+ * A periodic 2D or 3D lattice (a torus), each site joined to its nearest neighbour along every axis. The topology
+ * is implied by the dimensions, so no edges are stored, and features and labels are packed bitsets: a lattice costs
+ * a few bits per site, however large. Sites are identified by int ids, in row-major order.
+ * Sampling on a lattice uses a checkerboard sweep over the packed labels (see {@link Algorithms#predict(Lattice,
+ * Parameters, int, int, int, SamplingOptions)}), which needs every dimension to be even.
+ */
+public final class Lattice {
+
+    private final int layers; // 1 for a 2D lattice
+    private final int rows;
+    private final int cols;
+    private final int wordsPerLine; // each line (a row within a layer) is padded to a whole number of words
+    private final long[] featureBits;
+    private final long[] knownBits; // set for sites whose labels are known
+    private final long[] labelBits; // known labels (only meaningful where knownBits is set)
+
+    private Lattice(int layers, int rows, int cols) {
+        for (int size : new int[] {rows, cols}) {
+            if (size < 4 || size % 2 != 0) {
+                throw new IllegalArgumentException("Lattice dimensions must be even and at least 4");
+            }
+        }
+        if (layers != 1 && (layers < 4 || layers % 2 != 0)) {
+            throw new IllegalArgumentException("Lattice dimensions must be even and at least 4");
+        }
+        if ((long) layers * rows * cols > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Lattice has too many sites");
+        }
+        this.layers = layers;
+        this.rows = rows;
+        this.cols = cols;
+        this.wordsPerLine = (cols + 63) >>> 6;
+        int numWords = layers * rows * wordsPerLine;
+        featureBits = new long[numWords];
+        knownBits = new long[numWords];
+        labelBits = new long[numWords];
+    }
+
+    /**
+     * A 2D periodic lattice, with every site unlabelled and with a negative feature value
+     * @param rows number of rows (even, and at least 4)
+     * @param cols number of columns (even, and at least 4)
+     * @return lattice
+     */
+    public static Lattice periodic2D(int rows, int cols) {
+        return new Lattice(1, rows, cols);
+    }
+
+    /**
+     * A 3D periodic lattice, with every site unlabelled and with a negative feature value
+     * @param layers number of layers (even, and at least 4)
+     * @param rows number of rows (even, and at least 4)
+     * @param cols number of columns (even, and at least 4)
+     * @return lattice
+     */
+    public static Lattice periodic3D(int layers, int rows, int cols) {
+        return new Lattice(layers, rows, cols);
+    }
+
+    // a copy with the same features and labels
+    Lattice copy() {
+        Lattice copy = new Lattice(layers, rows, cols);
+        System.arraycopy(featureBits, 0, copy.featureBits, 0, featureBits.length);
+        System.arraycopy(knownBits, 0, copy.knownBits, 0, knownBits.length);
+        System.arraycopy(labelBits, 0, copy.labelBits, 0, labelBits.length);
+        return copy;
+    }
+
+    /**
+     * Returns the number of sites; site ids run from 0 to (number of sites - 1)
+     * @return number of sites
+     */
+    public int getNumSites() {
+        return layers * rows * cols;
+    }
+
+    /**
+     * Returns the number of dimensions
+     * @return 2 or 3
+     */
+    public int getNumDimensions() {
+        return (layers == 1) ? 2 : 3;
+    }
+
+    /**
+     * Returns the id of the site at a position in a 2D lattice
+     * @param row row
+     * @param col column
+     * @return site id
+     */
+    public int getSite(int row, int col) {
+        return getSite(0, row, col);
+    }
+
+    /**
+     * Returns the id of the site at a position in a 3D lattice
+     * @param layer layer
+     * @param row row
+     * @param col column
+     * @return site id
+     */
+    public int getSite(int layer, int row, int col) {
+        if (layer < 0 || layer >= layers || row < 0 || row >= rows || col < 0 || col >= cols) {
+            throw new IndexOutOfBoundsException("No site at (" + layer + ", " + row + ", " + col + ")");
+        }
+        return (layer * rows + row) * cols + col;
+    }
+
+    /**
+     * Sets the feature value of a site
+     * @param site site id
+     * @param featureValue feature value
+     */
+    public void setFeatureValue(int site, boolean featureValue) {
+        setBit(featureBits, site, featureValue);
+    }
+
+    /**
+     * Returns the feature value of a site
+     * @param site site id
+     * @return feature value
+     */
+    public boolean getFeatureValue(int site) {
+        return getBit(featureBits, site);
+    }
+
+    /**
+     * Records the known label of a site
+     * @param site site id
+     * @param label label
+     */
+    public void setLabel(int site, boolean label) {
+        setBit(knownBits, site, true);
+        setBit(labelBits, site, label);
+    }
+
+    /**
+     * Forgets the known label of a site
+     * @param site site id
+     */
+    public void clearLabel(int site) {
+        setBit(knownBits, site, false);
+        setBit(labelBits, site, false);
+    }
+
+    /**
+     * Returns whether a site's label is known
+     * @param site site id
+     * @return true if labelled
+     */
+    public boolean isLabelled(int site) {
+        return getBit(knownBits, site);
+    }
+
+    /**
+     * Returns the known label of a site
+     * @param site site id, of a labelled site
+     * @return label
+     */
+    public boolean getLabel(int site) {
+        if (!isLabelled(site)) {
+            throw new IllegalArgumentException("Site " + site + " is not labelled");
+        }
+        return getBit(labelBits, site);
+    }
+
+    int getLayers() {
+        return layers;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    int getCols() {
+        return cols;
+    }
+
+    int getWordsPerLine() {
+        return wordsPerLine;
+    }
+
+    long[] getFeatureBits() {
+        return featureBits;
+    }
+
+    long[] getKnownBits() {
+        return knownBits;
+    }
+
+    long[] getLabelBits() {
+        return labelBits;
+    }
+
+    // index of the word holding a site's bit; bit (col % 64) of the word
+    int getWordIndex(int site) {
+        return (site / cols) * wordsPerLine + ((site % cols) >>> 6);
+    }
+
+    private boolean getBit(long[] bits, int site) {
+        checkSite(site);
+        return (bits[getWordIndex(site)] & (1L << (site % cols))) != 0;
+    }
+
+    private void setBit(long[] bits, int site, boolean value) {
+        checkSite(site);
+        long bit = 1L << (site % cols);
+        if (value) {
+            bits[getWordIndex(site)] |= bit;
+        } else {
+            bits[getWordIndex(site)] &= ~bit;
+        }
+    }
+
+    private void checkSite(int site) {
+        if (site < 0 || site >= getNumSites()) {
+            throw new IndexOutOfBoundsException("No site " + site);
+        }
+    }
+
+}
@@ -0,0 +1,268 @@
+package core;
+
+import java.util.stream.IntStream;
+
+/**
+ * Gibbs chain over the packed labels of a {@link Lattice}, swept as a checkerboard: the sites with even and odd
+ * (layer + row + col) are resampled in turn, so every update sees up-to-date neighbours (as in the chromatic mode).
+ * Each 64-bit word of labels is updated at once (SWAR): the positive neighbours of all 64 sites are counted with a
+ * bit-sliced adder, and the new labels are drawn by a bit-sliced comparison of 32-bit uniforms against the
+ * conditional table's thresholds, consuming random bits from the most significant end, one word per bit, until
+ * every site in the word is decided (usually after a handful of bits).
+ */
+class LatticeAssignment implements LabelStatistics {
+
+    private static final long EVEN_LANES = 0x5555555555555555L;
+    private static final long ODD_LANES = 0xAAAAAAAAAAAAAAAAL;
+    private static final int THRESHOLD_BITS = 33; // thresholds run up to 2^32 inclusive
+
+    private final Lattice lattice;
+    private final boolean conditionOnKnownLabels;
+    private final CounterRandom random;
+    private long sweepsPerformed = 0; // counter for the random numbers
+    private final int layers;
+    private final int rows;
+    private final int cols;
+    private final int wordsPerLine;
+    private final int degree;
+    private final long lastWordMask; // valid lanes of the last word of each line
+    private final int lastLane; // lane of the last column, in the last word of each line
+    private final long[] labels; // padded as in the lattice; padding lanes are always 0
+        // as in Assignment, the end of each colour's parallel stream publishes its writes to the next colour. Words
+        // are written whole, but concurrent writers never change the lanes another thread reads, so even a torn
+        // long write would be harmless
+
+    // Sufficient statistics for gradient descent, recomputed when first asked for after a round
+    private long featureLabelSum;
+    private long edgeLabelSum;
+    private boolean statisticsStale = true;
+
+    private LatticeAssignment(Lattice lattice, CounterRandom random, boolean conditionOnKnownLabels) {
+        this.lattice = lattice;
+        this.conditionOnKnownLabels = conditionOnKnownLabels;
+        this.random = random;
+        layers = lattice.getLayers();
+        rows = lattice.getRows();
+        cols = lattice.getCols();
+        wordsPerLine = lattice.getWordsPerLine();
+        degree = 2 * lattice.getNumDimensions();
+        lastLane = (cols - 1) & 63;
+        lastWordMask = -1L >>> (63 - lastLane);
+
+        long[] knownBits = lattice.getKnownBits();
+        long[] knownLabelBits = lattice.getLabelBits();
+        long initialSweepKey = random.getSweepKey(-1);
+        labels = new long[knownBits.length];
+        for (int wordIndex = 0; wordIndex < labels.length; wordIndex++) {
+            long free = getFreeLanes(wordIndex);
+            labels[wordIndex] = (knownLabelBits[wordIndex] & ~free & getValidLanes(wordIndex))
+                    | (CounterRandom.getVertexBits(initialSweepKey, wordIndex) & free);
+        }
+    }
+
+    // to Gibbs-sample the unknown labels, conditioning on the known labels
+    static LatticeAssignment samplingUnknownGivenKnown(Lattice lattice, CounterRandom random) {
+        return new LatticeAssignment(lattice, random, true);
+    }
+
+    // to Gibbs-sample all the labels, conditioning on nothing
+    static LatticeAssignment samplingAll(Lattice lattice, CounterRandom random) {
+        return new LatticeAssignment(lattice, random, false);
+    }
+
+    boolean getLabel(int site) {
+        return (labels[lattice.getWordIndex(site)] & (1L << (site % cols))) != 0;
+    }
+
+    boolean isSampled(int site) {
+        return !conditionOnKnownLabels || !lattice.isLabelled(site);
+    }
+
+    @Override
+    public long getFeatureLabelSum() {
+        resyncStatisticsIfStale();
+        return featureLabelSum;
+    }
+
+    @Override
+    public long getEdgeLabelSum() {
+        resyncStatisticsIfStale();
+        return edgeLabelSum;
+    }
+
+    // if probTrueSums is not null, each resampled site's conditional probability of a positive label is added to its
+    // entry (indexed by site id), for Rao-Blackwellised estimation
+    void performSamplingRound(Parameters parameters, double[] probTrueSums) {
+        ConditionalTable conditionalTable = parameters.getConditionalTable(degree);
+        // Sites fall into classes 2 * (positive neighbour count) + feature; bit c of classesWithThresholdBit[b] is
+        // bit b of class c's threshold
+        int[] classesWithThresholdBit = new int[THRESHOLD_BITS];
+        for (int positiveCount = 0; positiveCount <= degree; positiveCount++) {
+            int spinSum = 2 * positiveCount - degree;
+            for (int feature = 0; feature < 2; feature++) {
+                long threshold = conditionalTable.getThreshold(feature != 0, spinSum);
+                for (int bit = 0; bit < THRESHOLD_BITS; bit++) {
+                    if (((threshold >>> bit) & 1L) != 0) {
+                        classesWithThresholdBit[bit] |= 1 << (2 * positiveCount + feature);
+                    }
+                }
+            }
+        }
+        for (int colour = 0; colour < 2; colour++) {
+            int phase = colour;
+            long sweepKey = random.getSweepKey(2 * sweepsPerformed + colour);
+            IntStream.range(0, layers * rows).parallel()
+                    .forEach(line -> resampleLine(line, phase, classesWithThresholdBit, sweepKey, conditionalTable,
+                            probTrueSums));
+        }
+        sweepsPerformed++;
+        statisticsStale = true;
+    }
+
+    private void resampleLine(int line, int colour, int[] classesWithThresholdBit, long sweepKey,
+                              ConditionalTable conditionalTable, double[] probTrueSums) {
+        int layer = line / rows;
+        int row = line % rows;
+        int base = line * wordsPerLine;
+        int upBase = lineIndex(layer, (row + rows - 1) % rows) * wordsPerLine;
+        int downBase = lineIndex(layer, (row + 1) % rows) * wordsPerLine;
+        int frontBase = lineIndex((layer + layers - 1) % layers, row) * wordsPerLine; // same line if 2D (unused)
+        int backBase = lineIndex((layer + 1) % layers, row) * wordsPerLine;
+        long colourLanes = (((layer + row) & 1) == colour) ? EVEN_LANES : ODD_LANES;
+        long[] featureBits = lattice.getFeatureBits();
+        long[] classMasks = new long[2 * (degree + 1)];
+
+        for (int word = 0; word < wordsPerLine; word++) {
+            int wordIndex = base + word;
+            long free = colourLanes & getFreeLanes(wordIndex);
+            if (free == 0L) {
+                continue;
+            }
+
+            // bit-sliced count of positive neighbours: bit b of plane p is bit p of lane b's count
+            long plane0 = 0L;
+            long plane1 = 0L;
+            long plane2 = 0L;
+            for (int direction = 0; direction < degree; direction++) {
+                long neighbours;
+                switch (direction) {
+                    case 0: neighbours = getLeftNeighbours(base, word); break;
+                    case 1: neighbours = getRightNeighbours(base, word); break;
+                    case 2: neighbours = labels[upBase + word]; break;
+                    case 3: neighbours = labels[downBase + word]; break;
+                    case 4: neighbours = labels[frontBase + word]; break;
+                    default: neighbours = labels[backBase + word]; break;
+                }
+                long carry0 = plane0 & neighbours;
+                plane0 ^= neighbours;
+                long carry1 = plane1 & carry0;
+                plane1 ^= carry0;
+                plane2 ^= carry1; // counts are at most 6, so never overflow three planes
+            }
+
+            long features = featureBits[wordIndex];
+            for (int positiveCount = 0; positiveCount <= degree; positiveCount++) {
+                long countMask = (((positiveCount & 1) != 0) ? plane0 : ~plane0)
+                        & (((positiveCount & 2) != 0) ? plane1 : ~plane1)
+                        & (((positiveCount & 4) != 0) ? plane2 : ~plane2);
+                classMasks[2 * positiveCount] = countMask & ~features;
+                classMasks[2 * positiveCount + 1] = countMask & features;
+            }
+
+            // Bit-sliced comparison uniform < threshold, most significant bit first: a lane is decided at the first
+            // bit where its uniform and threshold differ. The uniforms' bits are drawn lazily, one word per bit.
+            long newLabels = 0L;
+            long undecided = free;
+            long vertexBits = CounterRandom.getVertexBits(sweepKey, wordIndex);
+            for (int bit = THRESHOLD_BITS - 1; bit >= 0 && undecided != 0L; bit--) {
+                long thresholdBits = 0L;
+                for (int classes = classesWithThresholdBit[bit]; classes != 0; classes &= classes - 1) {
+                    thresholdBits |= classMasks[Integer.numberOfTrailingZeros(classes)];
+                }
+                long uniformBits = (bit == 32) ? 0L : CounterRandom.getSequenceBits(vertexBits, 31 - bit);
+                newLabels |= undecided & ~uniformBits & thresholdBits;
+                undecided &= ~(uniformBits ^ thresholdBits);
+            }
+
+            if (probTrueSums != null) {
+                // each site is resampled by one thread per round, so no race
+                int firstSite = line * cols + 64 * word;
+                for (long lanes = free; lanes != 0L; lanes &= lanes - 1) {
+                    int lane = Long.numberOfTrailingZeros(lanes);
+                    int positiveCount = (int) ((plane0 >>> lane) & 1L) | (int) ((plane1 >>> lane) & 1L) << 1
+                            | (int) ((plane2 >>> lane) & 1L) << 2;
+                    probTrueSums[firstSite + lane] += conditionalTable.getProbTrue(
+                            ((features >>> lane) & 1L) != 0, 2 * positiveCount - degree);
+                }
+            }
+            labels[wordIndex] = (labels[wordIndex] & ~free) | newLabels;
+        }
+    }
+
+    // lane b holds the label of the site to the left (col - 1) of lane b, wrapping around the line
+    private long getLeftNeighbours(int base, int word) {
+        long carryIn = (word > 0)
+                ? labels[base + word - 1] >>> 63
+                : (labels[base + wordsPerLine - 1] >>> lastLane) & 1L;
+        return (labels[base + word] << 1) | carryIn;
+    }
+
+    // lane b holds the label of the site to the right (col + 1) of lane b, wrapping around the line
+    private long getRightNeighbours(int base, int word) {
+        long carryIn = (word < wordsPerLine - 1)
+                ? labels[base + word + 1] << 63
+                : (labels[base] & 1L) << lastLane;
+        return (labels[base + word] >>> 1) | carryIn;
+    }
+
+    private int lineIndex(int layer, int row) {
+        return layer * rows + row;
+    }
+
+    private long getValidLanes(int wordIndex) {
+        return (wordIndex % wordsPerLine == wordsPerLine - 1) ? lastWordMask : -1L;
+    }
+
+    private long getFreeLanes(int wordIndex) {
+        long valid = getValidLanes(wordIndex);
+        return conditionOnKnownLabels ? valid & ~lattice.getKnownBits()[wordIndex] : valid;
+    }
+
+    // Each site's edges to the right, below and behind it are counted once: the edge statistic is
+    // (number of edges) - 2 (number of edges whose ends disagree), and likewise for the feature statistic
+    private void resyncStatisticsIfStale() {
+        if (!statisticsStale) {
+            return;
+        }
+        long[] featureBits = lattice.getFeatureBits();
+        long featureDisagreements = IntStream.range(0, labels.length).parallel()
+                .mapToLong(wordIndex -> Long.bitCount(
+                        (featureBits[wordIndex] ^ labels[wordIndex]) & getValidLanes(wordIndex)))
+                .sum();
+        long edgeDisagreements = IntStream.range(0, layers * rows).parallel()
+                .mapToLong(line -> {
+                    int layer = line / rows;
+                    int row = line % rows;
+                    int base = line * wordsPerLine;
+                    int downBase = lineIndex(layer, (row + 1) % rows) * wordsPerLine;
+                    int backBase = lineIndex((layer + 1) % layers, row) * wordsPerLine;
+                    long disagreements = 0;
+                    for (int word = 0; word < wordsPerLine; word++) {
+                        long valid = getValidLanes(base + word);
+                        long labelWord = labels[base + word];
+                        disagreements += Long.bitCount((labelWord ^ getRightNeighbours(base, word)) & valid);
+                        disagreements += Long.bitCount((labelWord ^ labels[downBase + word]) & valid);
+                        if (degree == 6) {
+                            disagreements += Long.bitCount((labelWord ^ labels[backBase + word]) & valid);
+                        }
+                    }
+                    return disagreements;
+                })
+                .sum();
+        long numSites = lattice.getNumSites();
+        featureLabelSum = numSites - 2 * featureDisagreements;
+        edgeLabelSum = (degree / 2) * numSites - 2 * edgeDisagreements;
+        statisticsStale = false;
+    }
+
+}
@@ -0,0 +1,238 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A network stored in a compact binary file and memory-mapped for reading, so that opening it costs a few
+ * system calls however large it is, and several processes can share the same pages read-only. Vertices are
+ * identified by their int ids, and there are no per-vertex objects: the samplers read the topology straight out
+ * of the mapping.
+ *
+ * File layout (all values little-endian, each section starting on an 8-byte boundary):
+ * <ul>
+ *     <li>header: magic number, format version, number of vertices, number of edges, maximum degree</li>
+ *     <li>feature bitset, known-label mask bitset, and label bitset, as longs (bit i of word i / 64 for vertex i)</li>
+ *     <li>CSR neighbour offsets: (number of vertices + 1) ints</li>
+ *     <li>CSR neighbour lists: (2 * number of edges) ints, each vertex's list sorted by id</li>
+ * </ul>
+ */
+public final class MappedNetwork {
+
+    private static final int MAGIC = 0x574E4B4D; // "MKNW" when read as little-endian bytes
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+
+    private final CompiledNetwork compiledNetwork;
+
+    private MappedNetwork(CompiledNetwork compiledNetwork) {
+        this.compiledNetwork = compiledNetwork;
+    }
+
+    /**
+     * Writes a network to a file in the mapped format. Vertex ids follow the order in which the vertices were added
+     * to the network.
+     * @param network network
+     * @param path file to write (replaced if it exists)
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Network network, Path path) throws IOException {
+        write(network, path, VertexOrder.INSERTION);
+    }
+
+    /**
+     * Writes a network to a file in the mapped format, numbering the vertices in the given order. Ordering the
+     * vertices so that neighbours have nearby ids (e.g. {@link VertexOrder#REVERSE_CUTHILL_MCKEE}) speeds up sampling
+     * of the mapped network, as neighbouring vertices' data then tends to share pages and cache lines.
+     * @param network network
+     * @param path file to write (replaced if it exists)
+     * @param vertexOrder order in which vertex ids are assigned
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Network network, Path path, VertexOrder vertexOrder) throws IOException {
+        CompiledNetwork compiled = CompiledNetwork.compile(network, vertexOrder);
+        int numVertices = compiled.getNumVertices();
+        int numWords = CompiledNetwork.numWords(numVertices);
+        long[] featureBits = new long[numWords];
+        long[] knownBits = new long[numWords];
+        long[] labelBits = new long[numWords];
+        for (int id = 0; id < numVertices; id++) {
+            long bit = 1L << id;
+            if (compiled.getFeature(id)) {
+                featureBits[id >>> 6] |= bit;
+            }
+            if (compiled.isLabelled(id)) {
+                knownBits[id >>> 6] |= bit;
+                if (compiled.getKnownLabel(id)) {
+                    labelBits[id >>> 6] |= bit;
+                }
+            }
+        }
+
+        Layout layout = new Layout(numVertices, compiled.getNumEdges());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = map(channel, FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(numVertices).putInt(compiled.getNumEdges())
+                    .putInt(compiled.getMaxDegree());
+            mapLongs(channel, FileChannel.MapMode.READ_WRITE, layout.featureOffset, numWords).put(featureBits);
+            mapLongs(channel, FileChannel.MapMode.READ_WRITE, layout.knownOffset, numWords).put(knownBits);
+            mapLongs(channel, FileChannel.MapMode.READ_WRITE, layout.labelOffset, numWords).put(labelBits);
+            IntBuffer offsets = mapInts(channel, FileChannel.MapMode.READ_WRITE, layout.offsetsOffset,
+                    numVertices + 1);
+            for (int id = 0; id < numVertices; id++) {
+                offsets.put(compiled.getNeighbourStart(id));
+            }
+            offsets.put(2 * compiled.getNumEdges());
+            IntBuffer neighbours = mapInts(channel, FileChannel.MapMode.READ_WRITE, layout.neighboursOffset,
+                    2 * compiled.getNumEdges());
+            for (int position = 0; position < 2 * compiled.getNumEdges(); position++) {
+                neighbours.put(compiled.getNeighbour(position));
+            }
+        }
+    }
+
+    /**
+     * Opens a network file written by {@link #write}, mapping it read-only. The mapping stays valid after this
+     * method returns, until the returned object is garbage collected.
+     * @param path file to open
+     * @return mapped network
+     * @throws IOException if the file cannot be read, or is not in the mapped format
+     */
+    public static MappedNetwork open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a network file: " + path);
+            }
+            ByteBuffer header = map(channel, FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a network file: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported network file version " + version + ": " + path);
+            }
+            int numVertices = header.getInt();
+            int numEdges = header.getInt();
+            int maxDegree = header.getInt();
+            Layout layout = new Layout(numVertices, numEdges);
+            if (channel.size() < layout.totalBytes) {
+                throw new IOException("Truncated network file: " + path);
+            }
+
+            int numWords = CompiledNetwork.numWords(numVertices);
+            FileChannel.MapMode mode = FileChannel.MapMode.READ_ONLY;
+            return new MappedNetwork(new CompiledNetwork(numVertices, null, null,
+                    mapInts(channel, mode, layout.offsetsOffset, numVertices + 1),
+                    mapInts(channel, mode, layout.neighboursOffset, 2 * numEdges),
+                    mapLongs(channel, mode, layout.featureOffset, numWords),
+                    mapLongs(channel, mode, layout.knownOffset, numWords),
+                    mapLongs(channel, mode, layout.labelOffset, numWords),
+                    numEdges, maxDegree));
+        }
+    }
+
+    /**
+     * Returns the number of vertices; vertex ids run from 0 to (number of vertices - 1)
+     * @return number of vertices
+     */
+    public int getNumVertices() {
+        return compiledNetwork.getNumVertices();
+    }
+
+    /**
+     * Returns the number of edges, not counting self-loops
+     * @return number of edges
+     */
+    public int getNumEdges() {
+        return compiledNetwork.getNumEdges();
+    }
+
+    /**
+     * Returns the feature value of a vertex
+     * @param id vertex id
+     * @return feature value
+     */
+    public boolean getFeatureValue(int id) {
+        return compiledNetwork.getFeature(id);
+    }
+
+    /**
+     * Returns whether a vertex's label is known
+     * @param id vertex id
+     * @return true if labelled
+     */
+    public boolean isLabelled(int id) {
+        return compiledNetwork.isLabelled(id);
+    }
+
+    /**
+     * Returns the known label of a vertex
+     * @param id vertex id, of a labelled vertex
+     * @return label
+     */
+    public boolean getLabel(int id) {
+        if (!compiledNetwork.isLabelled(id)) {
+            throw new IllegalArgumentException("Vertex " + id + " is not labelled");
+        }
+        return compiledNetwork.getKnownLabel(id);
+    }
+
+    CompiledNetwork getCompiledNetwork() {
+        return compiledNetwork;
+    }
+
+    // Sections are mapped separately, since a single mapping is limited to 2 GB
+    private static ByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long offset, long numBytes)
+            throws IOException {
+        if (numBytes > Integer.MAX_VALUE) {
+            throw new IOException("Network is too large to map: a section exceeds 2 GB");
+        }
+        MappedByteBuffer buffer = channel.map(mode, offset, numBytes);
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static IntBuffer mapInts(FileChannel channel, FileChannel.MapMode mode, long offset, int numInts)
+            throws IOException {
+        return map(channel, mode, offset, 4L * numInts).asIntBuffer();
+    }
+
+    private static LongBuffer mapLongs(FileChannel channel, FileChannel.MapMode mode, long offset, int numLongs)
+            throws IOException {
+        return map(channel, mode, offset, 8L * numLongs).asLongBuffer();
+    }
+
+    // byte offsets of the sections, for a network of the given size
+    private static final class Layout {
+
+        final long featureOffset;
+        final long knownOffset;
+        final long labelOffset;
+        final long offsetsOffset;
+        final long neighboursOffset;
+        final long totalBytes;
+
+        Layout(int numVertices, int numEdges) {
+            long bitsetBytes = 8L * CompiledNetwork.numWords(numVertices);
+            featureOffset = HEADER_BYTES;
+            knownOffset = featureOffset + bitsetBytes;
+            labelOffset = knownOffset + bitsetBytes;
+            offsetsOffset = labelOffset + bitsetBytes;
+            neighboursOffset = align(offsetsOffset + 4L * (numVertices + 1));
+            totalBytes = neighboursOffset + 8L * numEdges;
+        }
+
+        private static long align(long offset) {
+            return (offset + 7) & ~7L;
+        }
+
+    }
+
+}
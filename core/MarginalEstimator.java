@@ -0,0 +1,20 @@
+package core;
+
+/**
+ * Estimators for the marginal probability of a positive label, from the states visited by the Gibbs chain
+ */
+public enum MarginalEstimator {
+
+    /**
+     * Average of the sampled labels: each observation contributes 0 or 1 per replica
+     */
+    SAMPLED_LABELS,
+
+    /**
+     * Rao-Blackwellised estimator: each observation contributes the exact conditional probability of a positive
+     * label given the neighbours' labels, as computed by the sampler on the last pass before the observation.
+     * This has lower variance than averaging the sampled labels, for the same number of sweeps.
+     */
+    RAO_BLACKWELL
+
+}
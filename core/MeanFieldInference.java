@@ -0,0 +1,68 @@
+package core;
+
+import java.util.stream.IntStream;
+
+/**
+ * Naive mean-field inference: each unlabelled vertex's mean label m_i = E[y_i] satisfies the self-consistency
+ * equation m_i = tanh(alpha x_i + beta sum_j m_j), which is iterated to a fixed point. All vertices are updated in
+ * parallel from the previous iteration's means (Jacobi iteration), with damping to suppress oscillation.
+ */
+class MeanFieldInference {
+
+    private final CompiledNetwork network;
+    private double[] means; // indexed by vertex id; known labels are fixed at +/-1
+    private double[] nextMeans;
+    private int iterations = 0;
+    private double residual = Double.POSITIVE_INFINITY;
+
+    MeanFieldInference(CompiledNetwork network) {
+        this.network = network;
+        means = new double[network.getNumVertices()];
+        for (int id = 0; id < means.length; id++) {
+            means[id] = network.isLabelled(id) ? BooleanUtils.spin(network.getKnownLabel(id)) : 0.0;
+        }
+        nextMeans = means.clone();
+    }
+
+    // iterates until the largest change in any mean is below the tolerance, or the iteration budget runs out
+    void run(Parameters parameters, int maxIterations, double tolerance, double damping) {
+        double alpha = parameters.getAlpha();
+        double beta = parameters.getBeta();
+        while (iterations < maxIterations && residual > tolerance) {
+            double[] previousMeans = means;
+            double[] updatedMeans = nextMeans;
+            residual = IntStream.range(0, previousMeans.length).parallel()
+                    .mapToDouble(id -> {
+                        if (network.isLabelled(id)) {
+                            return 0.0;
+                        }
+                        double neighbourMeanSum = 0.0;
+                        int end = network.getNeighbourEnd(id);
+                        for (int position = network.getNeighbourStart(id); position < end; position++) {
+                            neighbourMeanSum += previousMeans[network.getNeighbour(position)];
+                        }
+                        double target = Math.tanh(alpha * BooleanUtils.spin(network.getFeature(id))
+                                + beta * neighbourMeanSum);
+                        updatedMeans[id] = (1.0 - damping) * target + damping * previousMeans[id];
+                        return Math.abs(updatedMeans[id] - previousMeans[id]);
+                    })
+                    .max().orElse(0.0);
+            means = updatedMeans;
+            nextMeans = previousMeans;
+            iterations++;
+        }
+    }
+
+    double getProbTrue(int id) {
+        return (1.0 + means[id]) / 2.0;
+    }
+
+    int getIterations() {
+        return iterations;
+    }
+
+    double getResidual() {
+        return residual;
+    }
+
+}
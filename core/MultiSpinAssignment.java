@@ -0,0 +1,238 @@
+package core;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Multi-spin coded assignment: each vertex's labels for 64 independent replicas of the Gibbs chain are packed into
+ * the bits of one long, so that one sweep advances all 64 chains at once. Neighbour labels are counted for all
+ * replicas together with a bit-sliced adder, and the new labels are drawn by a bit-sliced comparison of 32-bit
+ * uniforms against the thresholds of the replicas' neighbour counts, as in LatticeAssignment.
+ * Sweeps use the chromatic schedule, so each replica is an exact Gibbs sampler.
+ * The replicas may also condition on different known labels (for batched prediction, one query per replica): a
+ * vertex's label can be pinned in some replicas and sampled in the others.
+ */
+class MultiSpinAssignment implements LabelSampler {
+
+    static final int NUM_REPLICAS = 64;
+
+    private static final int CHUNK_SIZE = 1024; // vertices per parallel task, so that scratch space is reused
+    private static final int MAX_PLANES = 32; // enough bit planes to count up to Integer.MAX_VALUE neighbours
+    private static final int THRESHOLD_BITS = 33; // thresholds run up to 2^32 inclusive
+
+    private final CompiledNetwork network;
+    private final int[] verticesToSample;
+    private final int[][] verticesToSampleByColour;
+    private final CounterRandom random;
+    private long sweepsPerformed = 0; // counter for the random numbers
+    private final long[] spins; // indexed by vertex id; bit r holds the label in replica r
+        // as in Assignment, no synchronization is used: the end of each colour class's parallel stream publishes
+        // its writes to the next class
+    private final long[] pinnedReplicas; // indexed by vertex id; bit r set if the label is pinned in replica r
+    private final long[] pinnedLabels; // the pinned labels (only meaningful where pinnedReplicas is set)
+        // both null when every vertex is either pinned in all replicas or in none, as when pinning known labels
+
+    // to sample the unknown labels given the known labels, in every replica
+    MultiSpinAssignment(CompiledNetwork network, CounterRandom random) {
+        this(network, random, null, null);
+    }
+
+    // to sample each replica's unpinned labels given its pinned labels; the known labels of the network are ignored
+    MultiSpinAssignment(CompiledNetwork network, CounterRandom random, long[] pinnedReplicas, long[] pinnedLabels) {
+        this.network = network;
+        this.random = random;
+        this.pinnedReplicas = pinnedReplicas;
+        this.pinnedLabels = pinnedLabels;
+        int numVertices = network.getNumVertices();
+        long initialSweepKey = random.getSweepKey(-1);
+        spins = new long[numVertices];
+        int[] toSample = new int[numVertices];
+        int numToSample = 0;
+        for (int id = 0; id < numVertices; id++) {
+            long pinned = (pinnedReplicas != null) ? pinnedReplicas[id] : (network.isLabelled(id) ? -1L : 0L);
+            long labels = (pinnedReplicas != null) ? pinnedLabels[id] : (network.getKnownLabel(id) ? -1L : 0L);
+            // unpinned replicas start with independent random labels
+            spins[id] = (labels & pinned) | (CounterRandom.getVertexBits(initialSweepKey, id) & ~pinned);
+            if (pinned != -1L) {
+                toSample[numToSample++] = id;
+            }
+        }
+
+        verticesToSample = Arrays.copyOf(toSample, numToSample);
+        verticesToSampleByColour = network.getColouring().splitByColour(verticesToSample);
+    }
+
+    @Override
+    public int getNumVertices() {
+        return spins.length;
+    }
+
+    @Override
+    public int[] getVerticesToSample() {
+        return verticesToSample;
+    }
+
+    @Override
+    public int getNumReplicas() {
+        return NUM_REPLICAS;
+    }
+
+    // bit r holds the label in replica r
+    long getSpins(int id) {
+        return spins[id];
+    }
+
+    @Override
+    public int getPositiveCount(int id) {
+        return Long.bitCount(spins[id]);
+    }
+
+    @Override
+    public boolean getLabel(int id) {
+        return (spins[id] & 1L) != 0; // replica 0
+    }
+
+    // The statistics are not used by the samplers themselves, so are computed on demand (for replica 0)
+    @Override
+    public long getFeatureLabelSum() {
+        return IntStream.range(0, spins.length).parallel()
+                .mapToLong(id -> BooleanUtils.spin(network.getFeature(id)) * BooleanUtils.spin(getLabel(id)))
+                .sum();
+    }
+
+    @Override
+    public long getEdgeLabelSum() {
+        // each edge is seen once from each of its endpoints
+        return IntStream.range(0, spins.length).parallel()
+                .mapToLong(id -> {
+                    long spinSum = 0;
+                    int end = network.getNeighbourEnd(id);
+                    for (int position = network.getNeighbourStart(id); position < end; position++) {
+                        spinSum += BooleanUtils.spin(getLabel(network.getNeighbour(position)));
+                    }
+                    return BooleanUtils.spin(getLabel(id)) * spinSum;
+                })
+                .sum() / 2;
+    }
+
+    @Override
+    public void performSamplingRound(Parameters parameters, double[] probTrueSums) {
+        performSamplingRound(parameters, probTrueSums, null, 0);
+    }
+
+    // As above, but if replicaProbTrueSums is not null, each resampled vertex's conditional probability of a
+    // positive label in replica r < numReplicasToRecord is added to entry (id * numReplicasToRecord + r) instead
+    void performSamplingRound(Parameters parameters, double[] probTrueSums, double[] replicaProbTrueSums,
+                              int numReplicasToRecord) {
+        ConditionalTable conditionalTable = parameters.getConditionalTable(network.getMaxDegree());
+        long sweepKey = random.getSweepKey(sweepsPerformed++);
+        for (int[] colourClass : verticesToSampleByColour) {
+            int numChunks = (colourClass.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            IntStream.range(0, numChunks).parallel()
+                    .forEach(chunk -> {
+                        Scratch scratch = new Scratch();
+                        int end = Math.min(colourClass.length, (chunk + 1) * CHUNK_SIZE);
+                        for (int index = chunk * CHUNK_SIZE; index < end; index++) {
+                            resample(colourClass[index], conditionalTable, sweepKey, scratch, probTrueSums,
+                                    replicaProbTrueSums, numReplicasToRecord);
+                        }
+                    });
+        }
+    }
+
+    private void resample(int id, ConditionalTable conditionalTable, long sweepKey, Scratch scratch,
+                          double[] probTrueSums, double[] replicaProbTrueSums, int numReplicasToRecord) {
+        // Bit-sliced count of positive neighbours: after adding each neighbour's word, bit r of planes[p] is bit p
+        // of the number of positive neighbours in replica r
+        long[] planes = scratch.planes;
+        int start = network.getNeighbourStart(id);
+        int end = network.getNeighbourEnd(id);
+        int degree = end - start;
+        int numPlanes = MAX_PLANES - Integer.numberOfLeadingZeros(degree);
+        for (int plane = 0; plane < numPlanes; plane++) {
+            planes[plane] = 0L;
+        }
+        for (int position = start; position < end; position++) {
+            long carry = spins[network.getNeighbour(position)];
+            for (int plane = 0; carry != 0L; plane++) {
+                long nextCarry = planes[plane] & carry;
+                planes[plane] ^= carry;
+                carry = nextCarry;
+            }
+        }
+
+        // Replicas fall into classes by their positive neighbour count; there are at most 64 classes, and usually
+        // few, as the replicas mostly agree. Each class is found from its lowest replica.
+        boolean feature = network.getFeature(id);
+        int numClasses = 0;
+        for (long remaining = -1L; remaining != 0L; numClasses++) {
+            int replica = Long.numberOfTrailingZeros(remaining);
+            int positiveCount = 0;
+            long classMask = remaining;
+            for (int plane = 0; plane < numPlanes; plane++) {
+                long bits = planes[plane];
+                if (((bits >>> replica) & 1L) != 0) {
+                    positiveCount |= 1 << plane;
+                    classMask &= bits;
+                } else {
+                    classMask &= ~bits;
+                }
+            }
+            scratch.classMasks[numClasses] = classMask;
+            scratch.classSpinSums[numClasses] = 2 * positiveCount - degree;
+            scratch.classThresholds[numClasses] = conditionalTable.getThreshold(feature, 2 * positiveCount - degree);
+            remaining &= ~classMask;
+        }
+
+        // Bit-sliced comparison uniform < threshold, most significant bit first: a replica is decided at the first
+        // bit where its uniform and threshold differ. The uniforms' bits are drawn lazily, one word per bit.
+        long free = (pinnedReplicas != null) ? ~pinnedReplicas[id] : -1L;
+        long newSpins = 0L;
+        long undecided = free;
+        long vertexBits = CounterRandom.getVertexBits(sweepKey, id);
+        for (int bit = THRESHOLD_BITS - 1; bit >= 0 && undecided != 0L; bit--) {
+            long thresholdBits = 0L;
+            for (int index = 0; index < numClasses; index++) {
+                if (((scratch.classThresholds[index] >>> bit) & 1L) != 0) {
+                    thresholdBits |= scratch.classMasks[index];
+                }
+            }
+            long uniformBits = (bit == 32) ? 0L : CounterRandom.getSequenceBits(vertexBits, 31 - bit);
+            newSpins |= undecided & ~uniformBits & thresholdBits;
+            undecided &= ~(uniformBits ^ thresholdBits);
+        }
+        if (pinnedReplicas != null) {
+            newSpins |= pinnedLabels[id] & pinnedReplicas[id];
+        }
+        spins[id] = newSpins;
+
+        // Rao-Blackwell sums, one conditional probability per class
+        if (probTrueSums != null || replicaProbTrueSums != null) {
+            long recordedReplicas = (numReplicasToRecord == NUM_REPLICAS) ? -1L : (1L << numReplicasToRecord) - 1;
+            double probTrueSum = 0.0;
+            for (int index = 0; index < numClasses; index++) {
+                double probTrue = conditionalTable.getProbTrue(feature, scratch.classSpinSums[index]);
+                probTrueSum += Long.bitCount(scratch.classMasks[index]) * probTrue;
+                if (replicaProbTrueSums != null) {
+                    for (long replicas = scratch.classMasks[index] & recordedReplicas; replicas != 0L;
+                         replicas &= replicas - 1) {
+                        replicaProbTrueSums[id * numReplicasToRecord + Long.numberOfTrailingZeros(replicas)]
+                                += probTrue;
+                    }
+                }
+            }
+            if (probTrueSums != null) {
+                probTrueSums[id] += probTrueSum;
+            }
+        }
+    }
+
+    // scratch space for one thread's resampling
+    private static final class Scratch {
+        final long[] planes = new long[MAX_PLANES];
+        final long[] classMasks = new long[NUM_REPLICAS];
+        final int[] classSpinSums = new int[NUM_REPLICAS];
+        final long[] classThresholds = new long[NUM_REPLICAS];
+    }
+
+}
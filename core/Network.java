@@ -27,7 +27,8 @@ public class Network {
      * An empty network
      */
     public Network() {
-        this(new HashSet<>(), new HashSet<>(), new HashMap<>());
+        // insertion-ordered, so that vertex ids (and hence seeded sampling) do not depend on identity hash codes
+        this(new LinkedHashSet<>(), new LinkedHashSet<>(), new HashMap<>());
     }
 
     /**
@@ -70,8 +71,6 @@ public class Network {
     public void addEdge(Vertex fromVertex, Vertex toVertex) {
         Edge newEdge = new Edge(fromVertex, toVertex);
         edges.add(newEdge);
-        fromVertex.addOutEdge(newEdge);
-        toVertex.addInEdge(newEdge);
     }
 
     Set<Vertex> getVertices() {
@@ -90,28 +89,4 @@ public class Network {
         return Collections.unmodifiableMap(labels);
     }
 
-    void performGradientDescentRound(Assignment targetAssignment, Assignment observedAssignment,
-                                     Parameters parameters, double learningRate) {
-        // Goal: Optimise likelihood L = log Prob(y_known | x; alpha, beta)  (marginalising over y_unknown)
-        // Partial derivatives:
-        // dL/d(alpha) = sum_i E_(y_unknown | y_known)[x_i y_i| alpha,beta] - sum_i E_(y_all)[x_i y_i| alpha,beta]
-        // dL/d(beta) = sum_(i,j) E_(y_unknown| y_known)[y_i y_j| alpha,beta] - sum_{i,j) E_(y_all)[y_i y_j| alpha,beta]
-        //    (where the sum_{i, j) is over pairs of vertices joined by an edge)
-        vertices.parallelStream()
-                .forEach(vertex -> {
-                    double targetAlphaDerivative = vertex.getAlphaDerivative(targetAssignment);
-                    double observedAlphaDerivative = vertex.getAlphaDerivative(observedAssignment);
-                    parameters.incrementAlpha(learningRate * (targetAlphaDerivative - observedAlphaDerivative));
-                });
-
-        edges.parallelStream()
-                .forEach(edge -> {
-                    double targetBetaDerivative = edge.getBetaDerivative(targetAssignment);
-                    double observedBetaDerivative = edge.getBetaDerivative(observedAssignment);
-                    parameters.incrementBeta(learningRate * (targetBetaDerivative - observedBetaDerivative));
-                });
-
-        parameters.makeSnapshot();
-    }
-
 }
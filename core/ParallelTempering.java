@@ -0,0 +1,112 @@
+package core;
+
+import java.util.stream.IntStream;
+
+/**
+ * Replica exchange (parallel tempering): a ladder of chains sample the unknown labels under the same alpha but with
+ * the coupling scaled to beta t, for a decreasing ladder of scales t starting at t = 1. The weakly coupled chains
+ * cross between magnetisation modes easily, and swaps of neighbouring rungs carry those crossings down to the t = 1
+ * chain, whose samples follow the model exactly. The chains are advanced concurrently, one task per rung.
+ *
+ * The swap acceptance ratio reads each chain's edge label sum, which is exact at swap time in every mode: the
+ * sequential modes update it with each flip, and in PARALLEL mode it is recounted, in O(|E|), when it is first read
+ * after a sweep. In ACTIVE_SET mode an accepted swap moves a chain to a rung with a different conditional table, so
+ * the chain's flip probability tree is rebuilt, in O(n), on its next sweep. Rounds with accepted swaps then cost as
+ * much as an ordinary sweep, and ACTIVE_SET saves less time here than it does for a single chain.
+ */
+class ParallelTempering {
+
+    private final double[] couplingScales; // indexed by rung; couplingScales[0] == 1
+    private final double beta;
+    private final Parameters[] rungParameters; // indexed by rung
+    private final Assignment[] replicas;
+    private final int[] replicaAtRung; // swaps exchange the rungs of two replicas, rather than their labels
+    private final SweepRecorder[] recorders; // indexed by rung
+    private final CounterRandom swapRandom;
+    private long swapRounds = 0;
+    private final long[] swapAttempts; // indexed by the lower rung of each adjacent pair
+    private final long[] swapAcceptances;
+
+    ParallelTempering(CompiledNetwork network, Parameters parameters, double[] couplingScales,
+                      SamplingOptions options, long seed) {
+        this.couplingScales = couplingScales.clone();
+        this.beta = parameters.getBeta();
+        int numRungs = couplingScales.length;
+        rungParameters = new Parameters[numRungs];
+        replicas = new Assignment[numRungs];
+        replicaAtRung = new int[numRungs];
+        recorders = new SweepRecorder[numRungs];
+        for (int rung = 0; rung < numRungs; rung++) {
+            rungParameters[rung] = new Parameters(parameters.getAlpha(), beta * couplingScales[rung]);
+            replicas[rung] = Assignment.samplingUnknownGivenKnown(network, options, new CounterRandom(seed, rung));
+            replicaAtRung[rung] = rung;
+            recorders[rung] = new SweepRecorder(options, rung);
+        }
+        swapRandom = new CounterRandom(seed, numRungs);
+        swapAttempts = new long[Math.max(numRungs - 1, 0)];
+        swapAcceptances = new long[Math.max(numRungs - 1, 0)];
+    }
+
+    // advances every rung by one sweep, then attempts swaps; the conditionals of the t = 1 chain are added to
+    // probTrueSums if it is not null
+    void performSamplingRound(double[] probTrueSums) {
+        IntStream.range(0, replicas.length).parallel()
+                .forEach(rung -> recorders[rung].performSamplingRound(replicas[replicaAtRung[rung]],
+                        rungParameters[rung], (rung == 0) ? probTrueSums : null));
+        attemptSwaps();
+    }
+
+    // Swapping the labels of rungs a and b is accepted with probability
+    // min(1, exp(beta (t_a - t_b) (S_b - S_a))), where S = sum_(i,j) y_i y_j; the alpha terms cancel.
+    // Even and odd pairs alternate between rounds, so that no replica takes part in two swaps at once.
+    private void attemptSwaps() {
+        long sweepKey = swapRandom.getSweepKey(swapRounds);
+        for (int lowerRung = (int) (swapRounds & 1); lowerRung + 1 < replicas.length; lowerRung += 2) {
+            int upperRung = lowerRung + 1;
+            // exact in every mode (see the class comment), so the swaps leave the joint distribution invariant
+            long lowerEdgeLabelSum = replicas[replicaAtRung[lowerRung]].getEdgeLabelSum();
+            long upperEdgeLabelSum = replicas[replicaAtRung[upperRung]].getEdgeLabelSum();
+            double logAcceptance = beta * (couplingScales[lowerRung] - couplingScales[upperRung])
+                    * (upperEdgeLabelSum - lowerEdgeLabelSum);
+            double uniform = (CounterRandom.getVertexBits(sweepKey, lowerRung) >>> 11) * 0x1.0p-53;
+            swapAttempts[lowerRung]++;
+            if (logAcceptance >= 0.0 || uniform < Math.exp(logAcceptance)) {
+                int replica = replicaAtRung[lowerRung];
+                replicaAtRung[lowerRung] = replicaAtRung[upperRung];
+                replicaAtRung[upperRung] = replica;
+                swapAcceptances[lowerRung]++;
+            }
+        }
+        swapRounds++;
+    }
+
+    // the chain whose samples follow the model
+    Assignment getTargetReplica() {
+        return replicas[replicaAtRung[0]];
+    }
+
+    // -(alpha sum_i x_i y_i + beta t sum_(i,j) y_i y_j), for the chain currently at the rung
+    double getEnergy(int rung) {
+        Assignment replica = replicas[replicaAtRung[rung]];
+        return -(rungParameters[rung].getAlpha() * replica.getFeatureLabelSum()
+                + rungParameters[rung].getBeta() * replica.getEdgeLabelSum());
+    }
+
+    int getNumRungs() {
+        return replicas.length;
+    }
+
+    double[] getCouplingScales() {
+        return couplingScales.clone();
+    }
+
+    double[] getSwapAcceptanceRates() {
+        double[] rates = new double[swapAttempts.length];
+        for (int lowerRung = 0; lowerRung < rates.length; lowerRung++) {
+            rates[lowerRung] = (swapAttempts[lowerRung] == 0)
+                    ? Double.NaN : (double) swapAcceptances[lowerRung] / swapAttempts[lowerRung];
+        }
+        return rates;
+    }
+
+}
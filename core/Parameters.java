@@ -11,6 +11,7 @@ public class Parameters {
     private DoubleAdder betaAdder = new DoubleAdder();
     private double alphaSnapshot = 0.0; // for reading from during Gibbs sampling
     private double betaSnapshot = 0.0;
+    private volatile ConditionalTable conditionalTable; // built from the snapshot on first use, for Gibbs sampling
     // NB the parameters are only mutated during training.
     // But once made public outside of the package, they will never be mutated again.
 
@@ -25,15 +26,22 @@ public class Parameters {
         makeSnapshot();
     }
 
-    Parameters() {
-        // initialised to zero
-    }
-
     void makeSnapshot() {
         // after gradient descent round, will make snapshot of parameters, which can be efficiently read from
         // in the next Gibbs sampling round (since reading from a DoubleAdder is slow).
         alphaSnapshot = alphaAdder.sum();
         betaSnapshot = betaAdder.sum();
+        conditionalTable = null;
+    }
+
+    ConditionalTable getConditionalTable(int maxDegree) {
+        // Benign race: concurrent callers may each build a table, but they are all equivalent
+        ConditionalTable table = conditionalTable;
+        if (table == null || table.getMaxSpinSum() < Math.min(maxDegree, ConditionalTable.MAX_TABULATED_SPIN_SUM)) {
+            table = ConditionalTable.build(alphaSnapshot, betaSnapshot, maxDegree);
+            conditionalTable = table;
+        }
+        return table;
     }
 
     /**
@@ -0,0 +1,280 @@
+package core;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * One worker's share of a partitioned run. The worker keeps labels only for the vertices of its own part and for
+ * the other parts' vertices that neighbour them (its ghosts), under dense local ids: its own vertices first, in order
+ * of vertex id, then its ghosts. Its part's adjacency is copied into local ids once; the partition and the rest of
+ * the network are read from the shared mappings, so the worker's heap grows with its part, not with the network.
+ *
+ * A sweep first resamples the interior vertices (those with no neighbour in another part), every worker at once,
+ * colour class by colour class of a greedy colouring of its part. The boundary vertices are then resampled one part
+ * at a time: in stage q, worker q resamples its boundary vertices colour class by colour class and publishes them,
+ * the workers meet at the barrier, and the others pull in their ghosts from part q. No vertex is ever resampled at
+ * the same time as a neighbour, so each sweep is an exact systematic-scan Gibbs sweep. (Its order differs from the
+ * single-process chromatic mode, so the samples differ from that mode's with the same seed.)
+ */
+final class PartitionWorker {
+
+    private final CompiledNetwork network;
+    private final ExchangeFile exchangeFile;
+    private final int worker;
+    private final int numOwned;
+    private final int[] ownedIds; // local id -> vertex id, for this worker's vertices
+    private final int[] ghostIds; // (local id - numOwned) -> vertex id, for the ghosts; sorted
+    private final int[] neighbourOffsets; // neighbours of own vertex v are at [offsets[v], offsets[v + 1])
+    private final int[] neighbours; // local ids
+    private final int[][] interiorByColour; // local ids of own vertices with no neighbour in another part, by colour
+    private final int[][] boundaryByColour; // local ids of own vertices with a neighbour in another part, by colour
+    private final int[][] ghostsByPart; // local ids of the ghosts, by the part that owns them
+    private long generation = 0; // of the barrier; every worker passes the same sequence of barriers
+
+    PartitionWorker(CompiledNetwork network, ExchangeFile exchangeFile, int worker) {
+        if (exchangeFile.getNumVertices() != network.getNumVertices()) {
+            throw new IllegalArgumentException("Exchange file is for a network with " + exchangeFile.getNumVertices()
+                    + " vertices, not " + network.getNumVertices());
+        }
+        if (worker < 0 || worker >= exchangeFile.getNumWorkers()) {
+            throw new IllegalArgumentException("No worker " + worker + " among " + exchangeFile.getNumWorkers());
+        }
+        if (exchangeFile.getGeneration(worker) != 0) {
+            throw new IllegalStateException("Exchange file has already been used by worker " + worker
+                    + "; create a new one for each run");
+        }
+        this.network = network;
+        this.exchangeFile = exchangeFile;
+        this.worker = worker;
+
+        // the parts are read from the exchange file's mapping wherever needed, rather than copied
+        ownedIds = IntStream.range(0, network.getNumVertices()).parallel()
+                .filter(id -> exchangeFile.getPart(id) == worker)
+                .toArray();
+        numOwned = ownedIds.length;
+        ghostIds = IntStream.of(ownedIds).parallel()
+                .flatMap(id -> IntStream.range(network.getNeighbourStart(id), network.getNeighbourEnd(id))
+                        .map(network::getNeighbour)
+                        .filter(neighbour -> exchangeFile.getPart(neighbour) != worker))
+                .sorted()
+                .distinct()
+                .toArray();
+
+        // the part's adjacency in local ids
+        neighbourOffsets = new int[numOwned + 1];
+        for (int local = 0; local < numOwned; local++) {
+            neighbourOffsets[local + 1] = neighbourOffsets[local] + network.getDegree(ownedIds[local]);
+        }
+        neighbours = new int[neighbourOffsets[numOwned]];
+        boolean[] onBoundary = new boolean[numOwned];
+        IntStream.range(0, numOwned).parallel().forEach(local -> {
+            int id = ownedIds[local];
+            int localPosition = neighbourOffsets[local];
+            int end = network.getNeighbourEnd(id);
+            for (int position = network.getNeighbourStart(id); position < end; position++) {
+                int neighbour = network.getNeighbour(position);
+                if (exchangeFile.getPart(neighbour) == worker) {
+                    neighbours[localPosition++] = Arrays.binarySearch(ownedIds, neighbour);
+                } else {
+                    neighbours[localPosition++] = numOwned + Arrays.binarySearch(ghostIds, neighbour);
+                    onBoundary[local] = true;
+                }
+            }
+        });
+
+        // ghosts are numbered from numOwned, so the colouring ignores them
+        int[] colours = GraphColouring.greedyColour(numOwned, IntStream.range(0, numOwned).toArray(),
+                local -> neighbourOffsets[local], position -> neighbours[position]);
+        int numColours = GraphColouring.countColours(colours);
+        interiorByColour = GraphColouring.splitByColour(colours, numColours, local -> !onBoundary[local]);
+        boundaryByColour = GraphColouring.splitByColour(colours, numColours, local -> onBoundary[local]);
+        int[] ghostParts = IntStream.of(ghostIds).map(exchangeFile::getPart).toArray();
+        ghostsByPart = new int[exchangeFile.getNumWorkers()][];
+        for (int part = 0; part < ghostsByPart.length; part++) {
+            int owner = part;
+            ghostsByPart[part] = IntStream.range(0, ghostIds.length)
+                    .filter(ghost -> ghostParts[ghost] == owner)
+                    .map(ghost -> numOwned + ghost)
+                    .toArray();
+        }
+    }
+
+    // the number of this worker's vertices, whose local ids run from 0
+    int getNumOwned() {
+        return numOwned;
+    }
+
+    // A chain's labels. Every worker starts its copy of each label from the same counter-based random bits, so the
+    // ghosts start out in agreement with their owners without any exchange.
+    Chain makeChain(CounterRandom random, boolean conditionOnKnownLabels, int index) {
+        return new Chain(random, conditionOnKnownLabels, index);
+    }
+
+    // One sweep of each chain, the chains sharing each stage's barrier. If probTrueSums is not null, each of the
+    // first chain's resampled vertices' conditional probability of a positive label is added to its entry (indexed
+    // by local id).
+    void performSamplingRound(Chain[] chains, Parameters parameters, double[] probTrueSums) {
+        ConditionalTable conditionalTable = parameters.getConditionalTable(network.getMaxDegree());
+        long[] sweepKeys = new long[chains.length];
+        for (int index = 0; index < chains.length; index++) {
+            sweepKeys[index] = chains[index].random.getSweepKey(chains[index].sweepsPerformed++);
+        }
+        for (int index = 0; index < chains.length; index++) {
+            chains[index].sweep(chains[index].interiorToSampleByColour, conditionalTable, sweepKeys[index],
+                    (index == 0) ? probTrueSums : null);
+        }
+        for (int part = 0; part < ghostsByPart.length; part++) {
+            if (part == worker) {
+                for (int index = 0; index < chains.length; index++) {
+                    Chain chain = chains[index];
+                    chain.sweep(chain.boundaryToSampleByColour, conditionalTable, sweepKeys[index],
+                            (index == 0) ? probTrueSums : null);
+                    for (int[] colourClass : boundaryByColour) {
+                        for (int local : colourClass) {
+                            exchangeFile.putLabel(chain.index, ownedIds[local], chain.labels[local]);
+                        }
+                    }
+                }
+            }
+            exchangeFile.awaitBarrier(worker, ++generation);
+            for (Chain chain : chains) {
+                for (int ghost : ghostsByPart[part]) {
+                    chain.labels[ghost] = exchangeFile.getLabel(chain.index, ghostIds[ghost - numOwned]);
+                }
+            }
+        }
+    }
+
+    // Shares this worker's part of the sufficient statistics of the target and observed chains, and returns the
+    // totals over all workers, as {target feature, target edge, observed feature, observed edge}
+    long[] combineStatistics(Chain target, Chain observed, int descentStep) {
+        int set = descentStep & 1;
+        long[] partial = {target.getFeatureLabelSum(), target.getEdgeLabelSum(), observed.getFeatureLabelSum(),
+                observed.getEdgeLabelSum()};
+        for (int index = 0; index < ExchangeFile.NUM_STATISTICS; index++) {
+            exchangeFile.putStatistic(worker, set, index, partial[index]);
+        }
+        exchangeFile.awaitBarrier(worker, ++generation);
+        long[] totals = new long[ExchangeFile.NUM_STATISTICS];
+        for (int other = 0; other < exchangeFile.getNumWorkers(); other++) {
+            for (int index = 0; index < ExchangeFile.NUM_STATISTICS; index++) {
+                totals[index] += exchangeFile.getStatistic(other, set, index);
+            }
+        }
+        return totals;
+    }
+
+    // writes the estimates for this worker's vertices (indexed by local id; NaN where not sampled), and waits until
+    // every worker has
+    void publishPredictions(Chain chain, double[] estimates) {
+        for (int local = 0; local < numOwned; local++) {
+            exchangeFile.putPrediction(ownedIds[local], chain.sampled[local] ? estimates[local] : Double.NaN);
+        }
+        exchangeFile.awaitBarrier(worker, ++generation);
+    }
+
+    private int getId(int local) {
+        return (local < numOwned) ? ownedIds[local] : ghostIds[local - numOwned];
+    }
+
+    final class Chain {
+
+        private final CounterRandom random;
+        private final int index; // of this chain's labels in the exchange file
+        private long sweepsPerformed = 0; // counter for the random numbers
+        private final boolean[] labels; // indexed by local id: own vertices, then ghosts
+        private final boolean[] sampled; // indexed by local id of own vertices
+        private final int[][] interiorToSampleByColour;
+        private final int[][] boundaryToSampleByColour;
+
+        private Chain(CounterRandom random, boolean conditionOnKnownLabels, int index) {
+            this.random = random;
+            this.index = index;
+            long initialSweepKey = random.getSweepKey(-1);
+            labels = new boolean[numOwned + ghostIds.length];
+            sampled = new boolean[numOwned];
+            for (int local = 0; local < labels.length; local++) {
+                int id = getId(local);
+                if (conditionOnKnownLabels && network.isLabelled(id)) {
+                    labels[local] = network.getKnownLabel(id);
+                } else {
+                    labels[local] = CounterRandom.getVertexBits(initialSweepKey, id) < 0L;
+                    if (local < numOwned) {
+                        sampled[local] = true;
+                    }
+                }
+            }
+            interiorToSampleByColour = keepSampled(interiorByColour);
+            boundaryToSampleByColour = keepSampled(boundaryByColour);
+        }
+
+        private int[][] keepSampled(int[][] byColour) {
+            int[][] sampledByColour = new int[byColour.length][];
+            for (int colour = 0; colour < byColour.length; colour++) {
+                sampledByColour[colour] = IntStream.of(byColour[colour]).filter(local -> sampled[local]).toArray();
+            }
+            return sampledByColour;
+        }
+
+        boolean isSampled(int local) {
+            return sampled[local];
+        }
+
+        boolean getLabel(int local) {
+            return labels[local];
+        }
+
+        private void sweep(int[][] toSampleByColour, ConditionalTable conditionalTable, long sweepKey,
+                           double[] probTrueSums) {
+            for (int[] colourClass : toSampleByColour) {
+                IntStream.of(colourClass).parallel()
+                        .forEach(local -> resample(local, conditionalTable, sweepKey, probTrueSums));
+            }
+        }
+
+        // sum_i x_i y_i, over this worker's vertices
+        private long getFeatureLabelSum() {
+            return IntStream.range(0, numOwned).parallel()
+                    .mapToLong(local -> BooleanUtils.spin(network.getFeature(ownedIds[local]))
+                            * BooleanUtils.spin(labels[local]))
+                    .sum();
+        }
+
+        // sum_(i,j) y_i y_j, over the edges whose lower-id end is one of this worker's vertices, so that each edge is
+        // counted by exactly one worker
+        private long getEdgeLabelSum() {
+            return IntStream.range(0, numOwned).parallel()
+                    .mapToLong(local -> {
+                        long sum = 0;
+                        int id = ownedIds[local];
+                        for (int position = neighbourOffsets[local]; position < neighbourOffsets[local + 1];
+                             position++) {
+                            int neighbour = neighbours[position];
+                            if (id < getId(neighbour)) {
+                                sum += BooleanUtils.spin(labels[local]) * BooleanUtils.spin(labels[neighbour]);
+                            }
+                        }
+                        return sum;
+                    })
+                    .sum();
+        }
+
+        // by Gibbs sampling, drawing the same random numbers as Assignment
+        private void resample(int local, ConditionalTable conditionalTable, long sweepKey, double[] probTrueSums) {
+            int id = ownedIds[local];
+            boolean feature = network.getFeature(id);
+            int spinSum = 0;
+            for (int position = neighbourOffsets[local]; position < neighbourOffsets[local + 1]; position++) {
+                spinSum += BooleanUtils.spin(labels[neighbours[position]]);
+            }
+            if (probTrueSums != null) {
+                // each vertex is resampled by one thread per round, so no race
+                probTrueSums[local] += conditionalTable.getProbTrue(feature, spinSum);
+            }
+            long uniform = CounterRandom.getVertexBits(sweepKey, id) >>> 32;
+            labels[local] = uniform < conditionalTable.getThreshold(feature, spinSum);
+        }
+
+    }
+
+}
@@ -0,0 +1,198 @@
+package core;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Gibbs sampling of a mapped network shared between several worker processes on one machine, for networks too
+ * large to sample comfortably in one JVM. The network is split into one part per worker, with few edges between
+ * parts. Each worker resamples its own part, and the workers exchange the labels of the vertices on part boundaries
+ * through a shared memory-mapped exchange file, so no external services are needed.
+ *
+ * A run goes as follows:
+ * <ol>
+ *     <li>write the network with {@link MappedNetwork#write}, and call {@link #createExchangeFile} once</li>
+ *     <li>start one process per worker, each of which opens the network and calls {@link #predict} or
+ *     {@link #train} with its worker index, and the same arguments otherwise</li>
+ *     <li>after the workers finish, read the predictions with {@link #readPredictions}</li>
+ * </ol>
+ *
+ * Each sweep first resamples the vertices with no neighbour in another part, every worker at once, and then the
+ * vertices on part boundaries one part at a time, the workers meeting at a barrier after each part. No vertex is
+ * resampled at the same time as a neighbour, so sampling is exact, though the samples differ from those of any
+ * single-process mode with the same seed, as the sweep order differs. Every worker ends training with the same
+ * parameters, as the gradient statistics are summed over all the workers before each step. A worker's heap holds
+ * only its own part: per chain, a byte for each of its vertices and of their neighbours in other parts, and its
+ * part's adjacency as ints. The partition and the rest of the topology are read from the shared mappings. The
+ * sampling mode, incremental neighbour sums and vertex order in the options are ignored, and sweeps are not
+ * reported to the listener (descent steps are).
+ */
+public final class PartitionedSampling {
+
+    private PartitionedSampling() {
+    }
+
+    /**
+     * Partitions a mapped network between the given number of workers, and creates the exchange file that they will
+     * share. An exchange file serves one run: create a new one for each.
+     * @param network mapped network
+     * @param numWorkers number of worker processes
+     * @param exchangeFile file to create (replaced if it exists)
+     * @return number of edges between vertices of different workers
+     * @throws IOException if the file cannot be written
+     */
+    public static long createExchangeFile(MappedNetwork network, int numWorkers, Path exchangeFile)
+            throws IOException {
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("Number of workers must be positive");
+        }
+        CompiledNetwork compiledNetwork = network.getCompiledNetwork();
+        int[] parts = GraphPartitioner.partition(compiledNetwork, numWorkers);
+        ExchangeFile.create(exchangeFile, numWorkers, parts);
+        return GraphPartitioner.countCutEdges(compiledNetwork, parts);
+    }
+
+    /**
+     * Runs one worker's share of estimating each unlabelled vertex's marginal probability of having a positive
+     * label, as {@link Algorithms#predict(MappedNetwork, Parameters, int, int, int, SamplingOptions)} does. Returns
+     * once every worker has written its estimates to the exchange file.
+     * @param network mapped network
+     * @param exchangeFile exchange file created for this run
+     * @param worker index of this worker, from 0 to (number of workers - 1)
+     * @param parameters parameters for model
+     * @param observations number of observations to take for each label, to estimate probability from
+     * @param samplingPassesBurnIn number of Gibbs sampling passes before first sample
+     * @param samplingPassesBetweenObservations number of Gibbs sampling passes between successive label observations
+     * @param options options controlling how Gibbs sampling is carried out, which must include a seed shared by all
+     *                the workers
+     * @throws IOException if the exchange file cannot be opened
+     */
+    public static void predict(MappedNetwork network, Path exchangeFile, int worker, Parameters parameters,
+                               int observations, int samplingPassesBurnIn, int samplingPassesBetweenObservations,
+                               SamplingOptions options) throws IOException {
+        long seed = getSharedSeed(options);
+        ExchangeFile file = ExchangeFile.open(exchangeFile);
+        Algorithms.runInPool(options, () -> {
+            PartitionWorker partitionWorker = new PartitionWorker(network.getCompiledNetwork(), file, worker);
+            PartitionWorker.Chain chain = partitionWorker.makeChain(new CounterRandom(seed, 0), true, 0);
+            PartitionWorker.Chain[] chains = {chain};
+
+            // as in Algorithms.estimateMarginals
+            boolean raoBlackwellised = (options.getEstimator() == MarginalEstimator.RAO_BLACKWELL);
+            int numOwned = partitionWorker.getNumOwned();
+            double[] estimateSums = new double[numOwned]; // indexed by local id
+            for (int observation = 0; observation < observations; observation++) {
+                int samplingPasses = (observation == 0) ? samplingPassesBurnIn : samplingPassesBetweenObservations;
+                if (raoBlackwellised) {
+                    samplingPasses = Math.max(samplingPasses, 1);
+                }
+                for (int samplingPass = 0; samplingPass < samplingPasses; samplingPass++) {
+                    boolean lastPass = (samplingPass == samplingPasses - 1);
+                    partitionWorker.performSamplingRound(chains, parameters,
+                            (raoBlackwellised && lastPass) ? estimateSums : null);
+                }
+                if (!raoBlackwellised) {
+                    for (int local = 0; local < numOwned; local++) {
+                        if (chain.isSampled(local) && chain.getLabel(local)) {
+                            estimateSums[local]++;
+                        }
+                    }
+                }
+            }
+            for (int local = 0; local < numOwned; local++) {
+                estimateSums[local] /= observations;
+            }
+            partitionWorker.publishPredictions(chain, estimateSums);
+            return null;
+        });
+    }
+
+    /**
+     * Runs one worker's share of calculating alpha and beta parameters that maximise the likelihood for the known
+     * labels, as {@link Algorithms#train(MappedNetwork, Parameters, int, int, int, double, SamplingOptions)} does.
+     * Every worker returns the same parameters.
+     * @param network mapped network
+     * @param exchangeFile exchange file created for this run
+     * @param worker index of this worker, from 0 to (number of workers - 1)
+     * @param initialParameters parameters to start gradient descent from (these are not modified)
+     * @param descentSteps number of gradient descent steps
+     * @param samplingPassesBurnIn number of Gibbs sampling passes before the first gradient descent round
+     * @param samplingPassesBetweenDescents number of Gibbs sampling passes between each gradient descent round
+     * @param learningRate learning rate
+     * @param options options controlling how Gibbs sampling is carried out, which must include a seed shared by all
+     *                the workers
+     * @return alpha and beta parameters
+     * @throws IOException if the exchange file cannot be opened
+     */
+    public static Parameters train(MappedNetwork network, Path exchangeFile, int worker,
+                                   Parameters initialParameters, int descentSteps, int samplingPassesBurnIn,
+                                   int samplingPassesBetweenDescents, double learningRate, SamplingOptions options)
+            throws IOException {
+        long seed = getSharedSeed(options);
+        ExchangeFile file = ExchangeFile.open(exchangeFile);
+        return Algorithms.runInPool(options, () -> {
+            PartitionWorker partitionWorker = new PartitionWorker(network.getCompiledNetwork(), file, worker);
+            Parameters parameters = new Parameters(initialParameters.getAlpha(), initialParameters.getBeta());
+            PartitionWorker.Chain target = partitionWorker.makeChain(new CounterRandom(seed, 0), true, 0);
+            PartitionWorker.Chain observed = partitionWorker.makeChain(new CounterRandom(seed, 1), false, 1);
+            PartitionWorker.Chain[] chains = {target, observed};
+            for (int descentStep = 0; descentStep < descentSteps; descentStep++) {
+                int samplingPasses = (descentStep == 0) ? samplingPassesBurnIn : samplingPassesBetweenDescents;
+                for (int samplingPass = 0; samplingPass < samplingPasses; samplingPass++) {
+                    partitionWorker.performSamplingRound(chains, parameters, null);
+                }
+                long[] totals = partitionWorker.combineStatistics(target, observed, descentStep);
+                Algorithms.performGradientDescentRound(new Statistics(totals[0], totals[1]),
+                        new Statistics(totals[2], totals[3]), parameters, learningRate, options, descentStep);
+            }
+            return parameters;
+        });
+    }
+
+    /**
+     * Reads the predictions that the workers of a finished {@link #predict} run wrote to the exchange file
+     * @param exchangeFile exchange file of the run
+     * @return probability of true label for each vertex, indexed by vertex id (NaN for labelled vertices)
+     * @throws IOException if the exchange file cannot be read
+     */
+    public static double[] readPredictions(Path exchangeFile) throws IOException {
+        ExchangeFile file = ExchangeFile.open(exchangeFile);
+        double[] predictions = new double[file.getNumVertices()];
+        for (int id = 0; id < predictions.length; id++) {
+            predictions[id] = file.getPrediction(id);
+        }
+        return predictions;
+    }
+
+    // every worker must draw the same random numbers, so the seed cannot be left to each to choose
+    private static long getSharedSeed(SamplingOptions options) {
+        if (!options.getSeed().isPresent()) {
+            throw new IllegalArgumentException("Partitioned sampling needs a seed, shared by all the workers");
+        }
+        return options.getSeed().getAsLong();
+    }
+
+    // the sufficient statistics of a chain, summed over the workers
+    private static final class Statistics implements LabelStatistics {
+
+        private final long featureLabelSum;
+        private final long edgeLabelSum;
+
+        Statistics(long featureLabelSum, long edgeLabelSum) {
+            this.featureLabelSum = featureLabelSum;
+            this.edgeLabelSum = edgeLabelSum;
+        }
+
+        @Override
+        public long getFeatureLabelSum() {
+            return featureLabelSum;
+        }
+
+        @Override
+        public long getEdgeLabelSum() {
+            return edgeLabelSum;
+        }
+
+    }
+
+}
@@ -0,0 +1,73 @@
+package core;
+
+import java.util.Map;
+
+/**
+ * Result of multi-chain prediction: the estimated marginals, together with convergence diagnostics and the
+ * amount of sampling that was spent
+ */
+public final class PredictionResult {
+
+    private final Map<Vertex, Double> probabilities;
+    private final int observations;
+    private final long sweeps;
+    private final double maxRHat;
+    private final boolean converged;
+
+    PredictionResult(Map<Vertex, Double> probabilities, int observations, long sweeps, double maxRHat,
+                     boolean converged) {
+        this.probabilities = probabilities;
+        this.observations = observations;
+        this.sweeps = sweeps;
+        this.maxRHat = maxRHat;
+        this.converged = converged;
+    }
+
+    /**
+     * Returns the estimated marginal probabilities, merged over all chains
+     * @return map (unlabelled vertex) -> (probability of true label for this vertex, given model)
+     */
+    public Map<Vertex, Double> getProbabilities() {
+        return probabilities;
+    }
+
+    /**
+     * Returns the number of observations taken by each chain before stopping
+     * @return observations per chain
+     */
+    public int getObservations() {
+        return observations;
+    }
+
+    /**
+     * Returns the total number of Gibbs sampling sweeps spent, summed over all chains (including burn-in)
+     * @return number of sweeps
+     */
+    public long getSweeps() {
+        return sweeps;
+    }
+
+    /**
+     * Returns the largest Gelman-Rubin potential scale reduction factor (R-hat) over the unlabelled vertices,
+     * at the time sampling stopped
+     * @return worst R-hat
+     */
+    public double getMaxRHat() {
+        return maxRHat;
+    }
+
+    /**
+     * Returns whether the target R-hat was reached, rather than the observation budget running out
+     * @return true if converged
+     */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("observations = %d, sweeps = %d, max R-hat = %.4f, converged = %b",
+                observations, sweeps, maxRHat, converged);
+    }
+
+}
@@ -0,0 +1,414 @@
+package core;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * A long-lived prediction over a network that keeps changing. The session keeps its own copy of the network's
+ * structure, the current sampled labels and the current marginal estimates, and accepts new labels, vertices and
+ * edges as they arrive. Rather than re-running prediction over the whole network, {@link #update} resamples only a
+ * region around the vertices touched since the last update, widening the region until the marginals at its
+ * boundary agree with the previous estimates, i.e. until the effect of the changes has died out. Each larger region
+ * carries on from the labels sampled in the smaller one, so only its new outer ring is burnt in. While a region is
+ * resampled, its unlabelled neighbours outside it are drawn afresh in every sweep from their current marginals,
+ * which treats them as independent, so the result is an approximation, but the cost of an update tracks the size of
+ * the change rather than the size of the network. Regions are swept chromatically (concurrently in PARALLEL mode),
+ * in the pool given by the session's sampling options, though small colour classes are swept on one thread.
+ * Changes made to the session are not applied to the original network, and vice versa.
+ */
+public final class PredictionSession {
+
+    private static final int INITIAL_NEIGHBOUR_CAPACITY = 4;
+    // colour classes smaller than this are swept on the calling thread, where a parallel stream costs more than it
+    // saves
+    private static final int MIN_PARALLEL_CLASS_SIZE = 4096;
+
+    private final Parameters parameters;
+    private final int observations;
+    private final int samplingPassesBurnIn;
+    private final int samplingPassesBetweenObservations;
+    private final SamplingOptions options;
+    private final boolean raoBlackwellised;
+    private final boolean chromatic; // otherwise every unknown label in a region is resampled at once
+    private final CounterRandom random;
+    private long sweepsPerformed = 0; // counter for the random numbers
+
+    // Growable structure, indexed by vertex id; ids are assigned in order of arrival
+    private int numVertices;
+    private Vertex[] vertices;
+    private final Map<Vertex, Integer> ids = new HashMap<>();
+    private int[][] neighbours; // the first degrees[id] entries of neighbours[id] are in use
+    private int[] degrees;
+    private int maxDegree;
+    private boolean[] features;
+    private boolean[] known;
+    private boolean[] labels; // known labels, or the current sample for unknown labels
+    private double[] probTrue; // current marginal estimates (only meaningful for unknown labels)
+
+    private final BitSet dirty = new BitSet(); // vertices touched since the last update
+    private int[] distances; // scratch space for the breadth-first search; -1 where not yet reached
+    private int[] positions; // scratch space for indexing a region; -1 outside it
+
+    PredictionSession(CompiledNetwork network, LabelSampler sampler, double[] estimates, Parameters parameters,
+                      int observations, int samplingPassesBurnIn, int samplingPassesBetweenObservations,
+                      SamplingOptions options, long seed) {
+        this.parameters = parameters;
+        this.observations = observations;
+        this.samplingPassesBurnIn = samplingPassesBurnIn;
+        this.samplingPassesBetweenObservations = samplingPassesBetweenObservations;
+        this.options = options;
+        this.raoBlackwellised = (options.getEstimator() == MarginalEstimator.RAO_BLACKWELL);
+        this.chromatic = (options.getMode() != SamplingMode.PARALLEL);
+        this.random = new CounterRandom(seed, 1); // stream 0 was used by the initial prediction
+
+        numVertices = network.getNumVertices();
+        int capacity = Math.max(numVertices, 1);
+        vertices = new Vertex[capacity];
+        neighbours = new int[capacity][];
+        degrees = new int[capacity];
+        features = new boolean[capacity];
+        known = new boolean[capacity];
+        labels = new boolean[capacity];
+        probTrue = new double[capacity];
+        distances = new int[capacity];
+        Arrays.fill(distances, -1);
+        positions = new int[capacity];
+        Arrays.fill(positions, -1);
+        maxDegree = network.getMaxDegree();
+        for (int id = 0; id < numVertices; id++) {
+            vertices[id] = network.getVertex(id);
+            ids.put(vertices[id], id);
+            int start = network.getNeighbourStart(id);
+            degrees[id] = network.getDegree(id);
+            neighbours[id] = new int[Math.max(degrees[id], INITIAL_NEIGHBOUR_CAPACITY)];
+            for (int index = 0; index < degrees[id]; index++) {
+                neighbours[id][index] = network.getNeighbour(start + index);
+            }
+            features[id] = network.getFeature(id);
+            known[id] = network.isLabelled(id);
+            labels[id] = sampler.getLabel(id);
+            probTrue[id] = known[id] ? 0.5 : estimates[id];
+        }
+    }
+
+    /**
+     * Records a newly known label (or a change to a known label)
+     * @param vertex vertex in this session
+     * @param label label for vertex
+     */
+    public void setLabel(Vertex vertex, boolean label) {
+        int id = getId(vertex);
+        known[id] = true;
+        labels[id] = label;
+        dirty.set(id);
+    }
+
+    /**
+     * Forgets a known label, so that the vertex's label is predicted from then on
+     * @param vertex vertex in this session
+     */
+    public void clearLabel(Vertex vertex) {
+        int id = getId(vertex);
+        known[id] = false;
+        dirty.set(id);
+    }
+
+    /**
+     * Adds an unlabelled vertex
+     * @param featureValue feature value for vertex
+     * @return vertex
+     */
+    public Vertex addUnlabelledVertex(boolean featureValue) {
+        int id = addVertex(featureValue);
+        // initialised with a random label, as in Assignment
+        labels[id] = CounterRandom.getVertexBits(random.getSweepKey(-1), id) < 0L;
+        probTrue[id] = 0.5;
+        return vertices[id];
+    }
+
+    /**
+     * Adds a labelled vertex
+     * @param featureValue feature value for vertex
+     * @param label label for vertex
+     * @return vertex
+     */
+    public Vertex addLabelledVertex(boolean featureValue, boolean label) {
+        int id = addVertex(featureValue);
+        known[id] = true;
+        labels[id] = label;
+        probTrue[id] = 0.5;
+        return vertices[id];
+    }
+
+    /**
+     * Adds an edge between two vertices. (The direction of the edge doesn't matter)
+     * @param fromVertex vertex in this session
+     * @param toVertex vertex in this session
+     */
+    public void addEdge(Vertex fromVertex, Vertex toVertex) {
+        int fromId = getId(fromVertex);
+        int toId = getId(toVertex);
+        if (fromId == toId) {
+            return; // self-loops affect neither sampling nor the marginals, as in CompiledNetwork
+        }
+        addNeighbour(fromId, toId);
+        addNeighbour(toId, fromId);
+        dirty.set(fromId);
+        dirty.set(toId);
+    }
+
+    /**
+     * Brings the marginal estimates up to date with the changes made since the last update. The region around the
+     * changed vertices is resampled, starting with their immediate neighbours and doubling the radius until the
+     * new estimates for the unlabelled vertices on the region's boundary differ from the previous ones by at most
+     * the tolerance on average (or until the region covers everything connected to the changes). Each region after
+     * the first starts from the labels sampled in the one before, so the burn-in passes only sweep its new ring.
+     * @param tolerance largest acceptable mean absolute change in the boundary vertices' marginals; this should be
+     *                  somewhat larger than the sampling noise of an estimate
+     * @return number of vertices in the final region
+     */
+    public int update(double tolerance) {
+        if (dirty.isEmpty()) {
+            return 0;
+        }
+        return Algorithms.runInPool(options, () -> {
+            int[] seeds = dirty.stream().toArray();
+            int[] region = new int[0];
+            int innerRadius = -1; // radius of the region sampled before, whose labels need no burn-in
+            for (int radius = 1; ; radius *= 2) {
+                int[] previousRegion = region;
+                region = findRegion(seeds, radius);
+                double[] estimates = sampleRegion(region, innerRadius);
+                // individual estimates are noisy, so the boundary is compared on its mean absolute change
+                double boundaryChangeSum = 0.0;
+                int boundarySize = 0;
+                for (int index = 0; index < region.length; index++) {
+                    int id = region[index];
+                    if (!known[id]) {
+                        if (distances[id] == radius) {
+                            boundaryChangeSum += Math.abs(estimates[index] - probTrue[id]);
+                            boundarySize++;
+                        }
+                        probTrue[id] = estimates[index];
+                    }
+                }
+                boolean stable = (boundaryChangeSum <= tolerance * boundarySize);
+                for (int id : region) {
+                    distances[id] = -1;
+                }
+                if (stable || region.length == previousRegion.length) {
+                    break;
+                }
+                innerRadius = radius;
+            }
+            dirty.clear();
+            return region.length;
+        });
+    }
+
+    /**
+     * Returns the current estimate of a vertex's marginal probability of a positive label
+     * @param vertex unlabelled vertex in this session
+     * @return probability of true label for this vertex, given model
+     */
+    public double getProbability(Vertex vertex) {
+        int id = getId(vertex);
+        if (known[id]) {
+            throw new IllegalArgumentException("Vertex is labelled");
+        }
+        return probTrue[id];
+    }
+
+    /**
+     * Returns the current estimates of the marginal probabilities of all the unlabelled vertices
+     * @return map (unlabelled vertex) -> (probability of true label for this vertex, given model)
+     */
+    public Map<Vertex, Double> getProbabilities() {
+        Map<Vertex, Double> probabilities = new HashMap<>();
+        for (int id = 0; id < numVertices; id++) {
+            if (!known[id]) {
+                probabilities.put(vertices[id], probTrue[id]);
+            }
+        }
+        return Collections.unmodifiableMap(probabilities);
+    }
+
+    private int getId(Vertex vertex) {
+        Integer id = ids.get(vertex);
+        if (id == null) {
+            throw new IllegalArgumentException("Vertex is not in this session");
+        }
+        return id;
+    }
+
+    private int addVertex(boolean featureValue) {
+        if (numVertices == vertices.length) {
+            int capacity = 2 * vertices.length;
+            vertices = Arrays.copyOf(vertices, capacity);
+            neighbours = Arrays.copyOf(neighbours, capacity);
+            degrees = Arrays.copyOf(degrees, capacity);
+            features = Arrays.copyOf(features, capacity);
+            known = Arrays.copyOf(known, capacity);
+            labels = Arrays.copyOf(labels, capacity);
+            probTrue = Arrays.copyOf(probTrue, capacity);
+            distances = Arrays.copyOf(distances, capacity);
+            Arrays.fill(distances, numVertices, capacity, -1);
+            positions = Arrays.copyOf(positions, capacity);
+            Arrays.fill(positions, numVertices, capacity, -1);
+        }
+        int id = numVertices++;
+        vertices[id] = new Vertex(featureValue);
+        ids.put(vertices[id], id);
+        neighbours[id] = new int[INITIAL_NEIGHBOUR_CAPACITY];
+        features[id] = featureValue;
+        dirty.set(id);
+        return id;
+    }
+
+    private void addNeighbour(int id, int neighbour) {
+        if (degrees[id] == neighbours[id].length) {
+            neighbours[id] = Arrays.copyOf(neighbours[id], 2 * neighbours[id].length);
+        }
+        neighbours[id][degrees[id]++] = neighbour;
+        maxDegree = Math.max(maxDegree, degrees[id]);
+    }
+
+    // Breadth-first search out to the radius; returns the vertices reached, leaving their distances set
+    private int[] findRegion(int[] seeds, int radius) {
+        int[] queue = new int[Math.max(seeds.length, INITIAL_NEIGHBOUR_CAPACITY)];
+        int queueTail = 0;
+        for (int seed : seeds) {
+            distances[seed] = 0;
+            queue[queueTail++] = seed;
+        }
+        for (int queueHead = 0; queueHead < queueTail; queueHead++) {
+            int id = queue[queueHead];
+            if (distances[id] == radius) {
+                continue;
+            }
+            for (int index = 0; index < degrees[id]; index++) {
+                int neighbour = neighbours[id][index];
+                if (distances[neighbour] < 0) {
+                    distances[neighbour] = distances[id] + 1;
+                    if (queueTail == queue.length) {
+                        queue = Arrays.copyOf(queue, 2 * queue.length);
+                    }
+                    queue[queueTail++] = neighbour;
+                }
+            }
+        }
+        return Arrays.copyOf(queue, queueTail);
+    }
+
+    // Gibbs-samples the unknown labels in the region, and returns the estimated marginals, indexed by position in
+    // the region. The burn-in passes only sweep the vertices beyond the inner radius: the labels within it carry on
+    // from the previous, smaller region. Unlabelled neighbours outside the region are drawn afresh in every sweep
+    // from their marginals, rather than entering through one frozen sample (which would bias the region's boundary)
+    // or through their mean labels (which would misstate the spread of the boundary field).
+    private double[] sampleRegion(int[] region, int innerRadius) {
+        int[] regionColours = colourRegion(region);
+        int numColours = GraphColouring.countColours(regionColours);
+        int[][] classes = GraphColouring.splitByColour(regionColours, numColours, index -> !known[region[index]]);
+        int[][] ringClasses = GraphColouring.splitByColour(regionColours, numColours,
+                index -> !known[region[index]] && distances[region[index]] > innerRadius);
+
+        double[] estimateSums = new double[region.length];
+        for (int observation = 0; observation < observations; observation++) {
+            int samplingPasses = (observation == 0) ? samplingPassesBurnIn : samplingPassesBetweenObservations;
+            if (raoBlackwellised) {
+                samplingPasses = Math.max(samplingPasses, 1);
+            }
+            for (int samplingPass = 0; samplingPass < samplingPasses; samplingPass++) {
+                boolean lastPass = (samplingPass == samplingPasses - 1);
+                long sweepKey = random.getSweepKey(sweepsPerformed++);
+                // the session's maximum degree only grows, so a table fetched once per sweep covers the region
+                ConditionalTable conditionalTable = parameters.getConditionalTable(maxDegree);
+                double[] probTrueSums = (raoBlackwellised && lastPass) ? estimateSums : null;
+                // the last pass before each observation sweeps the whole region, as it is what is observed
+                for (int[] colourClass : (observation == 0 && !lastPass) ? ringClasses : classes) {
+                    if (colourClass.length < MIN_PARALLEL_CLASS_SIZE) {
+                        for (int index : colourClass) {
+                            resample(region[index], index, conditionalTable, sweepKey, probTrueSums);
+                        }
+                    } else {
+                        IntStream.of(colourClass).parallel()
+                                .forEach(index -> resample(region[index], index, conditionalTable, sweepKey,
+                                        probTrueSums));
+                    }
+                }
+            }
+            if (!raoBlackwellised) {
+                for (int index = 0; index < region.length; index++) {
+                    if (labels[region[index]]) {
+                        estimateSums[index]++;
+                    }
+                }
+            }
+        }
+
+        for (int index = 0; index < region.length; index++) {
+            estimateSums[index] /= observations;
+        }
+        return estimateSums;
+    }
+
+    // Resamples the unknown label of a vertex in the region, at the given position in it. Outside vertices are never
+    // resampled in the sweep, so their draws use the same sweep's random numbers, one per vertex.
+    private void resample(int id, int index, ConditionalTable conditionalTable, long sweepKey,
+                          double[] probTrueSums) {
+        int spinSum = 0;
+        for (int neighbourIndex = 0; neighbourIndex < degrees[id]; neighbourIndex++) {
+            int neighbour = neighbours[id][neighbourIndex];
+            boolean neighbourLabel = (distances[neighbour] >= 0 || known[neighbour])
+                    ? labels[neighbour] : getUniform(sweepKey, neighbour) < probTrue[neighbour];
+            spinSum += BooleanUtils.spin(neighbourLabel);
+        }
+        if (probTrueSums != null) {
+            probTrueSums[index] += conditionalTable.getProbTrue(features[id], spinSum);
+        }
+        long uniform = CounterRandom.getVertexBits(sweepKey, id) >>> 32; // 32 bits are enough for a coin flip
+        labels[id] = uniform < conditionalTable.getThreshold(features[id], spinSum);
+    }
+
+    private static double getUniform(long sweepKey, int id) {
+        return (CounterRandom.getVertexBits(sweepKey, id) >>> 11) * 0x1.0p-53;
+    }
+
+    // Greedy colouring of the region's unknown labels, in breadth-first order, so that no edge joins two unknown
+    // labels of the same colour; returns the colour at each position in the region. Known labels, and vertices
+    // outside the region, are left out of the colouring by numbering them past the region's end. Without the
+    // chromatic schedule every label has colour 0, and the unknown ones are all resampled at once.
+    private int[] colourRegion(int[] region) {
+        if (!chromatic) {
+            return new int[region.length];
+        }
+        for (int index = 0; index < region.length; index++) {
+            positions[region[index]] = index;
+        }
+        // the unknown labels' adjacency, in positions in the region
+        int[] offsets = new int[region.length + 1];
+        for (int index = 0; index < region.length; index++) {
+            int id = region[index];
+            offsets[index + 1] = offsets[index] + (known[id] ? 0 : degrees[id]);
+        }
+        int[] regionNeighbours = new int[offsets[region.length]];
+        for (int index = 0; index < region.length; index++) {
+            int id = region[index];
+            for (int position = offsets[index]; position < offsets[index + 1]; position++) {
+                int neighbour = neighbours[id][position - offsets[index]];
+                regionNeighbours[position] = (positions[neighbour] >= 0 && !known[neighbour])
+                        ? positions[neighbour] : region.length;
+            }
+        }
+        for (int id : region) {
+            positions[id] = -1;
+        }
+        return GraphColouring.greedyColour(region.length, IntStream.range(0, region.length).toArray(),
+                index -> offsets[index], position -> regionNeighbours[position]);
+    }
+
+}
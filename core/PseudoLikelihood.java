@@ -0,0 +1,170 @@
+package core;
+
+import java.util.stream.IntStream;
+
+/**
+ * Maximum pseudo-likelihood estimation of alpha and beta: maximises sum_i log Prob(y_i | x_i, y_neighbours) over
+ * the labelled vertices, which needs no Gibbs sampling. Each term depends on (alpha, beta) only through the local
+ * field alpha x_i + beta s_i, where s_i is the neighbour spin sum, so the objective is a two-parameter logistic
+ * regression on a histogram of (x_i, s_i, y_i) counts. It is concave, and is maximised by Newton's method with a
+ * capped step and a backtracking line search, so every iteration increases the objective.
+ * Unlabelled neighbours contribute zero to s_i (their mean label when nothing is known), so when some labels are
+ * missing this is an approximation; it is exact pseudo-likelihood for a fully labelled network.
+ */
+class PseudoLikelihood {
+
+    // A small ridge keeps the Hessian invertible (e.g. when no labelled vertex has a labelled neighbour), and gives
+    // the objective a finite maximum when the labels are perfectly separable by the local field. That maximum can be
+    // far from the origin, where the Hessian is nearly flat and a pure Newton step overshoots, hence the step cap
+    // and line search below.
+    private static final double RIDGE = 1.0e-9;
+    // Largest change to either parameter in one iteration
+    private static final double MAX_STEP = 1.0;
+    // Armijo condition for the line search: accept once the increase is at least this fraction of the predicted one
+    private static final double SUFFICIENT_INCREASE = 1.0e-4;
+    private static final int MAX_HALVINGS = 60;
+
+    private final int maxSpinSum;
+    private final long[] histogram; // index: ((feature ? 1 : 0) * (2 * maxSpinSum + 1) + s + maxSpinSum) * 2 + label
+
+    PseudoLikelihood(CompiledNetwork network) {
+        this(network.getMaxDegree(), countLabels(network));
+    }
+
+    // From a histogram laid out as above
+    PseudoLikelihood(int maxSpinSum, long[] histogram) {
+        this.maxSpinSum = maxSpinSum;
+        this.histogram = histogram;
+    }
+
+    private static long[] countLabels(CompiledNetwork network) {
+        int maxSpinSum = network.getMaxDegree();
+        int numBins = 2 * (2 * maxSpinSum + 1);
+        // one parallel pass over the labelled vertices, with a histogram per fork-join task, merged at the end
+        return IntStream.range(0, network.getNumVertices()).parallel()
+                .filter(network::isLabelled)
+                .collect(() -> new long[2 * numBins],
+                        (counts, id) -> {
+                            int spinSum = 0;
+                            int end = network.getNeighbourEnd(id);
+                            for (int position = network.getNeighbourStart(id); position < end; position++) {
+                                int neighbour = network.getNeighbour(position);
+                                if (network.isLabelled(neighbour)) {
+                                    spinSum += BooleanUtils.spin(network.getKnownLabel(neighbour));
+                                }
+                            }
+                            int bin = (network.getFeature(id) ? 2 * maxSpinSum + 1 : 0) + spinSum + maxSpinSum;
+                            counts[2 * bin + (network.getKnownLabel(id) ? 1 : 0)]++;
+                        },
+                        (counts, otherCounts) -> {
+                            for (int index = 0; index < counts.length; index++) {
+                                counts[index] += otherCounts[index];
+                            }
+                        });
+    }
+
+    // Ridge-penalised log pseudo-likelihood at (alpha, beta)
+    double logPseudoLikelihood(double alpha, double beta) {
+        double sum = -0.5 * RIDGE * (alpha * alpha + beta * beta);
+        for (int bin = 0; bin < histogram.length / 2; bin++) {
+            long negativeCount = histogram[2 * bin];
+            long positiveCount = histogram[2 * bin + 1];
+            if (negativeCount + positiveCount == 0) {
+                continue;
+            }
+            int feature = (bin >= 2 * maxSpinSum + 1) ? 1 : -1;
+            int spinSum = bin % (2 * maxSpinSum + 1) - maxSpinSum;
+            double field = 2.0 * (alpha * feature + beta * spinSum);
+            sum += positiveCount * logSigmoid(field) + negativeCount * logSigmoid(-field);
+        }
+        return sum;
+    }
+
+    // log(1 / (1 + exp(-t))), without overflow for large |t|
+    private static double logSigmoid(double t) {
+        return -(Math.max(-t, 0.0) + Math.log1p(Math.exp(-Math.abs(t))));
+    }
+
+    // Damped Newton's method from (alpha, beta) = (0, 0); stops when the step is below the tolerance
+    Parameters fit(int maxIterations, double tolerance) {
+        double alpha = 0.0;
+        double beta = 0.0;
+        double objective = logPseudoLikelihood(alpha, beta);
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            // gradient g and negated Hessian H of the log pseudo-likelihood
+            double gradAlpha = -RIDGE * alpha;
+            double gradBeta = -RIDGE * beta;
+            double hessAlphaAlpha = RIDGE;
+            double hessAlphaBeta = 0.0;
+            double hessBetaBeta = RIDGE;
+            for (int bin = 0; bin < histogram.length / 2; bin++) {
+                long negativeCount = histogram[2 * bin];
+                long positiveCount = histogram[2 * bin + 1];
+                if (negativeCount + positiveCount == 0) {
+                    continue;
+                }
+                int feature = (bin >= 2 * maxSpinSum + 1) ? 1 : -1;
+                int spinSum = bin % (2 * maxSpinSum + 1) - maxSpinSum;
+                double probTrue = 1.0 / (1.0 + Math.exp(-2.0 * (alpha * feature + beta * spinSum)));
+                // per vertex: d/dz log Prob(y | z) = 2 (1[y = +1] - probTrue), d2/dz2 = -4 probTrue (1 - probTrue)
+                double gradField = 2.0 * (positiveCount - (negativeCount + positiveCount) * probTrue);
+                double curvature = 4.0 * (negativeCount + positiveCount) * probTrue * (1.0 - probTrue);
+                gradAlpha += gradField * feature;
+                gradBeta += gradField * spinSum;
+                hessAlphaAlpha += curvature;
+                hessAlphaBeta += curvature * feature * spinSum;
+                hessBetaBeta += curvature * spinSum * spinSum;
+            }
+
+            // Newton step H^-1 g first. When H is nearly singular (e.g. every labelled vertex has the same local
+            // field) the 2x2 solve loses all precision, so if that step fails the line search, the gradient is used.
+            double determinant = hessAlphaAlpha * hessBetaBeta - hessAlphaBeta * hessAlphaBeta;
+            double[][] directions = {
+                    {(hessBetaBeta * gradAlpha - hessAlphaBeta * gradBeta) / determinant,
+                            (hessAlphaAlpha * gradBeta - hessAlphaBeta * gradAlpha) / determinant},
+                    {gradAlpha, gradBeta}};
+            double movedAlpha = Double.NaN;
+            double movedBeta = Double.NaN;
+            for (double[] direction : directions) {
+                // scaled down so that neither parameter moves by more than MAX_STEP
+                double largestStep = Math.max(Math.abs(direction[0]), Math.abs(direction[1]));
+                double scale = (largestStep > MAX_STEP) ? MAX_STEP / largestStep : 1.0;
+                double stepAlpha = direction[0] * scale;
+                double stepBeta = direction[1] * scale;
+                double predictedIncrease = gradAlpha * stepAlpha + gradBeta * stepBeta;
+                if (!(predictedIncrease > 0.0)) {
+                    continue; // not an ascent direction (or not finite)
+                }
+
+                // backtracking: halve the step until the objective increases enough
+                double fraction = 1.0;
+                double nextObjective = logPseudoLikelihood(alpha + stepAlpha, beta + stepBeta);
+                for (int halving = 0; halving < MAX_HALVINGS
+                        && !(nextObjective >= objective + SUFFICIENT_INCREASE * fraction * predictedIncrease);
+                        halving++) {
+                    fraction *= 0.5;
+                    nextObjective = logPseudoLikelihood(alpha + fraction * stepAlpha, beta + fraction * stepBeta);
+                }
+                if (nextObjective >= objective + SUFFICIENT_INCREASE * fraction * predictedIncrease) {
+                    movedAlpha = fraction * stepAlpha;
+                    movedBeta = fraction * stepBeta;
+                    objective = nextObjective;
+                    break;
+                }
+            }
+            if (Double.isNaN(movedAlpha)) {
+                break; // no further progress is possible at double precision
+            }
+            alpha += movedAlpha;
+            beta += movedBeta;
+            if (Math.abs(movedAlpha) < tolerance && Math.abs(movedBeta) < tolerance) {
+                break;
+            }
+        }
+        if (!Double.isFinite(alpha) || !Double.isFinite(beta)) {
+            throw new IllegalStateException("Pseudo-likelihood fit did not converge to finite parameters");
+        }
+        return new Parameters(alpha, beta);
+    }
+
+}
@@ -0,0 +1,26 @@
+package core;
+
+/**
+ * Receives measurements from the sampling algorithms as they run: one event per Gibbs sweep of each chain, and one
+ * per gradient descent step of training. Attach a listener with {@link SamplingOptions#withListener}.
+ * Chains that run concurrently (the chains of {@link Algorithms#predictUntilConverged} and the rungs of
+ * {@link Algorithms#predictWithTempering}) report from their own threads, so implementations must be thread-safe.
+ * Events are delivered on the sampling threads, between sweeps, so a slow listener slows sampling down.
+ */
+public interface SamplingListener {
+
+    /**
+     * Called after each sweep of each chain
+     * @param event measurements of the sweep
+     */
+    default void onSweep(SweepEvent event) {
+    }
+
+    /**
+     * Called after each gradient descent step of training
+     * @param event gradient and parameters of the step
+     */
+    default void onDescentStep(DescentEvent event) {
+    }
+
+}
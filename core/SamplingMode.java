@@ -0,0 +1,46 @@
+package core;
+
+/**
+ * Schedules for the parallel Gibbs sampling sweep
+ */
+public enum SamplingMode {
+
+    /**
+     * All vertices are resampled at once in parallel, each reading whatever labels its neighbours have at the time.
+     * Neighbours can therefore see each other's stale labels, so this is only an approximation to Gibbs sampling.
+     */
+    PARALLEL,
+
+    /**
+     * The network is coloured so that no edge joins two vertices of the same colour, and the colour classes are
+     * swept one after another, each class in parallel. This is an exact Gibbs sampler.
+     */
+    CHROMATIC,
+
+    /**
+     * Multi-spin coding: 64 independent replicas of the chain are packed into the bits of one long per vertex,
+     * and advanced together by a chromatic sweep. Each prediction observation then averages over all 64 replicas.
+     * Supported by prediction and by sampling missing labels (which keeps the first replica), but not by training.
+     */
+    MULTI_SPIN,
+
+    /**
+     * Swendsen-Wang cluster moves: neighbours whose labels satisfy the coupling are bonded at random, and each
+     * connected cluster of bonded vertices is flipped as a whole, with the external field taken into account.
+     * Known labels stay fixed. This is an exact sampler that mixes far faster than single-site updates when beta
+     * is large, at the cost of a few passes over the network per round.
+     */
+    CLUSTER,
+
+    /**
+     * Rejection-free random-scan sampling (the n-fold way): each vertex's probability of flipping is kept in a sum
+     * tree, and only the flips are simulated, each vertex being chosen with probability proportional to its flip
+     * probability, while the updates that would keep their label are skipped in bulk. Each sweep is equivalent to
+     * resampling as many uniformly chosen vertices as there are sampled vertices, so this is an exact sampler. A
+     * sweep costs time in proportion to the number of flips rather than to the size of the network, which pays off
+     * in strongly ordered networks where most vertices are frozen. Sweeps run on one thread, and the tree is
+     * rebuilt whenever the parameters change.
+     */
+    ACTIVE_SET
+
+}
@@ -0,0 +1,235 @@
+package core;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Options controlling how Gibbs sampling is carried out. Instances are immutable; the with* methods return
+ * modified copies.
+ */
+public final class SamplingOptions {
+
+    private static final SamplingOptions DEFAULTS = new SamplingOptions(SamplingMode.PARALLEL, false,
+            MarginalEstimator.SAMPLED_LABELS, OptionalLong.empty(), Optional.empty(), VertexOrder.INSERTION,
+            Optional.empty(), Optional.empty(), 0);
+
+    private final SamplingMode mode;
+    private final boolean incrementalNeighbourSums;
+    private final MarginalEstimator estimator;
+    private final OptionalLong seed;
+    private final Optional<ForkJoinPool> pool;
+    private final VertexOrder vertexOrder;
+    private final Optional<SamplingListener> listener;
+    private final Optional<Path> checkpointPath;
+    private final int checkpointInterval; // in descent steps
+
+    private SamplingOptions(SamplingMode mode, boolean incrementalNeighbourSums, MarginalEstimator estimator,
+                            OptionalLong seed, Optional<ForkJoinPool> pool, VertexOrder vertexOrder,
+                            Optional<SamplingListener> listener, Optional<Path> checkpointPath,
+                            int checkpointInterval) {
+        this.mode = mode;
+        this.incrementalNeighbourSums = incrementalNeighbourSums;
+        this.estimator = estimator;
+        this.seed = seed;
+        this.pool = pool;
+        this.vertexOrder = vertexOrder;
+        this.listener = listener;
+        this.checkpointPath = checkpointPath;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Returns the default options, which sample with {@link SamplingMode#PARALLEL}, rescanning each vertex's edges
+     * on every update, estimate marginals with {@link MarginalEstimator#SAMPLED_LABELS}, draw a fresh random
+     * seed for each call, run on the common fork-join pool, number vertices in {@link VertexOrder#INSERTION} order,
+     * report to no listener, and write no checkpoints
+     * @return default options
+     */
+    public static SamplingOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Returns a copy of these options with the sampling mode replaced
+     * @param mode sampling mode
+     * @return modified options
+     */
+    public SamplingOptions withMode(SamplingMode mode) {
+        return new SamplingOptions(mode, incrementalNeighbourSums, estimator, seed, pool, vertexOrder, listener,
+                checkpointPath, checkpointInterval);
+    }
+
+    /**
+     * Returns a copy of these options with incremental neighbour sums switched on or off. When on, each vertex keeps
+     * a running sum of its neighbours' labels, and a label flip pushes a +/-2 delta to each neighbour, so that an
+     * update reads one integer instead of rescanning the vertex's edges. This pays off on networks with high-degree
+     * hub vertices, where flips are rare compared with updates. Ignored by {@link SamplingMode#MULTI_SPIN}, and always
+     * on for {@link SamplingMode#ACTIVE_SET} and for training in {@link SamplingMode#PARALLEL} mode.
+     * @param incrementalNeighbourSums whether to maintain neighbour sums incrementally
+     * @return modified options
+     */
+    public SamplingOptions withIncrementalNeighbourSums(boolean incrementalNeighbourSums) {
+        return new SamplingOptions(mode, incrementalNeighbourSums, estimator, seed, pool, vertexOrder, listener,
+                checkpointPath, checkpointInterval);
+    }
+
+    /**
+     * Returns a copy of these options with the marginal estimator replaced. This affects all sampling-based
+     * prediction: {@link Algorithms#predict} (for networks, mapped networks and lattices),
+     * {@link Algorithms#predictUntilConverged}, {@link Algorithms#predictWithTempering},
+     * {@link Algorithms#predictBatch}, {@link PartitionedSampling#predict} and {@link PredictionSession}. Training
+     * and {@link Algorithms#sampleMissingLabels} ignore it.
+     * @param estimator marginal estimator
+     * @return modified options
+     */
+    public SamplingOptions withEstimator(MarginalEstimator estimator) {
+        return new SamplingOptions(mode, incrementalNeighbourSums, estimator, seed, pool, vertexOrder, listener,
+                checkpointPath, checkpointInterval);
+    }
+
+    /**
+     * Returns a copy of these options with a fixed random seed. The random bits for each update are a function of
+     * the seed, the sweep and the vertex only, so with {@link SamplingMode#CHROMATIC} or
+     * {@link SamplingMode#MULTI_SPIN} the results are reproducible bit for bit, whatever the number of threads.
+     * ({@link SamplingMode#PARALLEL} reads stale labels depending on thread timing, so is not reproducible.)
+     * Vertex order is part of the key, so the network must be built in the same order each time.
+     * @param seed random seed
+     * @return modified options
+     */
+    public SamplingOptions withSeed(long seed) {
+        return new SamplingOptions(mode, incrementalNeighbourSums, estimator, OptionalLong.of(seed), pool,
+                vertexOrder, listener, checkpointPath, checkpointInterval);
+    }
+
+    /**
+     * Returns a copy of these options that runs all the parallel work of each call on the given pool, rather than on
+     * the JVM-wide common pool; the pool's parallelism then bounds the number of threads used. The caller keeps
+     * ownership of the pool, and is responsible for shutting it down.
+     * @param pool fork-join pool
+     * @return modified options
+     */
+    public SamplingOptions withPool(ForkJoinPool pool) {
+        return new SamplingOptions(mode, incrementalNeighbourSums, estimator, seed, Optional.of(pool), vertexOrder,
+                listener, checkpointPath, checkpointInterval);
+    }
+
+    /**
+     * Returns a copy of these options with the vertex numbering replaced. Each parallel task sweeps a contiguous
+     * range of vertex ids, so an order that keeps neighbours close together improves cache locality, especially for
+     * networks whose vertices were added in an order unrelated to their structure. Reordering costs a pass over the
+     * network each time it is compiled. Vertex order is part of the random key, so it also changes the results for a
+     * fixed seed. Lattices are already laid out row by row, so are unaffected.
+     * @param vertexOrder vertex order
+     * @return modified options
+     */
+    public SamplingOptions withVertexOrder(VertexOrder vertexOrder) {
+        return new SamplingOptions(mode, incrementalNeighbourSums, estimator, seed, pool, vertexOrder, listener,
+                checkpointPath, checkpointInterval);
+    }
+
+    /**
+     * Returns the sampling mode
+     * @return sampling mode
+     */
+    public SamplingMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns whether neighbour sums are maintained incrementally
+     * @return true if neighbour sums are maintained incrementally
+     */
+    public boolean usesIncrementalNeighbourSums() {
+        return incrementalNeighbourSums;
+    }
+
+    /**
+     * Returns the marginal estimator used for prediction
+     * @return marginal estimator
+     */
+    public MarginalEstimator getEstimator() {
+        return estimator;
+    }
+
+    /**
+     * Returns the fixed random seed, if there is one
+     * @return random seed, or empty if a fresh seed is drawn for each call
+     */
+    public OptionalLong getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns a copy of these options that reports each sweep and gradient descent step to the given listener. The
+     * measurements cost a pass over the labels before and after each sweep, so are only made while a listener is
+     * attached; without one, sampling runs exactly as before.
+     * @param listener listener
+     * @return modified options
+     */
+    public SamplingOptions withListener(SamplingListener listener) {
+        return new SamplingOptions(mode, incrementalNeighbourSums, estimator, seed, pool, vertexOrder,
+                Optional.of(listener), checkpointPath, checkpointInterval);
+    }
+
+    /**
+     * Returns a copy of these options that makes training write a {@link TrainingCheckpoint} to the given file every
+     * so many gradient descent steps, and once more when it finishes. The labels are copied on the training thread,
+     * which takes a pass over them, but the file is written on a background thread while sampling continues; if the
+     * previous checkpoint is still being written, the new one replaces any that is waiting, so a slow disk never
+     * stalls training. Each file is written in full and then renamed into place, so the file on disk is always a
+     * complete checkpoint. Lattice and partitioned training write no checkpoints.
+     * @param path checkpoint file (replaced each time)
+     * @param interval number of gradient descent steps between checkpoints
+     * @return modified options
+     */
+    public SamplingOptions withCheckpoints(Path path, int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        return new SamplingOptions(mode, incrementalNeighbourSums, estimator, seed, pool, vertexOrder, listener,
+                Optional.of(path), interval);
+    }
+
+    /**
+     * Returns the pool that parallel work runs on, if one was given
+     * @return fork-join pool, or empty for the common pool
+     */
+    public Optional<ForkJoinPool> getPool() {
+        return pool;
+    }
+
+    /**
+     * Returns the order in which vertices are numbered for sampling
+     * @return vertex order
+     */
+    public VertexOrder getVertexOrder() {
+        return vertexOrder;
+    }
+
+    /**
+     * Returns the listener that sweeps and gradient descent steps are reported to, if one was given
+     * @return listener, or empty if none
+     */
+    public Optional<SamplingListener> getListener() {
+        return listener;
+    }
+
+    /**
+     * Returns the file that training writes checkpoints to, if one was given
+     * @return checkpoint file, or empty if none
+     */
+    public Optional<Path> getCheckpointPath() {
+        return checkpointPath;
+    }
+
+    /**
+     * Returns the number of gradient descent steps between checkpoints
+     * @return checkpoint interval (0 if no checkpoints are written)
+     */
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+}
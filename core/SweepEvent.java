@@ -0,0 +1,105 @@
+package core;
+
+/**
+ * Measurements of one Gibbs sweep of one chain, as reported to a {@link SamplingListener}. Labels are those of the
+ * chain's first replica, and the energy is taken under the parameters the sweep was run with.
+ */
+public final class SweepEvent {
+
+    private final int chain;
+    private final long sweep;
+    private final long elapsedNanos;
+    private final long updates;
+    private final double flippedFraction;
+    private final double energy;
+    private final double magnetisation;
+
+    SweepEvent(int chain, long sweep, long elapsedNanos, long updates, double flippedFraction, double energy,
+               double magnetisation) {
+        this.chain = chain;
+        this.sweep = sweep;
+        this.elapsedNanos = elapsedNanos;
+        this.updates = updates;
+        this.flippedFraction = flippedFraction;
+        this.energy = energy;
+        this.magnetisation = magnetisation;
+    }
+
+    /**
+     * Returns the index of the chain within the call: 0 for prediction and for sampling missing labels; for
+     * training, 0 for the chain sampling the unknown labels given the known ones, and 1 for the chain sampling all
+     * labels; the chain number for {@link Algorithms#predictUntilConverged}; the rung for
+     * {@link Algorithms#predictWithTempering}; and the batch for {@link Algorithms#predictBatch}
+     * @return chain index
+     */
+    public int getChain() {
+        return chain;
+    }
+
+    /**
+     * Returns the number of sweeps of this chain before this one, including burn-in
+     * @return sweep number, counting from 0
+     */
+    public long getSweep() {
+        return sweep;
+    }
+
+    /**
+     * Returns the wall time taken by the sweep itself, not counting the measurements
+     * @return elapsed time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the number of single-site updates made by the sweep, summed over replicas
+     * @return number of updates
+     */
+    public long getUpdates() {
+        return updates;
+    }
+
+    /**
+     * Returns the rate at which the sweep updated labels
+     * @return single-site updates per second
+     */
+    public double getUpdatesPerSecond() {
+        return updates / (elapsedNanos / 1.0e9);
+    }
+
+    /**
+     * Returns the fraction of the sampled labels that changed during the sweep, in the first replica only for a
+     * multi-spin chain. A fraction near 0 means the chain is frozen, and needs many sweeps between observations.
+     * @return fraction of labels flipped, between 0 and 1
+     */
+    public double getFlippedFraction() {
+        return flippedFraction;
+    }
+
+    /**
+     * Returns the energy of the labels after the sweep, -(alpha sum_i x_i y_i + beta sum_(i,j) y_i y_j), where the
+     * sum over (i, j) is over the edges, in the first replica only for a multi-spin chain
+     * @return energy
+     */
+    public double getEnergy() {
+        return energy;
+    }
+
+    /**
+     * Returns the mean label after the sweep, counting positive labels as +1 and negative labels as -1, over all
+     * vertices (known labels included), in the first replica only for a multi-spin chain
+     * @return magnetisation, between -1 and 1
+     */
+    public double getMagnetisation() {
+        return magnetisation;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("chain = %d, sweep = %d, %.1f million updates per second, flipped = %.4f, "
+                        + "energy = %.1f, magnetisation = %.4f",
+                chain, sweep, getUpdatesPerSecond() / 1.0e6, flippedFraction, energy, magnetisation);
+    }
+
+}
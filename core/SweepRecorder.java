@@ -0,0 +1,85 @@
+package core;
+
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * Runs the sweeps of one chain, and reports each to the options' listener, if there is one. Without a listener the
+ * sweeps are run directly; with one, the labels are snapshotted before each sweep, so that the flips can be counted
+ * afterwards.
+ */
+final class SweepRecorder {
+
+    private final SamplingListener listener; // null if none
+    private final int chain;
+    private long sweepsRecorded = 0;
+    private boolean[] previousLabels; // allocated on first use
+    private long numSampled = -1; // number of sampled vertices (computed on first use)
+
+    SweepRecorder(SamplingOptions options, int chain) {
+        this.listener = options.getListener().orElse(null);
+        this.chain = chain;
+    }
+
+    void performSamplingRound(LabelSampler sampler, Parameters parameters, double[] probTrueSums) {
+        if (listener == null) {
+            sampler.performSamplingRound(parameters, probTrueSums);
+            return;
+        }
+        if (numSampled < 0) {
+            numSampled = sampler.getVerticesToSample().length;
+        }
+        record(sampler.getNumVertices(), sampler::getLabel, sampler.getNumReplicas(), sampler, parameters,
+                () -> sampler.performSamplingRound(parameters, probTrueSums));
+    }
+
+    // a round of the sampler that is run some other way, e.g. recording each replica's conditionals separately
+    void performCustomSamplingRound(LabelSampler sampler, Parameters parameters, Runnable round) {
+        if (listener == null) {
+            round.run();
+            return;
+        }
+        if (numSampled < 0) {
+            numSampled = sampler.getVerticesToSample().length;
+        }
+        record(sampler.getNumVertices(), sampler::getLabel, sampler.getNumReplicas(), sampler, parameters, round);
+    }
+
+    void performSamplingRound(LatticeAssignment assignment, Lattice lattice, Parameters parameters,
+                              double[] probTrueSums) {
+        if (listener == null) {
+            assignment.performSamplingRound(parameters, probTrueSums);
+            return;
+        }
+        int numSites = lattice.getNumSites();
+        if (numSampled < 0) {
+            numSampled = IntStream.range(0, numSites).parallel().filter(assignment::isSampled).count();
+        }
+        record(numSites, assignment::getLabel, 1, assignment, parameters,
+                () -> assignment.performSamplingRound(parameters, probTrueSums));
+    }
+
+    private void record(int numVertices, IntPredicate labels, int numReplicas, LabelStatistics statistics,
+                        Parameters parameters, Runnable round) {
+        if (previousLabels == null) {
+            previousLabels = new boolean[numVertices];
+        }
+        boolean[] previous = previousLabels;
+        IntStream.range(0, numVertices).parallel().forEach(id -> previous[id] = labels.test(id));
+
+        long startTime = System.nanoTime();
+        round.run();
+        long elapsedNanos = System.nanoTime() - startTime;
+
+        // the updates are counted over all the replicas, but the flips, energy and magnetisation are those of the
+        // first replica, as its labels form one chain whose autocorrelation can be estimated
+        long flips = IntStream.range(0, numVertices).parallel().filter(id -> labels.test(id) != previous[id]).count();
+        long positives = IntStream.range(0, numVertices).parallel().filter(labels).count();
+        double energy = -(parameters.getAlpha() * statistics.getFeatureLabelSum()
+                + parameters.getBeta() * statistics.getEdgeLabelSum());
+        listener.onSweep(new SweepEvent(chain, sweepsRecorded++, elapsedNanos, numSampled * numReplicas,
+                (numSampled == 0) ? 0.0 : (double) flips / numSampled, energy,
+                (numVertices == 0) ? 0.0 : (2.0 * positives - numVertices) / numVertices));
+    }
+
+}
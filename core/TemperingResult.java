@@ -0,0 +1,66 @@
+package core;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Result of prediction by parallel tempering: the marginals estimated from the t = 1 chain, together with the
+ * statistics needed to tune the ladder of coupling scales
+ */
+public final class TemperingResult {
+
+    private final Map<Vertex, Double> probabilities;
+    private final double[] couplingScales;
+    private final double[] swapAcceptanceRates;
+    private final double[] meanEnergies;
+
+    TemperingResult(Map<Vertex, Double> probabilities, double[] couplingScales, double[] swapAcceptanceRates,
+                    double[] meanEnergies) {
+        this.probabilities = probabilities;
+        this.couplingScales = couplingScales;
+        this.swapAcceptanceRates = swapAcceptanceRates;
+        this.meanEnergies = meanEnergies;
+    }
+
+    /**
+     * Returns the estimated marginal probabilities, from the chain with the unscaled coupling
+     * @return map (unlabelled vertex) -> (probability of true label for this vertex, given model)
+     */
+    public Map<Vertex, Double> getProbabilities() {
+        return probabilities;
+    }
+
+    /**
+     * Returns the ladder of coupling scales: rung r samples with coupling beta * scale[r], and rung 0 has scale 1
+     * @return coupling scale for each rung
+     */
+    public double[] getCouplingScales() {
+        return couplingScales.clone();
+    }
+
+    /**
+     * Returns the fraction of attempted swaps that were accepted between each pair of adjacent rungs. Rates that are
+     * very low indicate that the adjacent scales are too far apart.
+     * @return acceptance rate for rungs (r, r + 1), indexed by r
+     */
+    public double[] getSwapAcceptanceRates() {
+        return swapAcceptanceRates.clone();
+    }
+
+    /**
+     * Returns the mean energy -(alpha sum_i x_i y_i + beta t sum_(i,j) y_i y_j) of each rung, averaged over the
+     * observations
+     * @return mean energy, indexed by rung
+     */
+    public double[] getMeanEnergies() {
+        return meanEnergies.clone();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("coupling scales = %s, swap acceptance rates = %s, mean energies = %s",
+                Arrays.toString(couplingScales), Arrays.toString(swapAcceptanceRates),
+                Arrays.toString(meanEnergies));
+    }
+
+}
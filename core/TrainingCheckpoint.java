@@ -0,0 +1,219 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+/**
+ * The state of a training run after some number of gradient descent steps: the parameters, the labels of both of
+ * its Gibbs chains, and the seed and sweep counts that fix the random numbers still to come. Training resumed from a
+ * checkpoint (see {@link Algorithms#train(Network, TrainingCheckpoint, int, int, double, SamplingOptions)}) carries on
+ * where it left off, without a second burn-in, and prediction can start from its burned-in labels. In every mode but
+ * PARALLEL the resumed run gives exactly the parameters of an uninterrupted one; PARALLEL sweeps depend on thread
+ * timing, so there the chains carry on from the same labels but not along the same path.
+ * Checkpoints are written during training by {@link SamplingOptions#withCheckpoints}.
+ *
+ * File layout (all values little-endian): a header holding a magic number, the format version, the vertex order,
+ * the numbers of vertices and edges, a fingerprint of the network, the seed, the number of descent steps completed,
+ * alpha, beta, and the sweep count of each chain; then each chain's labels as a bitset of longs (bit i of word i / 64
+ * for vertex i). A checkpoint takes two bits per vertex.
+ */
+public final class TrainingCheckpoint {
+
+    private static final int MAGIC = 0x4B434D4D; // "MMCK" when read as little-endian bytes
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 80;
+
+    private final VertexOrder vertexOrder;
+    private final int numVertices;
+    private final int numEdges;
+    private final long fingerprint;
+    private final long seed;
+    private final int descentStepsCompleted;
+    private final double alpha;
+    private final double beta;
+    private final long targetSweeps;
+    private final long observedSweeps;
+    private final long[] targetLabelBits;
+    private final long[] observedLabelBits;
+
+    private TrainingCheckpoint(VertexOrder vertexOrder, int numVertices, int numEdges, long fingerprint, long seed,
+                               int descentStepsCompleted, double alpha, double beta, long targetSweeps,
+                               long observedSweeps, long[] targetLabelBits, long[] observedLabelBits) {
+        this.vertexOrder = vertexOrder;
+        this.numVertices = numVertices;
+        this.numEdges = numEdges;
+        this.fingerprint = fingerprint;
+        this.seed = seed;
+        this.descentStepsCompleted = descentStepsCompleted;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.targetSweeps = targetSweeps;
+        this.observedSweeps = observedSweeps;
+        this.targetLabelBits = targetLabelBits;
+        this.observedLabelBits = observedLabelBits;
+    }
+
+    // copies the state of a training run; fingerprint is as computed by fingerprint(network)
+    static TrainingCheckpoint capture(CompiledNetwork network, VertexOrder vertexOrder, long fingerprint, long seed,
+                                      int descentStepsCompleted, Parameters parameters, Assignment targetAssignment,
+                                      Assignment observedAssignment) {
+        return new TrainingCheckpoint(vertexOrder, network.getNumVertices(), network.getNumEdges(), fingerprint, seed,
+                descentStepsCompleted, parameters.getAlpha(), parameters.getBeta(),
+                targetAssignment.getSweepsPerformed(), observedAssignment.getSweepsPerformed(),
+                targetAssignment.getLabelBits(), observedAssignment.getLabelBits());
+    }
+
+    // Hashes each vertex's id, degree, feature and known label, so that a checkpoint is not resumed on a different
+    // network, or on the same network with its vertices numbered differently
+    static long fingerprint(CompiledNetwork network) {
+        return IntStream.range(0, network.getNumVertices()).parallel()
+                .mapToLong(id -> {
+                    long data = (long) network.getDegree(id) << 3 | (network.getFeature(id) ? 4 : 0)
+                            | (network.isLabelled(id) ? 2 : 0)
+                            | (network.isLabelled(id) && network.getKnownLabel(id) ? 1 : 0);
+                    return CounterRandom.getVertexBits(data, id);
+                })
+                .sum();
+    }
+
+    /**
+     * Reads a checkpoint from a file
+     * @param path file to read
+     * @return checkpoint
+     * @throws IOException if the file cannot be read, or is not a checkpoint
+     */
+    public static TrainingCheckpoint read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, HEADER_BYTES, path);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a checkpoint file: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint file version " + version + ": " + path);
+            }
+            int vertexOrder = header.getInt();
+            if (vertexOrder < 0 || vertexOrder >= VertexOrder.values().length) {
+                throw new IOException("Unknown vertex order " + vertexOrder + ": " + path);
+            }
+            int numVertices = header.getInt();
+            int numEdges = header.getInt();
+            header.getInt(); // padding
+            long fingerprint = header.getLong();
+            long seed = header.getLong();
+            long descentStepsCompleted = header.getLong();
+            double alpha = header.getDouble();
+            double beta = header.getDouble();
+            long targetSweeps = header.getLong();
+            long observedSweeps = header.getLong();
+            int numWords = CompiledNetwork.numWords(numVertices);
+            long[] targetLabelBits = new long[numWords];
+            readFully(channel, 8 * numWords, path).asLongBuffer().get(targetLabelBits);
+            long[] observedLabelBits = new long[numWords];
+            readFully(channel, 8 * numWords, path).asLongBuffer().get(observedLabelBits);
+            return new TrainingCheckpoint(VertexOrder.values()[vertexOrder], numVertices, numEdges, fingerprint,
+                    seed, (int) descentStepsCompleted, alpha, beta, targetSweeps, observedSweeps, targetLabelBits,
+                    observedLabelBits);
+        }
+    }
+
+    /**
+     * Writes this checkpoint to a file. The file is written under a temporary name and then renamed, so an existing
+     * checkpoint is only ever replaced by a complete one.
+     * @param path file to write (replaced if it exists)
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path path) throws IOException {
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(vertexOrder.ordinal()).putInt(numVertices).putInt(numEdges)
+                    .putInt(0).putLong(fingerprint).putLong(seed).putLong(descentStepsCompleted).putDouble(alpha)
+                    .putDouble(beta).putLong(targetSweeps).putLong(observedSweeps);
+            header.flip();
+            writeFully(channel, header);
+            for (long[] labelBits : new long[][] {targetLabelBits, observedLabelBits}) {
+                ByteBuffer buffer = ByteBuffer.allocate(8 * labelBits.length).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.asLongBuffer().put(labelBits); // leaves the buffer's own position at 0
+                writeFully(channel, buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the parameters reached by the checkpointed run
+     * @return alpha and beta parameters
+     */
+    public Parameters getParameters() {
+        return new Parameters(alpha, beta);
+    }
+
+    /**
+     * Returns the number of gradient descent steps completed before the checkpoint
+     * @return number of descent steps
+     */
+    public int getDescentStepsCompleted() {
+        return descentStepsCompleted;
+    }
+
+    /**
+     * Returns the random seed of the checkpointed run, which a resumed run carries on with
+     * @return random seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the vertex order of the checkpointed run, which a resumed run uses too
+     * @return vertex order
+     */
+    public VertexOrder getVertexOrder() {
+        return vertexOrder;
+    }
+
+    // throws unless the network is the one checkpointed, with the vertices numbered in the same way
+    void checkMatches(CompiledNetwork network, long networkFingerprint) {
+        if (network.getNumVertices() != numVertices || network.getNumEdges() != numEdges
+                || networkFingerprint != fingerprint) {
+            throw new IllegalArgumentException("Checkpoint is of a different network, or of the same network with its"
+                    + " vertices added in a different order");
+        }
+    }
+
+    void restoreTarget(Assignment targetAssignment) {
+        targetAssignment.restore(targetLabelBits, targetSweeps);
+    }
+
+    void restoreObserved(Assignment observedAssignment) {
+        observedAssignment.restore(observedLabelBits, observedSweeps);
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, int numBytes, Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(numBytes).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Truncated checkpoint file: " + path);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+package core;
+
+/**
+ * Orders in which a network's vertices can be numbered when it is compiled for sampling. Parallel sweeps split the
+ * vertices into contiguous ranges of ids, one range per task, so an order that keeps neighbours close together keeps
+ * each task's reads of its neighbours' labels within a few cache lines.
+ */
+public enum VertexOrder {
+
+    /**
+     * The order in which the vertices were added to the network
+     */
+    INSERTION,
+
+    /**
+     * Breadth-first search order, one connected component after another
+     */
+    BREADTH_FIRST,
+
+    /**
+     * Reverse Cuthill-McKee order: breadth-first search from a low-degree vertex of each component, visiting
+     * neighbours in order of increasing degree, and then reversed. This keeps the ids of neighbours especially close
+     * together (a small bandwidth), at the cost of sorting each vertex's neighbours by degree.
+     */
+    REVERSE_CUTHILL_MCKEE
+
+}
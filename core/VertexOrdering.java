@@ -0,0 +1,101 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Computes the vertex orders of {@link VertexOrder}, as permutations of a compiled network's ids
+ */
+final class VertexOrdering {
+
+    private VertexOrdering() {
+    }
+
+    // old ids, listed in their new order
+    static int[] compute(CompiledNetwork network, VertexOrder vertexOrder) {
+        switch (vertexOrder) {
+            case INSERTION:
+                int[] identity = new int[network.getNumVertices()];
+                Arrays.setAll(identity, id -> id);
+                return identity;
+            case BREADTH_FIRST:
+                return breadthFirst(network, false);
+            case REVERSE_CUTHILL_MCKEE:
+                int[] order = breadthFirst(network, true);
+                for (int left = 0, right = order.length - 1; left < right; left++, right--) {
+                    int id = order[left];
+                    order[left] = order[right];
+                    order[right] = id;
+                }
+                return order;
+            default:
+                throw new IllegalStateException("Unknown vertex order " + vertexOrder);
+        }
+    }
+
+    // Breadth-first search, one component after another. For Cuthill-McKee, each component starts from a vertex of
+    // least degree (a cheap stand-in for a peripheral vertex), and neighbours are queued by increasing degree.
+    private static int[] breadthFirst(CompiledNetwork network, boolean cuthillMcKee) {
+        int numVertices = network.getNumVertices();
+        int[] roots = cuthillMcKee ? sortByDegree(network) : null;
+        boolean[] visited = new boolean[numVertices];
+        int[] order = new int[numVertices]; // doubles as the search queue
+        int queueTail = 0;
+        for (int rootIndex = 0; rootIndex < numVertices; rootIndex++) {
+            int root = cuthillMcKee ? roots[rootIndex] : rootIndex;
+            if (visited[root]) {
+                continue;
+            }
+            visited[root] = true;
+            order[queueTail++] = root;
+            for (int queueHead = queueTail - 1; queueHead < queueTail; queueHead++) {
+                int id = order[queueHead];
+                int queueStart = queueTail;
+                int end = network.getNeighbourEnd(id);
+                for (int position = network.getNeighbourStart(id); position < end; position++) {
+                    int neighbour = network.getNeighbour(position);
+                    if (!visited[neighbour]) {
+                        visited[neighbour] = true;
+                        order[queueTail++] = neighbour;
+                    }
+                }
+                if (cuthillMcKee) {
+                    sortRangeByDegree(network, order, queueStart, queueTail);
+                }
+            }
+        }
+        return order;
+    }
+
+    // all ids, by increasing degree (counting sort, stable)
+    private static int[] sortByDegree(CompiledNetwork network) {
+        int numVertices = network.getNumVertices();
+        int[] degreeOffsets = new int[network.getMaxDegree() + 2];
+        for (int id = 0; id < numVertices; id++) {
+            degreeOffsets[network.getDegree(id) + 1]++;
+        }
+        for (int degree = 1; degree < degreeOffsets.length; degree++) {
+            degreeOffsets[degree] += degreeOffsets[degree - 1];
+        }
+        int[] sorted = new int[numVertices];
+        for (int id = 0; id < numVertices; id++) {
+            sorted[degreeOffsets[network.getDegree(id)]++] = id;
+        }
+        return sorted;
+    }
+
+    // sorts ids[from, to) by increasing degree, breaking ties by id, by packing (degree, id) into longs
+    private static void sortRangeByDegree(CompiledNetwork network, int[] ids, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        long[] keys = new long[to - from];
+        for (int index = from; index < to; index++) {
+            keys[index - from] = ((long) network.getDegree(ids[index]) << 32) | ids[index];
+        }
+        Arrays.sort(keys);
+        for (int index = from; index < to; index++) {
+            ids[index] = (int) keys[index - from];
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package example;
+
+import core.Algorithms;
+import core.MappedNetwork;
+import core.Network;
+import core.Parameters;
+import core.PartitionedSampling;
+import core.SamplingMode;
+import core.SamplingOptions;
+import core.Vertex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Partitioned sampling of a grid by several JVMs. Run with no arguments, this writes the network, starts the worker
+ * processes (this class again, with worker arguments), and compares their results with sampling in one process.
+ */
+public class PartitionedGrid {
+
+    private static final int NUM_WORKERS = 4;
+    private static final long SEED = 42L;
+    private static final Parameters PARAMETERS = new Parameters(0.2, 0.3);
+    private static final SamplingOptions OPTIONS = SamplingOptions.defaults().withSeed(SEED);
+
+    private static Network makeNetwork(int gridSize) {
+        Network network = new Network();
+        Vertex[][] vertices = new Vertex[gridSize][gridSize];
+        for (int row = 0; row < gridSize; row++) {
+            for (int col = 0; col < gridSize; col++) {
+                vertices[row][col] = network.makeUnlabelledVertexWithRandomFeature();
+            }
+        }
+        for (int row = 0; row < gridSize; row++) {
+            for (int col = 0; col < gridSize; col++) {
+                network.addEdge(vertices[row][col], vertices[(row + 1) % gridSize][col]);
+                network.addEdge(vertices[row][col], vertices[row][(col + 1) % gridSize]);
+            }
+        }
+        return Algorithms.eraseLabels(Algorithms.sampleMissingLabels(network, PARAMETERS, 100), 0.5);
+    }
+
+    // Starts a worker process per part, and waits for them all. Each worker's output goes to a file of its own, and
+    // is printed once the worker has finished, so that the workers' lines are not interleaved.
+    private static void runWorkers(String task, Path networkFile, Path exchangeFile)
+            throws IOException, InterruptedException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> workers = new ArrayList<>();
+        List<Path> logFiles = new ArrayList<>();
+        for (int worker = 0; worker < NUM_WORKERS; worker++) {
+            Path logFile = networkFile.resolveSibling("worker-" + worker + ".log");
+            logFiles.add(logFile);
+            workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    PartitionedGrid.class.getName(), task, networkFile.toString(), exchangeFile.toString(),
+                    Integer.toString(worker))
+                    .redirectErrorStream(true)
+                    .redirectOutput(logFile.toFile())
+                    .start());
+        }
+        for (int worker = 0; worker < NUM_WORKERS; worker++) {
+            int exitCode = workers.get(worker).waitFor();
+            for (String line : Files.readAllLines(logFiles.get(worker))) {
+                System.out.printf("Worker %d: %s%n", worker, line);
+            }
+            if (exitCode != 0) {
+                throw new IllegalStateException("Worker " + worker + " failed with exit code " + exitCode);
+            }
+        }
+    }
+
+    private static void runWorker(String[] args) throws IOException {
+        MappedNetwork network = MappedNetwork.open(Paths.get(args[1]));
+        Path exchangeFile = Paths.get(args[2]);
+        int worker = Integer.parseInt(args[3]);
+        if (args[0].equals("predict")) {
+            PartitionedSampling.predict(network, exchangeFile, worker, PARAMETERS, 100, 50, 2, OPTIONS);
+        } else {
+            Parameters fittedParams = PartitionedSampling.train(network, exchangeFile, worker,
+                    new Parameters(0.0, 0.0), 100, 50, 2, 1e-5, OPTIONS);
+            System.out.println(fittedParams);
+        }
+    }
+
+    // over the unlabelled vertices (NaN entries are labelled)
+    private static double meanAbsoluteDifference(double[] predictions, double[] otherPredictions) {
+        double sum = 0.0;
+        int count = 0;
+        for (int id = 0; id < predictions.length; id++) {
+            if (!Double.isNaN(predictions[id])) {
+                sum += Math.abs(predictions[id] - otherPredictions[id]);
+                count++;
+            }
+        }
+        return sum / count;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0) {
+            runWorker(args);
+            return;
+        }
+
+        Path directory = Files.createTempDirectory("partitioned-grid");
+        Path networkFile = directory.resolve("network.bin");
+        Path exchangeFile = directory.resolve("exchange.bin");
+        MappedNetwork.write(makeNetwork(500), networkFile);
+        MappedNetwork network = MappedNetwork.open(networkFile);
+
+        long cutEdges = PartitionedSampling.createExchangeFile(network, NUM_WORKERS, exchangeFile);
+        System.out.printf("%d workers, %d of %d edges cut%n", NUM_WORKERS, cutEdges, network.getNumEdges());
+        long start = System.nanoTime();
+        runWorkers("predict", networkFile, exchangeFile);
+        System.out.printf("Partitioned prediction took %.1f s%n", (System.nanoTime() - start) / 1e9);
+        double[] partitioned = PartitionedSampling.readPredictions(exchangeFile);
+
+        // The workers sweep in a different order from any single-process mode, so the results should agree with
+        // single-process sampling as closely as two single-process runs with different seeds agree with each other
+        start = System.nanoTime();
+        double[] single = Algorithms.predict(network, PARAMETERS, 100, 50, 2,
+                OPTIONS.withMode(SamplingMode.CHROMATIC));
+        System.out.printf("Single-process prediction took %.1f s%n", (System.nanoTime() - start) / 1e9);
+        double[] otherSeed = Algorithms.predict(network, PARAMETERS, 100, 50, 2,
+                OPTIONS.withMode(SamplingMode.CHROMATIC).withSeed(SEED + 1));
+        System.out.printf("Mean absolute difference from single-process sampling: %.4f (between seeds: %.4f)%n",
+                meanAbsoluteDifference(partitioned, single), meanAbsoluteDifference(otherSeed, single));
+
+        PartitionedSampling.createExchangeFile(network, NUM_WORKERS, exchangeFile);
+        runWorkers("train", networkFile, exchangeFile);
+        System.out.println("Single process: " + Algorithms.train(network, new Parameters(0.0, 0.0), 100, 50, 2, 1e-5,
+                OPTIONS.withMode(SamplingMode.CHROMATIC)));
+
+        for (File file : directory.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(directory);
+    }
+
+}
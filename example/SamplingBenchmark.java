@@ -0,0 +1,173 @@
+package example;
+
+import core.Algorithms;
+import core.Lattice;
+import core.Network;
+import core.Parameters;
+import core.SamplingMode;
+import core.SamplingOptions;
+import core.Vertex;
+import core.VertexOrder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class SamplingBenchmark {
+
+    private static Network makeGrid(int gridSize) {
+        Network network = new Network();
+
+        Vertex[][] vertices = new Vertex[gridSize][gridSize];
+        for (int row = 0; row < gridSize; row++) {
+            for (int col = 0; col < gridSize; col++) {
+                vertices[row][col] = network.makeUnlabelledVertexWithRandomFeature();
+            }
+        }
+
+        for (int row = 0; row < gridSize; row++) {
+            for (int col = 0; col < gridSize; col++) {
+                network.addEdge(vertices[row][col], vertices[(row + 1) % gridSize][col]);
+                network.addEdge(vertices[row][col], vertices[row][(col + 1) % gridSize]);
+            }
+        }
+
+        return network;
+    }
+
+    // The same grid, but with the vertices added in random order, so that insertion order says nothing about locality
+    private static Network makeShuffledGrid(int gridSize) {
+        Network network = new Network();
+
+        List<int[]> positions = new ArrayList<>();
+        for (int row = 0; row < gridSize; row++) {
+            for (int col = 0; col < gridSize; col++) {
+                positions.add(new int[] {row, col});
+            }
+        }
+        Collections.shuffle(positions);
+        Vertex[][] vertices = new Vertex[gridSize][gridSize];
+        for (int[] position : positions) {
+            vertices[position[0]][position[1]] = network.makeUnlabelledVertexWithRandomFeature();
+        }
+
+        for (int row = 0; row < gridSize; row++) {
+            for (int col = 0; col < gridSize; col++) {
+                network.addEdge(vertices[row][col], vertices[(row + 1) % gridSize][col]);
+                network.addEdge(vertices[row][col], vertices[row][(col + 1) % gridSize]);
+            }
+        }
+
+        return network;
+    }
+
+    // Preferential attachment (Barabasi-Albert): each new vertex joins edgesPerVertex existing vertices chosen in
+    // proportion to their degree, giving a power-law degree distribution with a few very high-degree hubs
+    private static Network makePowerLawGraph(int numVertices, int edgesPerVertex) {
+        Network network = new Network();
+        List<Vertex> vertices = new ArrayList<>();
+        List<Vertex> edgeEndpoints = new ArrayList<>(); // each vertex appears once per incident edge
+
+        for (int index = 0; index <= edgesPerVertex; index++) {
+            vertices.add(network.makeUnlabelledVertexWithRandomFeature());
+        }
+        for (int from = 0; from <= edgesPerVertex; from++) {
+            for (int to = from + 1; to <= edgesPerVertex; to++) {
+                network.addEdge(vertices.get(from), vertices.get(to));
+                edgeEndpoints.add(vertices.get(from));
+                edgeEndpoints.add(vertices.get(to));
+            }
+        }
+
+        while (vertices.size() < numVertices) {
+            Vertex newVertex = network.makeUnlabelledVertexWithRandomFeature();
+            for (int edge = 0; edge < edgesPerVertex; edge++) {
+                Vertex target = edgeEndpoints.get(ThreadLocalRandom.current().nextInt(edgeEndpoints.size()));
+                network.addEdge(newVertex, target);
+                edgeEndpoints.add(newVertex);
+                edgeEndpoints.add(target);
+            }
+            vertices.add(newVertex);
+        }
+
+        return network;
+    }
+
+    // Single-site updates per second, over a run of sweeps through all the vertices of an unlabelled network
+    private static double measureUpdatesPerSecond(Network network, int numVertices, Parameters parameters,
+                                                  int sweeps, SamplingOptions options) {
+        Algorithms.predict(network, parameters, 1, sweeps, 0, options); // warm-up
+        long startTime = System.nanoTime();
+        Algorithms.predict(network, parameters, 1, sweeps, 0, options);
+        double seconds = (System.nanoTime() - startTime) / 1.0e9;
+        int replicas = (options.getMode() == SamplingMode.MULTI_SPIN) ? 64 : 1;
+        return ((double) sweeps) * numVertices * replicas / seconds;
+    }
+
+    private static double measureUpdatesPerSecond(Lattice lattice, Parameters parameters, int sweeps) {
+        SamplingOptions options = SamplingOptions.defaults();
+        Algorithms.predict(lattice, parameters, 1, sweeps, 0, options); // warm-up
+        long startTime = System.nanoTime();
+        Algorithms.predict(lattice, parameters, 1, sweeps, 0, options);
+        double seconds = (System.nanoTime() - startTime) / 1.0e9;
+        return ((double) sweeps) * lattice.getNumSites() / seconds;
+    }
+
+    public static void main(String[] args) {
+        int gridSize = 200;
+        int powerLawSize = 200000;
+        int sweeps = 200;
+        Parameters parameters = new Parameters(0.3, 0.5);
+
+        Network grid = makeGrid(gridSize);
+        for (SamplingMode mode : SamplingMode.values()) {
+            double updatesPerSecond = measureUpdatesPerSecond(grid, gridSize * gridSize, parameters, sweeps,
+                    SamplingOptions.defaults().withMode(mode));
+            System.out.printf("Grid, %s: %.1f million updates per second%n", mode, updatesPerSecond / 1.0e6);
+        }
+
+        // the same shape of network, but with implicit topology and packed labels, swept 64 sites at a time
+        int latticeSize = 4096;
+        Lattice lattice = Lattice.periodic2D(latticeSize, latticeSize);
+        for (int site = 0; site < lattice.getNumSites(); site++) {
+            lattice.setFeatureValue(site, ThreadLocalRandom.current().nextBoolean());
+        }
+        double latticeUpdatesPerSecond = measureUpdatesPerSecond(lattice, parameters, sweeps / 10);
+        System.out.printf("Lattice %dx%d: %.2f billion updates per second%n",
+                latticeSize, latticeSize, latticeUpdatesPerSecond / 1.0e9);
+
+        // vertex numbering, on a grid whose insertion order is random
+        int shuffledGridSize = 1000;
+        Network shuffledGrid = makeShuffledGrid(shuffledGridSize);
+        for (VertexOrder vertexOrder : VertexOrder.values()) {
+            double updatesPerSecond = measureUpdatesPerSecond(shuffledGrid, shuffledGridSize * shuffledGridSize,
+                    parameters, sweeps / 2, SamplingOptions.defaults().withVertexOrder(vertexOrder));
+            System.out.printf("Shuffled grid, %s order: %.1f million updates per second%n",
+                    vertexOrder, updatesPerSecond / 1.0e6);
+        }
+
+        // the same work, confined to a dedicated pool with a single thread
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            double updatesPerSecond = measureUpdatesPerSecond(shuffledGrid, shuffledGridSize * shuffledGridSize,
+                    parameters, sweeps / 2, SamplingOptions.defaults()
+                            .withVertexOrder(VertexOrder.REVERSE_CUTHILL_MCKEE).withPool(pool));
+            System.out.printf("Shuffled grid, REVERSE_CUTHILL_MCKEE order, 1-thread pool: %.1f million updates "
+                    + "per second%n", updatesPerSecond / 1.0e6);
+        } finally {
+            pool.shutdown();
+        }
+
+        // skewed degrees, where rescanning the hubs' edges on every update dominates the cost of a sweep
+        Network powerLawGraph = makePowerLawGraph(powerLawSize, 3);
+        for (boolean incrementalNeighbourSums : new boolean[] {false, true}) {
+            double updatesPerSecond = measureUpdatesPerSecond(powerLawGraph, powerLawSize, parameters, sweeps,
+                    SamplingOptions.defaults().withIncrementalNeighbourSums(incrementalNeighbourSums));
+            System.out.printf("Power-law graph, incremental neighbour sums = %b: %.1f million updates per second%n",
+                    incrementalNeighbourSums, updatesPerSecond / 1.0e6);
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Mean-field and belief propagation on a tree, against exact marginals
+class ApproximateInferenceTest {
+
+    private static final boolean[] FEATURES = {true, false, true, true, false, false, true, false, true};
+    private static final Boolean[] KNOWN_LABELS = {null, null, null, null, true, null, null, false, null};
+    private static final int[][] EDGES = {{0, 1}, {0, 2}, {1, 3}, {1, 4}, {2, 5}, {2, 6}, {6, 7}, {6, 8}};
+
+    private final Network network = new Network();
+    private final Vertex[] vertices = new Vertex[FEATURES.length];
+
+    ApproximateInferenceTest() {
+        for (int id = 0; id < FEATURES.length; id++) {
+            vertices[id] = (KNOWN_LABELS[id] != null) ? network.makeLabelledVertex(FEATURES[id], KNOWN_LABELS[id])
+                    : network.makeUnlabelledVertex(FEATURES[id]);
+        }
+        for (int[] edge : EDGES) {
+            network.addEdge(vertices[edge[0]], vertices[edge[1]]);
+        }
+    }
+
+    private void checkMarginals(InferenceResult result, Parameters parameters, double tolerance) {
+        double[] exact = ExactMarginalsTest.computeExactMarginals(FEATURES, KNOWN_LABELS, EDGES, parameters);
+        assertTrue(result.isConverged(), result.toString());
+        Map<Vertex, Double> probabilities = result.getProbabilities();
+        assertEquals(FEATURES.length - 2, probabilities.size());
+        for (int id = 0; id < FEATURES.length; id++) {
+            if (KNOWN_LABELS[id] == null) {
+                assertEquals(exact[id], probabilities.get(vertices[id]), tolerance, "vertex " + id);
+            }
+        }
+    }
+
+    @Test
+    void beliefPropagationIsExactOnTree() {
+        Parameters parameters = new Parameters(0.3, 0.5);
+        checkMarginals(Algorithms.predictBeliefPropagation(network, parameters, 100, 1.0e-12, 0.0), parameters,
+                1.0e-9);
+    }
+
+    @Test
+    void meanFieldIsCloseOnTreeWhenWeaklyCoupled() {
+        // mean-field ignores the correlations between neighbours, so is only approximate even on a tree, with an
+        // error that grows with beta
+        Parameters parameters = new Parameters(0.3, 0.1);
+        checkMarginals(Algorithms.predictMeanField(network, parameters, 1000, 1.0e-12, 0.5), parameters, 0.02);
+    }
+
+}
@@ -0,0 +1,81 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AssignmentTest {
+
+    // a random graph with a few high-degree hubs, so that neighbours often flip in the same parallel round
+    private static CompiledNetwork makeNetwork(long seed) {
+        Random random = new Random(seed);
+        Network network = new Network();
+        List<Vertex> vertices = new ArrayList<>();
+        for (int index = 0; index < 2000; index++) {
+            vertices.add((index % 3 == 0)
+                    ? network.makeLabelledVertex(random.nextBoolean(), random.nextBoolean())
+                    : network.makeUnlabelledVertex(random.nextBoolean()));
+        }
+        for (int edge = 0; edge < 8000; edge++) {
+            int from = (edge % 4 == 0) ? random.nextInt(10) : random.nextInt(vertices.size());
+            int to = random.nextInt(vertices.size());
+            if (from != to) {
+                network.addEdge(vertices.get(from), vertices.get(to));
+            }
+        }
+        return CompiledNetwork.compile(network);
+    }
+
+    private static long countFeatureLabelSum(CompiledNetwork network, Assignment assignment) {
+        long sum = 0;
+        for (int id = 0; id < network.getNumVertices(); id++) {
+            sum += BooleanUtils.spin(network.getFeature(id)) * BooleanUtils.spin(assignment.getLabel(id));
+        }
+        return sum;
+    }
+
+    private static long countEdgeLabelSum(CompiledNetwork network, Assignment assignment) {
+        long sum = 0;
+        for (int id = 0; id < network.getNumVertices(); id++) {
+            int end = network.getNeighbourEnd(id);
+            for (int position = network.getNeighbourStart(id); position < end; position++) {
+                int neighbour = network.getNeighbour(position);
+                if (id < neighbour) {
+                    sum += BooleanUtils.spin(assignment.getLabel(id))
+                            * BooleanUtils.spin(assignment.getLabel(neighbour));
+                }
+            }
+        }
+        return sum;
+    }
+
+    private static void checkStatisticsAfterEachRound(SamplingOptions options) {
+        CompiledNetwork network = makeNetwork(1L);
+        Parameters parameters = new Parameters(0.2, 0.3);
+        Assignment assignment = Assignment.samplingUnknownGivenKnown(network, options, new CounterRandom(2L, 0));
+        for (int round = 0; round < 40; round++) {
+            assignment.performSamplingRound(parameters, null);
+            assertEquals(countFeatureLabelSum(network, assignment), assignment.getFeatureLabelSum(),
+                    "feature statistic after round " + round);
+            assertEquals(countEdgeLabelSum(network, assignment), assignment.getEdgeLabelSum(),
+                    "edge statistic after round " + round);
+        }
+    }
+
+    @Test
+    void parallelStatisticsMatchRecount() {
+        checkStatisticsAfterEachRound(SamplingOptions.defaults().withMode(SamplingMode.PARALLEL));
+        checkStatisticsAfterEachRound(SamplingOptions.defaults().withMode(SamplingMode.PARALLEL)
+                .withIncrementalNeighbourSums(true));
+    }
+
+    @Test
+    void chromaticStatisticsMatchRecount() {
+        checkStatisticsAfterEachRound(SamplingOptions.defaults().withMode(SamplingMode.CHROMATIC));
+    }
+
+}
@@ -0,0 +1,39 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AutocorrelationEstimatorTest {
+
+    // x_t = rho x_(t-1) + noise, whose integrated autocorrelation time is (1 + rho) / (1 - rho)
+    private static double[] makeAutoregressiveSeries(double rho, int length, long seed) {
+        Random random = new Random(seed);
+        double[] series = new double[length];
+        for (int index = 1; index < length; index++) {
+            series[index] = rho * series[index - 1] + random.nextGaussian();
+        }
+        return series;
+    }
+
+    @Test
+    void autoregressiveSeriesGivesKnownTime() {
+        double[] series = makeAutoregressiveSeries(0.8, 200_000, 1L);
+        assertEquals(9.0, AutocorrelationEstimator.integratedAutocorrelationTime(series, series.length), 0.9);
+    }
+
+    @Test
+    void independentSeriesGivesTimeNearOne() {
+        double[] series = makeAutoregressiveSeries(0.0, 200_000, 2L);
+        assertEquals(1.0, AutocorrelationEstimator.integratedAutocorrelationTime(series, series.length), 0.1);
+    }
+
+    @Test
+    void constantSeriesGivesNoTime() {
+        assertTrue(Double.isNaN(AutocorrelationEstimator.integratedAutocorrelationTime(new double[100], 100)));
+    }
+
+}
@@ -0,0 +1,103 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchPredictionTest {
+
+    private static final int NUM_VERTICES = 200;
+    private static final int NUM_QUERIES = 66; // more than one batch
+    // coupled weakly enough that the posterior has one mode, which every chain finds
+    private static final Parameters PARAMETERS = new Parameters(0.2, 0.15);
+
+    private static final boolean[] FEATURES = new boolean[NUM_VERTICES];
+    private static final int[][] EDGES = new int[3 * NUM_VERTICES][];
+
+    static {
+        Random random = new Random(1L);
+        for (int id = 0; id < NUM_VERTICES; id++) {
+            FEATURES[id] = random.nextBoolean();
+        }
+        for (int edge = 0; edge < EDGES.length; edge++) {
+            EDGES[edge] = new int[]{random.nextInt(NUM_VERTICES), random.nextInt(NUM_VERTICES)};
+        }
+    }
+
+    // the network, with the given known labels (indexed by vertex id, null where unknown)
+    private static List<Vertex> makeVertices(Network network, Boolean[] knownLabels) {
+        List<Vertex> vertices = new ArrayList<>();
+        for (int id = 0; id < NUM_VERTICES; id++) {
+            vertices.add((knownLabels[id] != null) ? network.makeLabelledVertex(FEATURES[id], knownLabels[id])
+                    : network.makeUnlabelledVertex(FEATURES[id]));
+        }
+        for (int[] edge : EDGES) {
+            if (edge[0] != edge[1]) {
+                network.addEdge(vertices.get(edge[0]), vertices.get(edge[1]));
+            }
+        }
+        return vertices;
+    }
+
+    @Test
+    void batchMatchesPerQueryPrediction() {
+        Random random = new Random(2L);
+        Boolean[][] queryLabels = new Boolean[NUM_QUERIES][NUM_VERTICES];
+        for (Boolean[] labels : queryLabels) {
+            for (int id = 0; id < NUM_VERTICES; id++) {
+                if (random.nextInt(4) == 0) {
+                    labels[id] = random.nextBoolean();
+                }
+            }
+        }
+        // the network's own labels are ignored by predictBatch
+        Network network = new Network();
+        Boolean[] networkLabels = new Boolean[NUM_VERTICES];
+        networkLabels[0] = true;
+        List<Vertex> vertices = makeVertices(network, networkLabels);
+        List<Map<Vertex, Boolean>> knownLabels = new ArrayList<>();
+        for (Boolean[] labels : queryLabels) {
+            Map<Vertex, Boolean> query = new HashMap<>();
+            for (int id = 0; id < NUM_VERTICES; id++) {
+                if (labels[id] != null) {
+                    query.put(vertices.get(id), labels[id]);
+                }
+            }
+            knownLabels.add(query);
+        }
+
+        SamplingOptions options = SamplingOptions.defaults().withMode(SamplingMode.CHROMATIC).withSeed(3L)
+                .withEstimator(MarginalEstimator.RAO_BLACKWELL);
+        List<Map<Vertex, Double>> batch = Algorithms.predictBatch(network, knownLabels, PARAMETERS, 4000, 100, 1,
+                options);
+        assertEquals(NUM_QUERIES, batch.size());
+        // the first and last queries of each batch
+        for (int query : new int[]{0, 63, 64, NUM_QUERIES - 1}) {
+            Network queryNetwork = new Network();
+            List<Vertex> queryVertices = makeVertices(queryNetwork, queryLabels[query]);
+            Map<Vertex, Double> single = Algorithms.predict(queryNetwork, PARAMETERS, 4000, 100, 1, options);
+            assertEquals(single.size(), batch.get(query).size(), "query " + query);
+            double differenceSum = 0.0;
+            double maxDifference = 0.0;
+            for (int id = 0; id < NUM_VERTICES; id++) {
+                if (queryLabels[query][id] == null) {
+                    double difference = Math.abs(single.get(queryVertices.get(id))
+                            - batch.get(query).get(vertices.get(id)));
+                    differenceSum += difference;
+                    maxDifference = Math.max(maxDifference, difference);
+                }
+            }
+            double meanDifference = differenceSum / single.size();
+            assertTrue(meanDifference < 0.01 && maxDifference < 0.05,
+                    "query " + query + ": mean difference " + meanDifference + ", largest " + maxDifference);
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConvergenceDiagnosticsTest {
+
+    @Test
+    void identicalChainsGiveRHatNearOne() {
+        int[][] positiveCounts = {{30, 500}, {30, 500}, {30, 500}, {30, 500}};
+        for (int id = 0; id < 2; id++) {
+            assertEquals(1.0, ConvergenceDiagnostics.potentialScaleReduction(positiveCounts, id, 1000), 0.001);
+        }
+    }
+
+    @Test
+    void divergentChainsGiveLargeRHat() {
+        int[][] positiveCounts = {{100}, {900}, {120}, {880}};
+        double rHat = ConvergenceDiagnostics.potentialScaleReduction(positiveCounts, 0, 1000);
+        assertTrue(rHat > 1.5, "R-hat " + rHat);
+    }
+
+    @Test
+    void frozenChainsAgreeOnlyIfTheySawTheSameLabel() {
+        int[][] positiveCounts = {{0, 0, 1000}, {0, 1000, 1000}};
+        assertEquals(1.0, ConvergenceDiagnostics.potentialScaleReduction(positiveCounts, 0, 1000));
+        assertEquals(Double.POSITIVE_INFINITY, ConvergenceDiagnostics.potentialScaleReduction(positiveCounts, 1, 1000));
+        assertEquals(1.0, ConvergenceDiagnostics.potentialScaleReduction(positiveCounts, 2, 1000));
+        assertEquals(Double.POSITIVE_INFINITY,
+                ConvergenceDiagnostics.maxPotentialScaleReduction(positiveCounts, new int[]{0, 1, 2}, 1000));
+    }
+
+    @Test
+    void singleSampleGivesNoEstimate() {
+        int[][] positiveCounts = {{1}, {1}};
+        assertEquals(Double.POSITIVE_INFINITY, ConvergenceDiagnostics.potentialScaleReduction(positiveCounts, 0, 1));
+    }
+
+}
@@ -0,0 +1,109 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Compares sampled marginals with exact ones, found by enumerating every labelling of a small network
+class ExactMarginalsTest {
+
+    private static final boolean[] FEATURES = {true, false, false, true, true, false, true, false};
+    private static final Boolean[] KNOWN_LABELS = {null, null, null, true, null, null, false, null};
+    // a cycle with chords, one of them closing a triangle, so that three colours are needed
+    private static final int[][] EDGES = {{0, 1}, {1, 2}, {2, 3}, {3, 4}, {4, 5}, {5, 6}, {6, 7}, {7, 0}, {0, 2},
+            {1, 5}, {2, 6}, {4, 7}};
+    private static final Parameters PARAMETERS = new Parameters(0.3, 0.5);
+
+    private final Network network = new Network();
+    private final Vertex[] vertices = new Vertex[FEATURES.length];
+
+    ExactMarginalsTest() {
+        for (int id = 0; id < FEATURES.length; id++) {
+            vertices[id] = (KNOWN_LABELS[id] != null) ? network.makeLabelledVertex(FEATURES[id], KNOWN_LABELS[id])
+                    : network.makeUnlabelledVertex(FEATURES[id]);
+        }
+        for (int[] edge : EDGES) {
+            network.addEdge(vertices[edge[0]], vertices[edge[1]]);
+        }
+    }
+
+    // Prob(y_i = +1 | known labels), by summing exp(-energy) over every labelling that agrees with the known labels
+    // (null where unknown); for networks of up to 20 or so vertices
+    static double[] computeExactMarginals(boolean[] features, Boolean[] knownLabels, int[][] edges,
+                                          Parameters parameters) {
+        double partitionFunction = 0.0;
+        double[] positiveWeights = new double[features.length];
+        for (int labelling = 0; labelling < 1 << features.length; labelling++) {
+            boolean consistent = true;
+            for (int id = 0; id < features.length; id++) {
+                if (knownLabels[id] != null && knownLabels[id] != getLabel(labelling, id)) {
+                    consistent = false;
+                }
+            }
+            if (!consistent) {
+                continue;
+            }
+            double logWeight = 0.0;
+            for (int id = 0; id < features.length; id++) {
+                logWeight += parameters.getAlpha() * BooleanUtils.spin(features[id])
+                        * BooleanUtils.spin(getLabel(labelling, id));
+            }
+            for (int[] edge : edges) {
+                logWeight += parameters.getBeta() * BooleanUtils.spin(getLabel(labelling, edge[0]))
+                        * BooleanUtils.spin(getLabel(labelling, edge[1]));
+            }
+            double weight = Math.exp(logWeight);
+            partitionFunction += weight;
+            for (int id = 0; id < features.length; id++) {
+                if (getLabel(labelling, id)) {
+                    positiveWeights[id] += weight;
+                }
+            }
+        }
+        for (int id = 0; id < features.length; id++) {
+            positiveWeights[id] /= partitionFunction;
+        }
+        return positiveWeights;
+    }
+
+    private static boolean getLabel(int labelling, int id) {
+        return ((labelling >>> id) & 1) != 0;
+    }
+
+    private void checkMarginals(SamplingOptions options, int observations) {
+        double[] exact = computeExactMarginals(FEATURES, KNOWN_LABELS, EDGES, PARAMETERS);
+        for (MarginalEstimator estimator : MarginalEstimator.values()) {
+            Map<Vertex, Double> sampled = Algorithms.predict(network, PARAMETERS, observations, 100, 1,
+                    options.withSeed(17L).withEstimator(estimator));
+            for (int id = 0; id < FEATURES.length; id++) {
+                if (KNOWN_LABELS[id] == null) {
+                    assertEquals(exact[id], sampled.get(vertices[id]), 0.02,
+                            "vertex " + id + " with " + options.getMode() + ", " + estimator);
+                }
+            }
+        }
+    }
+
+    @Test
+    void chromaticMatchesExactMarginals() {
+        checkMarginals(SamplingOptions.defaults().withMode(SamplingMode.CHROMATIC), 20000);
+    }
+
+    @Test
+    void multiSpinMatchesExactMarginals() {
+        checkMarginals(SamplingOptions.defaults().withMode(SamplingMode.MULTI_SPIN), 500);
+    }
+
+    @Test
+    void clusterMatchesExactMarginals() {
+        checkMarginals(SamplingOptions.defaults().withMode(SamplingMode.CLUSTER), 20000);
+    }
+
+    @Test
+    void activeSetMatchesExactMarginals() {
+        checkMarginals(SamplingOptions.defaults().withMode(SamplingMode.ACTIVE_SET), 20000);
+    }
+
+}
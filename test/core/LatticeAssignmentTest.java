@@ -0,0 +1,113 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatticeAssignmentTest {
+
+    // a line longer than one word, so that lines span a word boundary and end in a partial word
+    private static final int COLS = 70;
+
+    private static Lattice makeLattice(int layers, int rows, long seed) {
+        Random random = new Random(seed);
+        Lattice lattice = (layers == 1) ? Lattice.periodic2D(rows, COLS) : Lattice.periodic3D(layers, rows, COLS);
+        for (int site = 0; site < lattice.getNumSites(); site++) {
+            lattice.setFeatureValue(site, random.nextBoolean());
+            if (random.nextInt(4) == 0) {
+                lattice.setLabel(site, random.nextBoolean());
+            }
+        }
+        return lattice;
+    }
+
+    private static long countFeatureLabelSum(Lattice lattice, LatticeAssignment assignment) {
+        long sum = 0;
+        for (int site = 0; site < lattice.getNumSites(); site++) {
+            sum += BooleanUtils.spin(lattice.getFeatureValue(site)) * BooleanUtils.spin(assignment.getLabel(site));
+        }
+        return sum;
+    }
+
+    // each site's edges to its right, lower and (in 3D) back neighbours, so that every edge is counted once
+    private static long countEdgeLabelSum(Lattice lattice, int layers, int rows, LatticeAssignment assignment) {
+        long sum = 0;
+        for (int layer = 0; layer < layers; layer++) {
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < COLS; col++) {
+                    int spin = BooleanUtils.spin(assignment.getLabel(lattice.getSite(layer, row, col)));
+                    sum += spin * BooleanUtils.spin(assignment.getLabel(lattice.getSite(layer, row, (col + 1) % COLS)));
+                    sum += spin * BooleanUtils.spin(assignment.getLabel(lattice.getSite(layer, (row + 1) % rows, col)));
+                    if (layers > 1) {
+                        sum += spin * BooleanUtils.spin(assignment.getLabel(
+                                lattice.getSite((layer + 1) % layers, row, col)));
+                    }
+                }
+            }
+        }
+        return sum;
+    }
+
+    private static void checkStatisticsAfterEachRound(int layers, int rows) {
+        Lattice lattice = makeLattice(layers, rows, 1L);
+        Parameters parameters = new Parameters(0.2, 0.3);
+        LatticeAssignment assignment = LatticeAssignment.samplingUnknownGivenKnown(lattice, new CounterRandom(2L, 0));
+        for (int round = 0; round < 20; round++) {
+            assignment.performSamplingRound(parameters, null);
+            assertEquals(countFeatureLabelSum(lattice, assignment), assignment.getFeatureLabelSum(),
+                    "feature statistic after round " + round);
+            assertEquals(countEdgeLabelSum(lattice, layers, rows, assignment), assignment.getEdgeLabelSum(),
+                    "edge statistic after round " + round);
+        }
+    }
+
+    @Test
+    void statisticsMatchRecount() {
+        checkStatisticsAfterEachRound(1, 6);
+        checkStatisticsAfterEachRound(4, 6);
+    }
+
+    @Test
+    void latticeMatchesSameTorusAsNetwork() {
+        int rows = 8;
+        Lattice lattice = makeLattice(1, rows, 3L);
+        Network network = new Network();
+        Vertex[] vertices = new Vertex[lattice.getNumSites()];
+        for (int site = 0; site < vertices.length; site++) {
+            boolean feature = lattice.getFeatureValue(site);
+            vertices[site] = lattice.isLabelled(site) ? network.makeLabelledVertex(feature, lattice.getLabel(site))
+                    : network.makeUnlabelledVertex(feature);
+        }
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < COLS; col++) {
+                Vertex vertex = vertices[lattice.getSite(row, col)];
+                network.addEdge(vertex, vertices[lattice.getSite(row, (col + 1) % COLS)]);
+                network.addEdge(vertex, vertices[lattice.getSite((row + 1) % rows, col)]);
+            }
+        }
+
+        Parameters parameters = new Parameters(0.2, 0.3);
+        SamplingOptions options = SamplingOptions.defaults().withMode(SamplingMode.CHROMATIC)
+                .withEstimator(MarginalEstimator.RAO_BLACKWELL).withSeed(4L);
+        double[] latticeMarginals = Algorithms.predict(lattice, parameters, 4000, 100, 1, options);
+        Map<Vertex, Double> networkMarginals = Algorithms.predict(network, parameters, 4000, 100, 1, options);
+        // the two samplers draw different random numbers, so agree only up to sampling noise
+        double differenceSum = 0.0;
+        double maxDifference = 0.0;
+        for (int site = 0; site < vertices.length; site++) {
+            if (!lattice.isLabelled(site)) {
+                double difference = Math.abs(latticeMarginals[site] - networkMarginals.get(vertices[site]));
+                differenceSum += difference;
+                maxDifference = Math.max(maxDifference, difference);
+            }
+        }
+        double meanDifference = differenceSum / networkMarginals.size();
+        assertTrue(meanDifference < 0.01 && maxDifference < 0.05,
+                "mean difference " + meanDifference + ", largest " + maxDifference);
+    }
+
+}
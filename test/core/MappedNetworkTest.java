@@ -0,0 +1,105 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MappedNetworkTest {
+
+    @TempDir
+    Path directory;
+
+    // a random graph with a self-loop and repeated edges, which compiling drops and keeps respectively
+    private static Network makeNetwork(long seed) {
+        Random random = new Random(seed);
+        Network network = new Network();
+        List<Vertex> vertices = new ArrayList<>();
+        for (int index = 0; index < 300; index++) {
+            vertices.add((index % 3 == 0)
+                    ? network.makeLabelledVertex(random.nextBoolean(), random.nextBoolean())
+                    : network.makeUnlabelledVertex(random.nextBoolean()));
+        }
+        for (int edge = 0; edge < 900; edge++) {
+            network.addEdge(vertices.get(random.nextInt(vertices.size())), vertices.get(random.nextInt(50)));
+        }
+        network.addEdge(vertices.get(7), vertices.get(7));
+        return network;
+    }
+
+    private static int[] getSortedNeighbours(CompiledNetwork network, int id) {
+        int[] neighbours = new int[network.getDegree(id)];
+        for (int index = 0; index < neighbours.length; index++) {
+            neighbours[index] = network.getNeighbour(network.getNeighbourStart(id) + index);
+        }
+        Arrays.sort(neighbours);
+        return neighbours;
+    }
+
+    private void checkRoundTrip(VertexOrder vertexOrder) throws IOException {
+        Network network = makeNetwork(1L);
+        Path path = directory.resolve("network-" + vertexOrder + ".bin");
+        MappedNetwork.write(network, path, vertexOrder);
+        MappedNetwork mapped = MappedNetwork.open(path);
+        CompiledNetwork expected = CompiledNetwork.compile(network, vertexOrder);
+        CompiledNetwork actual = mapped.getCompiledNetwork();
+
+        assertEquals(expected.getNumVertices(), mapped.getNumVertices());
+        assertEquals(expected.getNumEdges(), mapped.getNumEdges());
+        assertEquals(expected.getMaxDegree(), actual.getMaxDegree());
+        for (int id = 0; id < expected.getNumVertices(); id++) {
+            assertEquals(expected.getFeature(id), mapped.getFeatureValue(id), "feature of vertex " + id);
+            assertEquals(expected.isLabelled(id), mapped.isLabelled(id), "labelling of vertex " + id);
+            if (expected.isLabelled(id)) {
+                assertEquals(expected.getKnownLabel(id), mapped.getLabel(id), "label of vertex " + id);
+            }
+            assertArrayEquals(getSortedNeighbours(expected, id), getSortedNeighbours(actual, id),
+                    "neighbours of vertex " + id);
+        }
+    }
+
+    @Test
+    void roundTripKeepsNetwork() throws IOException {
+        checkRoundTrip(VertexOrder.INSERTION);
+        checkRoundTrip(VertexOrder.BREADTH_FIRST);
+    }
+
+    @Test
+    void mappedPredictionMatchesInMemoryPrediction() throws IOException {
+        Network network = makeNetwork(2L);
+        Path path = directory.resolve("network.bin");
+        MappedNetwork.write(network, path);
+        MappedNetwork mapped = MappedNetwork.open(path);
+        Parameters parameters = new Parameters(0.2, 0.3);
+        SamplingOptions options = SamplingOptions.defaults().withMode(SamplingMode.CHROMATIC).withSeed(3L);
+        double[] mappedMarginals = Algorithms.predict(mapped, parameters, 50, 20, 1, options);
+        Map<Vertex, Double> marginals = Algorithms.predict(network, parameters, 50, 20, 1, options);
+        CompiledNetwork compiledNetwork = CompiledNetwork.compile(network);
+        for (int id = 0; id < mappedMarginals.length; id++) {
+            if (mapped.isLabelled(id)) {
+                assertEquals(Double.NaN, mappedMarginals[id]);
+            } else {
+                assertEquals(marginals.get(compiledNetwork.getVertex(id)), mappedMarginals[id], "vertex " + id);
+            }
+        }
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path path = directory.resolve("other.bin");
+        Files.write(path, new byte[64]);
+        assertThrows(IOException.class, () -> MappedNetwork.open(path));
+    }
+
+}
@@ -0,0 +1,49 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MarginalEstimatorTest {
+
+    private static Network makeNetwork(long seed) {
+        Random random = new Random(seed);
+        Network network = new Network();
+        List<Vertex> vertices = new ArrayList<>();
+        for (int index = 0; index < 200; index++) {
+            vertices.add((index % 3 == 0)
+                    ? network.makeLabelledVertex(random.nextBoolean(), random.nextBoolean())
+                    : network.makeUnlabelledVertex(random.nextBoolean()));
+        }
+        for (int edge = 0; edge < 400; edge++) {
+            int from = random.nextInt(vertices.size());
+            int to = random.nextInt(vertices.size());
+            if (from != to) {
+                network.addEdge(vertices.get(from), vertices.get(to));
+            }
+        }
+        return network;
+    }
+
+    @Test
+    void raoBlackwellMeanMatchesSampledLabelMean() {
+        Network network = makeNetwork(5L);
+        Parameters parameters = new Parameters(0.2, 0.4);
+        SamplingOptions options = SamplingOptions.defaults().withMode(SamplingMode.CHROMATIC);
+        Map<Vertex, Double> sampledLabels = Algorithms.predict(network, parameters, 20000, 100, 1,
+                options.withSeed(1L).withEstimator(MarginalEstimator.SAMPLED_LABELS));
+        Map<Vertex, Double> raoBlackwell = Algorithms.predict(network, parameters, 20000, 100, 1,
+                options.withSeed(2L).withEstimator(MarginalEstimator.RAO_BLACKWELL));
+        double maxDifference = 0.0;
+        for (Map.Entry<Vertex, Double> entry : sampledLabels.entrySet()) {
+            maxDifference = Math.max(maxDifference, Math.abs(entry.getValue() - raoBlackwell.get(entry.getKey())));
+        }
+        assertTrue(maxDifference < 0.03, "largest difference " + maxDifference);
+    }
+
+}
@@ -0,0 +1,49 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ParallelTemperingTest {
+
+    private static Network makeNetwork(long seed) {
+        Random random = new Random(seed);
+        Network network = new Network();
+        List<Vertex> vertices = new ArrayList<>();
+        for (int index = 0; index < 300; index++) {
+            vertices.add((index % 5 == 0)
+                    ? network.makeLabelledVertex(random.nextBoolean(), random.nextBoolean())
+                    : network.makeUnlabelledVertex(random.nextBoolean()));
+        }
+        for (int edge = 0; edge < 900; edge++) {
+            int from = random.nextInt(vertices.size());
+            int to = random.nextInt(vertices.size());
+            if (from != to) {
+                network.addEdge(vertices.get(from), vertices.get(to));
+            }
+        }
+        return network;
+    }
+
+    @Test
+    void singleRungReproducesPredict() {
+        Network network = makeNetwork(1L);
+        Parameters parameters = new Parameters(0.2, 0.4);
+        for (MarginalEstimator estimator : MarginalEstimator.values()) {
+            // the rung's chain draws the same random numbers as predict's, and there is nothing to swap with
+            SamplingOptions options = SamplingOptions.defaults().withMode(SamplingMode.CHROMATIC).withSeed(2L)
+                    .withEstimator(estimator);
+            TemperingResult tempered = Algorithms.predictWithTempering(network, parameters, new double[]{1.0}, 50,
+                    20, 2, options);
+            Map<Vertex, Double> predicted = Algorithms.predict(network, parameters, 50, 20, 2, options);
+            assertEquals(predicted, tempered.getProbabilities(), estimator.toString());
+            assertEquals(0, tempered.getSwapAcceptanceRates().length);
+        }
+    }
+
+}
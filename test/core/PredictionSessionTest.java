@@ -0,0 +1,71 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PredictionSessionTest {
+
+    private static final int NUM_VERTICES = 400;
+
+    // a sparse random graph; the vertices in extraLabelled are labelled true on top of the random labels
+    private static List<Vertex> makeVertices(Network network, boolean[] extraLabelled) {
+        Random random = new Random(3L);
+        List<Vertex> vertices = new ArrayList<>();
+        for (int index = 0; index < NUM_VERTICES; index++) {
+            boolean feature = random.nextBoolean();
+            boolean labelled = (index % 4 == 0);
+            boolean label = random.nextBoolean();
+            vertices.add(extraLabelled[index] ? network.makeLabelledVertex(feature, true)
+                    : labelled ? network.makeLabelledVertex(feature, label) : network.makeUnlabelledVertex(feature));
+        }
+        for (int edge = 0; edge < 2 * NUM_VERTICES; edge++) {
+            int from = random.nextInt(NUM_VERTICES);
+            int to = random.nextInt(NUM_VERTICES);
+            if (from != to) {
+                network.addEdge(vertices.get(from), vertices.get(to));
+            }
+        }
+        return vertices;
+    }
+
+    @Test
+    void updateMatchesFreshPrediction() {
+        Parameters parameters = new Parameters(0.3, 0.5);
+        SamplingOptions options = SamplingOptions.defaults().withMode(SamplingMode.CHROMATIC).withSeed(7L)
+                .withEstimator(MarginalEstimator.RAO_BLACKWELL);
+        boolean[] changed = new boolean[NUM_VERTICES];
+        for (int index = 1; index < NUM_VERTICES; index += 40) {
+            changed[index] = true;
+        }
+
+        Network network = new Network();
+        List<Vertex> vertices = makeVertices(network, new boolean[NUM_VERTICES]);
+        PredictionSession session = Algorithms.startPredictionSession(network, parameters, 400, 50, 1, options);
+        for (int index = 0; index < NUM_VERTICES; index++) {
+            if (changed[index]) {
+                session.setLabel(vertices.get(index), true);
+            }
+        }
+        session.update(0.01);
+
+        Network changedNetwork = new Network();
+        List<Vertex> changedVertices = makeVertices(changedNetwork, changed);
+        Map<Vertex, Double> fresh = Algorithms.predict(changedNetwork, parameters, 400, 50, 1, options);
+        double differenceSum = 0.0;
+        for (int index = 0; index < NUM_VERTICES; index++) {
+            Double probability = fresh.get(changedVertices.get(index));
+            if (probability != null) {
+                differenceSum += Math.abs(session.getProbability(vertices.get(index)) - probability);
+            }
+        }
+        double meanDifference = differenceSum / fresh.size();
+        assertTrue(meanDifference < 0.025, "mean absolute difference " + meanDifference);
+    }
+
+}
@@ -0,0 +1,60 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PseudoLikelihoodTest {
+
+    // a fully labelled random graph with independent features and labels
+    private static CompiledNetwork makeNetwork(long seed) {
+        Random random = new Random(seed);
+        Network network = new Network();
+        List<Vertex> vertices = new ArrayList<>();
+        for (int index = 0; index < 1000; index++) {
+            vertices.add(network.makeLabelledVertex(random.nextBoolean(), random.nextBoolean()));
+        }
+        for (int edge = 0; edge < 4000; edge++) {
+            int from = random.nextInt(vertices.size());
+            int to = random.nextInt(vertices.size());
+            if (from != to) {
+                network.addEdge(vertices.get(from), vertices.get(to));
+            }
+        }
+        return CompiledNetwork.compile(network);
+    }
+
+    @Test
+    void separableHistogramGivesFiniteIncreasingFit() {
+        // maximum degree 3; many false labels on vertices with a false feature and three false neighbours, which
+        // plain Newton steps overshoot to infinity once the curvature underflows
+        int maxSpinSum = 3;
+        long[] histogram = new long[2 * 2 * (2 * maxSpinSum + 1)];
+        histogram[0] = 65_481_221L;
+        PseudoLikelihood pseudoLikelihood = new PseudoLikelihood(maxSpinSum, histogram);
+        double previousObjective = pseudoLikelihood.logPseudoLikelihood(0.0, 0.0);
+        for (int maxIterations = 1; maxIterations <= 100; maxIterations++) {
+            Parameters parameters = pseudoLikelihood.fit(maxIterations, 0.0);
+            assertTrue(Double.isFinite(parameters.getAlpha()) && Double.isFinite(parameters.getBeta()),
+                    "parameters after " + maxIterations + " iterations: " + parameters);
+            // the feature and the neighbours both predict every label, so both parameters grow
+            assertTrue(parameters.getAlpha() > 0.0 && parameters.getBeta() > 0.0, parameters.toString());
+            double objective = pseudoLikelihood.logPseudoLikelihood(parameters.getAlpha(), parameters.getBeta());
+            assertTrue(objective >= previousObjective, "objective fell after " + maxIterations + " iterations");
+            previousObjective = objective;
+        }
+    }
+
+    @Test
+    void independentLabelsGiveParametersNearZero() {
+        Parameters parameters = new PseudoLikelihood(makeNetwork(2L)).fit(50, 1.0e-9);
+        assertEquals(0.0, parameters.getAlpha(), 0.1);
+        assertEquals(0.0, parameters.getBeta(), 0.1);
+    }
+
+}
@@ -0,0 +1,94 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TrainingCheckpointTest {
+
+    private static final double LEARNING_RATE = 1.0e-4;
+
+    @TempDir
+    Path directory;
+
+    // a periodic grid with half its labels known
+    private static Network makeGrid(int gridSize, long seed) {
+        Random random = new Random(seed);
+        Network network = new Network();
+        Vertex[][] vertices = new Vertex[gridSize][gridSize];
+        for (int row = 0; row < gridSize; row++) {
+            for (int col = 0; col < gridSize; col++) {
+                boolean feature = random.nextBoolean();
+                vertices[row][col] = random.nextBoolean()
+                        ? network.makeLabelledVertex(feature, random.nextInt(4) != 0 ? feature : !feature)
+                        : network.makeUnlabelledVertex(feature);
+            }
+        }
+        for (int row = 0; row < gridSize; row++) {
+            for (int col = 0; col < gridSize; col++) {
+                network.addEdge(vertices[row][col], vertices[(row + 1) % gridSize][col]);
+                network.addEdge(vertices[row][col], vertices[row][(col + 1) % gridSize]);
+            }
+        }
+        return network;
+    }
+
+    @Test
+    void writtenCheckpointReadsBackUnchanged() throws IOException {
+        Network network = makeGrid(20, 1L);
+        Path path = directory.resolve("checkpoint.bin");
+        SamplingOptions options = SamplingOptions.defaults().withMode(SamplingMode.CHROMATIC).withSeed(2L)
+                .withVertexOrder(VertexOrder.BREADTH_FIRST);
+        Parameters parameters = Algorithms.train(network, new Parameters(0.0, 0.0), 10, 20, 2, LEARNING_RATE,
+                options.withCheckpoints(path, 3));
+
+        TrainingCheckpoint checkpoint = TrainingCheckpoint.read(path);
+        assertEquals(10, checkpoint.getDescentStepsCompleted());
+        assertEquals(2L, checkpoint.getSeed());
+        assertEquals(VertexOrder.BREADTH_FIRST, checkpoint.getVertexOrder());
+        assertEquals(parameters.getAlpha(), checkpoint.getParameters().getAlpha());
+        assertEquals(parameters.getBeta(), checkpoint.getParameters().getBeta());
+
+        Path copy = directory.resolve("copy.bin");
+        checkpoint.write(copy);
+        assertArrayEquals(Files.readAllBytes(path), Files.readAllBytes(copy));
+    }
+
+    @Test
+    void resumedChromaticRunMatchesUninterruptedRun() throws IOException {
+        Network network = makeGrid(30, 3L);
+        Path path = directory.resolve("checkpoint.bin");
+        SamplingOptions options = SamplingOptions.defaults().withMode(SamplingMode.CHROMATIC).withSeed(4L);
+        Parameters uninterrupted = Algorithms.train(network, new Parameters(0.0, 0.0), 40, 30, 2, LEARNING_RATE,
+                options);
+
+        Algorithms.train(network, new Parameters(0.0, 0.0), 25, 30, 2, LEARNING_RATE, options.withCheckpoints(path, 5));
+        // the resumed run takes its seed from the checkpoint, not the options
+        Parameters resumed = Algorithms.train(network, TrainingCheckpoint.read(path), 15, 2, LEARNING_RATE,
+                SamplingOptions.defaults().withMode(SamplingMode.CHROMATIC));
+        assertEquals(uninterrupted.getAlpha(), resumed.getAlpha());
+        assertEquals(uninterrupted.getBeta(), resumed.getBeta());
+    }
+
+    @Test
+    void rejectsOtherNetworksAndFiles() throws IOException {
+        Path path = directory.resolve("checkpoint.bin");
+        Algorithms.train(makeGrid(20, 5L), new Parameters(0.0, 0.0), 2, 5, 1, LEARNING_RATE,
+                SamplingOptions.defaults().withSeed(6L).withCheckpoints(path, 1));
+        TrainingCheckpoint checkpoint = TrainingCheckpoint.read(path);
+        assertThrows(IllegalArgumentException.class, () -> Algorithms.train(makeGrid(20, 7L), checkpoint, 1, 1,
+                LEARNING_RATE, SamplingOptions.defaults()));
+
+        Files.write(path, new byte[10]);
+        assertThrows(IOException.class, () -> TrainingCheckpoint.read(path));
+    }
+
+}